@@ -28,6 +28,12 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 	 
 #define ESPERA_GRANDE 320 
 #define ESPERA_PEQUENA 16
+#define ESPERA_SONDA 8000
+// espera pelo prximo cabealho no modo com janela: cerca de 5 s, repetida at 3 vezes. O PC s
+// reenvia os segmentos depois de esperar 2 s pela confirmao, mais o tempo de transmisso da rajada
+// (cerca de 11 s para 64 KB a 57600 bauds).
+#define ESPERA_JANELA 40000
+#define REPETICOES_ESPERA_JANELA 3
 
 // Estrutura de mensagem para recebimento e envio.
 data struct mensagem comunicacao_mensagem;
@@ -37,6 +43,9 @@ data volatile unsigned short mensagem_checksum;
 data volatile unsigned char xdata* comunicacao_posicao_recebida;
 data volatile unsigned short comunicacao_tamanho_recebido;		  
 data volatile unsigned char comunicacao_buffer_byte;
+
+// Nmero de sequncia do prximo segmento esperado (modo com janela).
+data volatile unsigned char comunicacao_sequencia;
 		
 			 /*
 void TEMP_DEBUG(unsigned char TEMP) {
@@ -85,6 +94,50 @@ void enviar_mensagem_permissao() {
    comunicacao_enviar_byte(MENSAGEM_PRANCHA_PERMISSAO);
 }
 
+void enviar_mensagem_permissao_janela() {
+   comunicacao_enviar_byte(MENSAGEM_PRANCHA_PERMISSAO);
+   comunicacao_enviar_byte(0x00);
+   comunicacao_enviar_byte(0x01);
+   comunicacao_enviar_byte(COMUNICACAO_JANELA);
+   comunicacao_enviar_byte(0x00);
+   comunicacao_enviar_byte(MENSAGEM_PRANCHA_PERMISSAO + 0x01 + COMUNICACAO_JANELA);
+}
+
+void enviar_mensagem_confirmar_sequencia(unsigned char sequencia) {
+   data volatile unsigned short checksum;
+   checksum = MENSAGEM_PRANCHA_CONFIMACAO + 0x01 + sequencia;
+   comunicacao_enviar_byte(MENSAGEM_PRANCHA_CONFIMACAO);
+   comunicacao_enviar_byte(0x00);
+   comunicacao_enviar_byte(0x01);
+   comunicacao_enviar_byte(sequencia);
+   comunicacao_enviar_byte(SHORT_MSB(checksum));
+   comunicacao_enviar_byte(SHORT_LSB(checksum));
+}
+
+void enviar_mensagem_taxas() {
+   comunicacao_enviar_byte(MENSAGEM_PRANCHA_TAXAS);
+   comunicacao_enviar_byte(0x00);
+   comunicacao_enviar_byte(0x02);
+   comunicacao_enviar_byte(TAXA_57600);
+   comunicacao_enviar_byte(TAXA_115200);
+   comunicacao_enviar_byte(0x00);
+   comunicacao_enviar_byte(MENSAGEM_PRANCHA_TAXAS + 0x02 + TAXA_57600 + TAXA_115200);
+}
+
+// Seleciona a taxa de transmisso. A taxa padro (57600) vem do timer 1; a de 115200, do timer 2.
+void comunicacao_definir_taxa(unsigned char taxa) {
+	if (taxa == TAXA_115200) {
+		// 11,0592 MHz / (32 * (65536 - 0xFFFD)) = 115200
+		RCAP2H = 0xFF;
+		RCAP2L = 0xFD;
+		TH2 = 0xFF;
+		TL2 = 0xFD;
+		T2CON = 0x34; // RCLK, TCLK e TR2.
+	} else {
+		T2CON = 0x00;
+	}
+}
+
 // Recebe um byte pelo cabo serial.
 void comunicacao_receber_byte(unsigned short espera_maxima, unsigned char data* destino) {
 	data volatile unsigned short espera_countdown;
@@ -128,8 +181,35 @@ void comunicacao_receber_cabecalho() {
 	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_LSB(comunicacao_mensagem.tamanho));
 	
 }
+
+// Recebe o cabealho da prxima mensagem no modo com janela. A espera pelo primeiro byte  longa, pois
+// o PC s reenvia os segmentos perdidos depois de esperar pela confirmao.
+void comunicacao_receber_cabecalho_janela() {
+	data volatile unsigned char repeticoes;
+
+	// 1. Espera pelo tipo da mensagem.
+	for (repeticoes = REPETICOES_ESPERA_JANELA; repeticoes; repeticoes --) {
+		COMUNICACAO_FALHOU = 0;
+		mensagem_checksum = 0;
+		comunicacao_receber_byte(ESPERA_JANELA, &comunicacao_mensagem.tipo);
+		if (! COMUNICACAO_FALHOU) break;
+	}
+
+	// 2. Recebe o tamanho.
+	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_MSB(comunicacao_mensagem.tamanho));
+	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_LSB(comunicacao_mensagem.tamanho));
+}
+
+// Verifica o checksum da ltima mensagem recebida. Os bytes do prprio checksum tambm entram na soma
+// dos bytes recebidos, e por isso so descontados dela.
+unsigned char comunicacao_checksum_confere() {
+	data volatile unsigned short soma;
+	soma = mensagem_checksum - SHORT_MSB(comunicacao_mensagem.checksum) - SHORT_LSB(comunicacao_mensagem.checksum);
+	return soma == comunicacao_mensagem.checksum;
+}
 	
-// Recebe o resto de uma mensagem grande pela porta serial.
+// Recebe o resto de uma mensagem grande pela porta serial, guardando o corpo a partir da posio
+// recebida. A posio s avana com comunicacao_avancar_recebido().
 void comunicacao_receber_resto_grande() {
 	data volatile unsigned short recepcao_countdown;	
 	data volatile unsigned short i;
@@ -144,7 +224,6 @@ void comunicacao_receber_resto_grande() {
 		comunicacao_receber_byte(ESPERA_PEQUENA, &buffer); 
 		if (COMUNICACAO_FALHOU) return;	 
 		comunicacao_posicao_recebida[i] = buffer;
-		comunicacao_tamanho_recebido ++;
 		i ++;
 	}	   	
 	SELECIONAR(0, 1, 1);
@@ -152,15 +231,13 @@ void comunicacao_receber_resto_grande() {
 	// 2. Recebe o checksum.
 	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_MSB(comunicacao_mensagem.checksum));
 	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_LSB(comunicacao_mensagem.checksum));
-	if (COMUNICACAO_FALHOU) return;
-
-	/*if (mensagem_checksum != comunicacao_mensagem.checksum) {
-		COMUNICACAO_FALHOU = 1;
-		return;
-	}*/
+}  
 
+// Aceita o corpo da ltima mensagem grande, avanando a posio recebida.
+void comunicacao_avancar_recebido() {
 	comunicacao_posicao_recebida += comunicacao_mensagem.tamanho;
-}  
+	comunicacao_tamanho_recebido += comunicacao_mensagem.tamanho;
+}
 
 // Recebe o resto de uma mensagem pequena pela porta serial.
 void comunicacao_receber_resto_pequena() {
@@ -195,7 +272,90 @@ void comunicacao_receber_resto_pequena() {
 		return;
 	}*/
 }  
+// Descarta os bytes que chegarem at a linha ficar em silncio, isto , at o fim da rajada do PC.
+void comunicacao_descartar_rajada() {
+	data volatile unsigned char buffer;
+	COMUNICACAO_FALHOU = 0;
+	while (! COMUNICACAO_FALHOU)
+		comunicacao_receber_byte(ESPERA_PEQUENA, &buffer);
+	COMUNICACAO_FALHOU = 0;
+}
+
+// Recebe o resto de um segmento numerado (modo com janela). Segmentos fora de ordem so descartados.
+// Um segmento incompleto ou com checksum errado  descartado junto com o resto da rajada, e a prancha
+// confirma o ltimo segmento recebido em ordem, para que o PC volte at o primeiro perdido.
+void comunicacao_receber_segmento_janela() {
+	data volatile unsigned char sequencia;
+	data volatile unsigned char sinais;
+
+	// 1. Recebe o nmero de sequncia e os sinalizadores.
+	if (comunicacao_mensagem.tamanho < 2) goto descartar;
+	comunicacao_receber_byte(ESPERA_PEQUENA, &sequencia);
+	comunicacao_receber_byte(ESPERA_PEQUENA, &sinais);
+	if (COMUNICACAO_FALHOU) goto descartar;
+	comunicacao_mensagem.tamanho -= 2;
+
+	// 2. Guarda o segmento esperado e descarta os demais.
+	if (sequencia == comunicacao_sequencia) {
+		comunicacao_receber_resto_grande();
+		if (COMUNICACAO_FALHOU || ! comunicacao_checksum_confere()) goto descartar;
+		comunicacao_avancar_recebido();
+		comunicacao_sequencia ++;
+	} else {
+		comunicacao_receber_resto_pequena();
+		if (COMUNICACAO_FALHOU || ! comunicacao_checksum_confere()) goto descartar;
+	}
+
+	// 3. Confirma o ltimo segmento recebido em ordem, se o PC pediu.
+	if (sinais & SINAL_PEDIR_CONFIRMACAO)
+		enviar_mensagem_confirmar_sequencia(comunicacao_sequencia - 1);
+	return;
+
+	// 4. Tratamento de um segmento com erro: o PC espera uma nica resposta pela rajada.
+	descartar:
+		comunicacao_descartar_rajada();
+		enviar_mensagem_confirmar_sequencia(comunicacao_sequencia - 1);
+		return;
+}
+
+// Muda a taxa de transmisso e espera pela sonda do PC na taxa nova. Se a sonda no chegar, volta 
+// taxa padro.
+void comunicacao_mudar_taxa() {
+	// 1. Valida a taxa pedida.
+	if (comunicacao_mensagem.tamanho != 1 || comunicacao_mensagem.dados[0] > TAXA_115200) {
+		enviar_mensagem_abortar();
+		COMUNICACAO_FALHOU = 1;
+		return;
+	}
+
+	// 2. Confirma na taxa atual e muda para a nova.
+	enviar_mensagem_confirmar();
+	comunicacao_definir_taxa(comunicacao_mensagem.dados[0]);
+
+	// 3. Recebe a sonda na taxa nova.
+	mensagem_checksum = 0;
+	comunicacao_receber_byte(ESPERA_SONDA, &comunicacao_mensagem.tipo);
+	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_MSB(comunicacao_mensagem.tamanho));
+	comunicacao_receber_byte(ESPERA_PEQUENA, &SHORT_LSB(comunicacao_mensagem.tamanho));
+	if (! COMUNICACAO_FALHOU) comunicacao_receber_resto_pequena();
+	if (COMUNICACAO_FALHOU
+	  || comunicacao_mensagem.tipo != MENSAGEM_PC_SONDA
+	  || comunicacao_mensagem.tamanho != 2
+	  || comunicacao_mensagem.dados[0] != SONDA_0
+	  || comunicacao_mensagem.dados[1] != SONDA_1) {
+		// 3.a. A sonda no chegou inteira. Volta  taxa padro sem responder.
+		comunicacao_definir_taxa(TAXA_57600);
+		COMUNICACAO_FALHOU = 1;
+		return;
+	}
+
+	// 4. Confirma a sonda, j na taxa nova.
+	enviar_mensagem_confirmar();
+}
+
 void comunicacao_executar() {  
+	data volatile unsigned char modo_janela;
+
 	// 1. Define as variveis relativas  espera.
 	comunicacao_posicao_recebida = 0x0000;
 	comunicacao_tamanho_recebido = 0;
@@ -203,6 +363,7 @@ void comunicacao_executar() {
 	COMUNICACAO_FALHOU = 0;
 					
 	// 2. Espera pelo incio da comunicao.
+	esperar_inicio:
 	comunicacao_receber_cabecalho();
 	if (COMUNICACAO_FALHOU) {
 		enviar_mensagem_abortar();
@@ -215,14 +376,24 @@ void comunicacao_executar() {
 		return;			
 	}	 		
 
-	// 2.a. A mensagem no  de incio. Aborta.
+	// 2.a. Trata os pedidos de taxa de transmisso, que precedem o incio.
+	if (comunicacao_mensagem.tipo == MENSAGEM_PC_TAXAS) {
+		enviar_mensagem_taxas();
+		goto esperar_inicio;
+	} else if (comunicacao_mensagem.tipo == MENSAGEM_PC_MUDAR_TAXA) {
+		comunicacao_mudar_taxa();
+		if (COMUNICACAO_FALHOU) return;
+		goto esperar_inicio;
+	}
+
+	// 2.b. A mensagem no  de incio. Aborta.
 	if (comunicacao_mensagem.tipo != MENSAGEM_PC_INICIO) {
 		if (comunicacao_mensagem.tipo != MENSAGEM_PC_ABORTAR)
 			enviar_mensagem_abortar();
 		return;
 	}
 
-	// 2.b. Valida a mensagem de incio.
+	// 2.c. Valida a mensagem de incio.
 	if (comunicacao_mensagem.dados[0] == 0) {
 		SELECIONAR_BOTAO(0, 0);
 	} else if (comunicacao_mensagem.dados[0] == 1) {
@@ -235,17 +406,24 @@ void comunicacao_executar() {
 		enviar_mensagem_abortar();
 		return;
 	}
-	if (comunicacao_mensagem.dados[1] != 0) { 
+
+	// 3. Responde (positivamente) ao pedido de transferncia, na verso pedida.
+	modo_janela = 0;
+	if (comunicacao_mensagem.dados[1] == VERSAO_PARADA_ESPERA) {
+		enviar_mensagem_permissao();
+	} else if (comunicacao_mensagem.dados[1] == VERSAO_JANELA) {
+		modo_janela = 1;
+		comunicacao_sequencia = 0;
+		enviar_mensagem_permissao_janela();
+	} else {
 		enviar_mensagem_abortar();
 		return;
 	}
 
-	// 3. Responde (positivamente) ao pedido de transferncia.
-	enviar_mensagem_permissao();
-
 	// 4. Recebe segmentos dos dados.
 	while (-1) {
-		comunicacao_receber_cabecalho();
+		if (modo_janela) comunicacao_receber_cabecalho_janela();
+		else comunicacao_receber_cabecalho();
 		if (COMUNICACAO_FALHOU) {
 			enviar_mensagem_abortar();
 			return;
@@ -260,14 +438,19 @@ void comunicacao_executar() {
 				enviar_mensagem_gravado();
 				return;
 			} else {   
+				// o modo antigo segue sem conferir o checksum, para aceitar os PCs antigos.
 				comunicacao_receber_resto_grande();	 
 				if (COMUNICACAO_FALHOU) {
 					enviar_mensagem_abortar();
 					return;
 				} else {
+					comunicacao_avancar_recebido();
 					enviar_mensagem_confirmar();
 				}
 			}
+		} else if (comunicacao_mensagem.tipo == MENSAGEM_PC_ENVIO_JANELA) {
+			// segmentos com erro so descartados sem encerrar a comunicao.
+			comunicacao_receber_segmento_janela();
 		} else {
 			comunicacao_receber_resto_pequena();
 			if (comunicacao_mensagem.tipo != MENSAGEM_PC_ABORTAR)
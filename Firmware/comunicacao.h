@@ -32,7 +32,11 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 #include <flash.h>
 
 #define MENSAGEM_PC_INICIO 0x03	
+#define MENSAGEM_PC_TAXAS 0x05
+#define MENSAGEM_PC_MUDAR_TAXA 0x06
+#define MENSAGEM_PC_SONDA 0x07
 #define MENSAGEM_PC_ENVIO 0x0C
+#define MENSAGEM_PC_ENVIO_JANELA 0x0D
 #define MENSAGEM_PC_ABORTAR 0x0F	
 
 #define MENSAGEM_PRANCHA_PERMISSAO 0xB3	
@@ -40,6 +44,25 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 #define MENSAGEM_PRANCHA_CONFIMACAO 0xB6 
 #define MENSAGEM_PRANCHA_ABORTAR 0xBF	 
 #define MENSAGEM_PRANCHA_GRAVADO 0xB0
+#define MENSAGEM_PRANCHA_TAXAS 0xB5
+
+// verses do protocolo: parada e espera (cada segmento  confirmado) e janela deslizante.
+#define VERSAO_PARADA_ESPERA 0x00
+#define VERSAO_JANELA 0x01
+
+// segmentos que o PC pode enviar sem confirmao no modo com janela.
+#define COMUNICACAO_JANELA 16
+
+// sinalizador, no segmento numerado, de que o PC espera uma confirmao.
+#define SINAL_PEDIR_CONFIRMACAO 0x01
+
+// cdigos das taxas de transmisso (o PC usa a mesma tabela).
+#define TAXA_57600 0x00
+#define TAXA_115200 0x01
+
+// bytes esperados no corpo da sonda que confirma a taxa nova.
+#define SONDA_0 0x55
+#define SONDA_1 0xAA
 
 // estrutura de uma mensagem pequena.
 struct mensagem {
@@ -57,4 +80,9 @@ extern data volatile unsigned short comunicacao_tamanho_recebido;
  */
 void comunicacao_executar();
 
+/*
+ *  Seleciona a taxa de transmisso da serial.
+ */
+void comunicacao_definir_taxa(unsigned char taxa);
+
 #endif
\ No newline at end of file
@@ -111,6 +111,8 @@ void main()	{
 		varredura_limpar();
 		SELECIONAR(0, 1, 1);
 		comunicacao_executar();
+		// a taxa negociada vale s at o fim da comunicao.
+		comunicacao_definir_taxa(TAXA_57600);
 		if (! COMUNICACAO_FALHOU && RECEBEU_BOTAO) {
 			RECEBEU_BOTAO = 0;
 			varredura_inicializar();
@@ -24,11 +24,14 @@ IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISI
 OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 
+import armazenamento.Botao;
+import armazenamento.OuvinteCarregamento;
 import gui.*;
 
 import java.awt.*;
 import java.io.*;
 import java.util.Locale;
+import java.util.Map;
 import javax.swing.UIManager;
 
 /**
@@ -56,16 +59,37 @@ public class Main {
                 }
                 carregando = new JanCarregando("Aguarde enquanto o software é carregado");
                 carregando.setVisible(true);
+                new Thread("Carregamento da biblioteca") {
+                    @Override public void run() {
+                        carregarBiblioteca();
+                    }
+                }.start();
+            }
+        });
+    }
+
+    /**
+     * Lê a biblioteca de botões fora da thread de eventos, informando o progresso na janela de
+     * carregamento, e então abre a janela principal.
+     */
+    private static void carregarBiblioteca() {
+        final File pasta_botoes = new File("botoes" + File.separator);
+        if (! pasta_botoes.exists()) pasta_botoes.mkdir();
+        final Map<Botao, File> arquivos_botoes = Botao.lerBotoes(pasta_botoes, new OuvinteCarregamento() {
+            @Override public void carregamentoAvancou(final int lidos, final int total) {
                 EventQueue.invokeLater(new Runnable() {
                     public void run() {
-                        File pasta_botoes = new File("botoes" + File.separator);
-                        if (! pasta_botoes.exists()) pasta_botoes.mkdir();
-                        JanPrincipal teste = new JanPrincipal(pasta_botoes);
-                        carregando.dispose();
-                        teste.setVisible(true);
+                        carregando.definirProgresso(lidos, total);
                     }
                 });
             }
         });
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                JanPrincipal teste = new JanPrincipal(pasta_botoes, arquivos_botoes);
+                carregando.dispose();
+                teste.setVisible(true);
+            }
+        });
     }
 }
@@ -0,0 +1,608 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * Classe que implementa o formato de arquivo de botão (FIB). A versão 2.0 do formato tem um cabeçalho
+ * fixo seguido de uma tabela de seções; cada seção (nomes, ícone, som e metadados) tem posição, tamanho
+ * e CRC32 próprios, o que permite ler apenas a parte desejada de um arquivo e detectar corrupção. Os
+ * arquivos da versão 1.0 continuam podendo ser lidos. Em vez da seção de som, um botão pode ter uma seção
+ * de referência ao som, com a chave do som num {@link RepositorioSons} (a pasta "sons" junto ao arquivo).
+ *
+ * <pre>
+ * "FIB2.0\0"                                    versão (cstring, 7 bytes)
+ * N                                             número de seções (1 byte)
+ * N x { tipo, posição, tamanho, CRC32 }         tabela de seções (1 + 4 + 4 + 4 bytes cada)
+ * CRC32                                         CRC32 de tudo o que vem antes (4 bytes)
+ * seções                                        posições relativas ao início do botão
+ * </pre>
+ * @author Felipe Michels Fontoura
+ */
+public class ArquivoBotao implements ConstantesArmazenamento {
+    /**
+     * Versão 1.0 do formato (cstring).
+     */
+    static final byte[] VERSAO_1 = new byte[] { 'F', 'I', 'B', '1', '.', '0', 0 };
+
+    /**
+     * Versão 2.0 do formato (cstring).
+     */
+    static final byte[] VERSAO_2 = new byte[] { 'F', 'I', 'B', '2', '.', '0', 0 };
+
+    /**
+     * Tipo da seção com os nomes do botão e do som.
+     */
+    public static final int SECAO_NOMES = 1;
+
+    /**
+     * Tipo da seção com o ícone.
+     */
+    public static final int SECAO_ICONE = 2;
+
+    /**
+     * Tipo da seção com o som.
+     */
+    public static final int SECAO_SOM = 3;
+
+    /**
+     * Tipo da seção com os metadados (taxa de amostragem e número de amostras do som).
+     */
+    public static final int SECAO_METADADOS = 4;
+
+    /**
+     * Tipo da seção com a chave do som no repositório de sons (em lugar da seção de som).
+     */
+    public static final int SECAO_REFERENCIA_SOM = 5;
+
+    /**
+     * Tamanho de cada entrada da tabela de seções, em bytes.
+     */
+    private static final int TAMANHO_ENTRADA = 13;
+
+    /**
+     * Número máximo de seções aceitas num arquivo.
+     */
+    private static final int MAXIMO_SECOES = 32;
+
+    /**
+     * Descritor de uma seção do arquivo.
+     */
+    private static class Secao {
+        /**
+         * Tipo da seção.
+         */
+        private int tipo;
+
+        /**
+         * Posição da seção, relativa ao início do botão.
+         */
+        private long posicao;
+
+        /**
+         * Tamanho da seção, em bytes.
+         */
+        private int tamanho;
+
+        /**
+         * CRC32 dos dados da seção (apenas na versão 2.0).
+         */
+        private int crc;
+
+        /**
+         * Se a seção tem CRC32 a verificar.
+         */
+        private boolean verificar;
+    }
+
+    /**
+     * Ordena as seções pela posição no arquivo.
+     */
+    private static final Comparator<Secao> ORDEM_POSICAO = new Comparator<Secao>() {
+        @Override public int compare(Secao a, Secao b) {
+            return (a.posicao < b.posicao) ? -1 : ((a.posicao > b.posicao) ? 1 : 0);
+        }
+    };
+
+    /**
+     * Arquivo aberto.
+     */
+    private File origem;
+
+    /**
+     * Arquivo de acesso aleatório aberto.
+     */
+    private RandomAccessFile arquivo;
+
+    /**
+     * Versão do formato do arquivo aberto (1 ou 2).
+     */
+    private int versao;
+
+    /**
+     * Tabela de seções do arquivo aberto.
+     */
+    private Secao[] secoes;
+
+    /**
+     * Abre um arquivo de botão para leitura de suas seções. Apenas o cabeçalho é lido.
+     * @param origem Arquivo a abrir.
+     * @throws IOException Caso o arquivo não possa ser lido ou não seja um arquivo de botão válido.
+     */
+    public ArquivoBotao(File origem) throws IOException {
+        this.origem = origem;
+        arquivo = new RandomAccessFile(origem, "r");
+        try {
+            byte[] cabecalho = new byte[VERSAO_2.length];
+            arquivo.readFully(cabecalho);
+            if (Arrays.equals(cabecalho, VERSAO_2)) {
+                versao = 2;
+                secoes = lerTabela(arquivo, cabecalho);
+            } else if (Arrays.equals(cabecalho, VERSAO_1)) {
+                versao = 1;
+                secoes = localizarSecoesVersao1();
+            } else {
+                throw new IOException("Formato de arquivo de botão desconhecido.");
+            }
+        } catch (IOException ioe) {
+            arquivo.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Obtém a versão do formato do arquivo aberto.
+     * @return Versão do formato (1 ou 2).
+     */
+    public int obterVersao() {
+        return versao;
+    }
+
+    /**
+     * Lê os nomes do botão e do som.
+     * @return Vetor com o nome do botão e o nome do som, nessa ordem.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public String[] lerNomes() throws IOException {
+        return decodificarNomes(lerSecao(SECAO_NOMES));
+    }
+
+    /**
+     * Lê o ícone do botão.
+     * @return Ícone do botão.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public Icone lerIcone() throws IOException {
+        return Icone.lerIcone(new ByteArrayInputStream(lerSecao(SECAO_ICONE)));
+    }
+
+    /**
+     * Lê o som do botão, do próprio arquivo ou do repositório de sons da pasta do arquivo. O som retornado
+     * é internado (ver {@link RepositorioSons#internar(Som)}).
+     * @return Som do botão.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public Som lerSom() throws IOException {
+        String chave = lerReferenciaSom();
+        if (chave != null) return RepositorioSons.daPastaBotoes(origem.getAbsoluteFile().getParentFile()).obter(chave);
+        return RepositorioSons.internar(Som.lerSom(new ByteArrayInputStream(lerSecao(SECAO_SOM))));
+    }
+
+    /**
+     * Lê a chave do som no repositório de sons, se o som não estiver no próprio arquivo.
+     * @return Chave do som, ou nulo se o som estiver no arquivo.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public String lerReferenciaSom() throws IOException {
+        Secao referencia = procurarSecao(SECAO_REFERENCIA_SOM);
+        if (referencia == null) return null;
+        return decodificarReferencia(lerSecao(referencia));
+    }
+
+    /**
+     * Obtém a chave do som (ver {@link RepositorioSons#calcularChave(Som)}). Se o som estiver no
+     * repositório, a chave é a própria referência; caso contrário, o som é lido para calcular a chave.
+     * @return Chave do som.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public String lerChaveSom() throws IOException {
+        String chave = lerReferenciaSom();
+        if (chave != null) return chave;
+        return RepositorioSons.calcularChave(Som.lerSom(new ByteArrayInputStream(lerSecao(SECAO_SOM))));
+    }
+
+    /**
+     * Obtém o número de amostras do som sem ler as amostras.
+     * @return Número de amostras do som.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    public int lerContagemAmostras() throws IOException {
+        Secao metadados = procurarSecao(SECAO_METADADOS);
+        if (metadados != null) {
+            DataInputStream fluxo = new DataInputStream(new ByteArrayInputStream(lerSecao(metadados)));
+            fluxo.readInt(); // taxa de amostragem
+            return fluxo.readInt();
+        }
+
+        // não há metadados (versão 1.0): lê apenas o tamanho no início da seção de som.
+        Secao som = procurarSecao(SECAO_SOM);
+        if (som == null) throw new IOException("Seção de som ausente.");
+        arquivo.seek(som.posicao);
+        return arquivo.readUnsignedShort();
+    }
+
+    /**
+     * Lê o botão completo.
+     * @return Botão lido.
+     * @throws IOException Caso haja problema na leitura ou alguma seção esteja corrompida.
+     */
+    public Botao lerBotao() throws IOException {
+        String[] nomes = lerNomes();
+        return new Botao(nomes[0], lerIcone(), nomes[1], lerSom());
+    }
+
+    /**
+     * Fecha o arquivo.
+     */
+    public void fechar() {
+        try {
+            arquivo.close();
+        } catch (IOException ioe) {}
+    }
+
+    /**
+     * Procura uma seção de determinado tipo na tabela de seções.
+     * @param tipo Tipo da seção.
+     * @return Descritor da seção, ou nulo se ela não existir.
+     */
+    private Secao procurarSecao(int tipo) {
+        for (Secao secao : secoes)
+            if (secao.tipo == tipo) return secao;
+        return null;
+    }
+
+    /**
+     * Lê os dados de uma seção de determinado tipo, verificando o CRC32.
+     * @param tipo Tipo da seção.
+     * @return Dados da seção.
+     * @throws IOException Caso a seção não exista, haja problema na leitura ou a seção esteja corrompida.
+     */
+    private byte[] lerSecao(int tipo) throws IOException {
+        Secao secao = procurarSecao(tipo);
+        if (secao == null) throw new IOException("Seção " + tipo + " ausente.");
+        return lerSecao(secao);
+    }
+
+    /**
+     * Lê os dados de uma seção, verificando o CRC32.
+     * @param secao Descritor da seção.
+     * @return Dados da seção.
+     * @throws IOException Caso haja problema na leitura ou a seção esteja corrompida.
+     */
+    private byte[] lerSecao(Secao secao) throws IOException {
+        byte[] dados = new byte[secao.tamanho];
+        arquivo.seek(secao.posicao);
+        arquivo.readFully(dados);
+        verificarSecao(secao, dados);
+        return dados;
+    }
+
+    /**
+     * Monta a tabela de seções de um arquivo na versão 1.0, que não tem tabela. Apenas os tamanhos dos
+     * nomes e do som são lidos.
+     * @return Tabela de seções.
+     * @throws IOException Caso haja problema na leitura.
+     */
+    private Secao[] localizarSecoesVersao1() throws IOException {
+        long posicao = VERSAO_1.length;
+
+        // nomes do botão e do som (dois UTFs).
+        arquivo.seek(posicao);
+        int tamanho_nome_botao = arquivo.readUnsignedShort();
+        arquivo.seek(posicao + 2 + tamanho_nome_botao);
+        int tamanho_nome_som = arquivo.readUnsignedShort();
+        Secao nomes = criarSecao(SECAO_NOMES, posicao, 4 + tamanho_nome_botao + tamanho_nome_som);
+        posicao += nomes.tamanho;
+
+        // ícone.
+        Secao icone = criarSecao(SECAO_ICONE, posicao, ICONE_BYTES);
+        posicao += icone.tamanho;
+
+        // som (tamanho seguido das amostras).
+        arquivo.seek(posicao);
+        Secao som = criarSecao(SECAO_SOM, posicao, 2 + arquivo.readUnsignedShort());
+
+        return new Secao[] { nomes, icone, som };
+    }
+
+    /**
+     * Cria um descritor de seção sem CRC32.
+     * @param tipo Tipo da seção.
+     * @param posicao Posição da seção.
+     * @param tamanho Tamanho da seção.
+     * @return Descritor da seção.
+     */
+    private static Secao criarSecao(int tipo, long posicao, int tamanho) {
+        Secao secao = new Secao();
+        secao.tipo = tipo;
+        secao.posicao = posicao;
+        secao.tamanho = tamanho;
+        secao.verificar = false;
+        return secao;
+    }
+
+    /**
+     * Lê e valida a tabela de seções da versão 2.0. A versão já deve ter sido lida.
+     * @param entrada Entrada de dados posicionada logo após a versão.
+     * @param versao Bytes da versão já lidos.
+     * @return Tabela de seções.
+     * @throws IOException Caso haja problema na leitura ou a tabela esteja corrompida.
+     */
+    private static Secao[] lerTabela(DataInput entrada, byte[] versao) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(versao);
+
+        // lê o número de seções e a tabela.
+        int contagem = entrada.readUnsignedByte();
+        if (contagem > MAXIMO_SECOES) throw new IOException("Número de seções inválido.");
+        byte[] tabela = new byte[contagem * TAMANHO_ENTRADA];
+        entrada.readFully(tabela);
+        crc.update(contagem);
+        crc.update(tabela);
+        if ((int) crc.getValue() != entrada.readInt())
+            throw new IOException("Cabeçalho do arquivo de botão corrompido.");
+
+        // decodifica a tabela.
+        long inicio_dados = tamanhoCabecalho(contagem);
+        DataInputStream fluxo_tabela = new DataInputStream(new ByteArrayInputStream(tabela));
+        Secao[] secoes = new Secao[contagem];
+        for (int i = 0; i < contagem; i ++) {
+            secoes[i] = new Secao();
+            secoes[i].tipo = fluxo_tabela.readUnsignedByte();
+            secoes[i].posicao = 0xFFFFFFFFL & fluxo_tabela.readInt();
+            secoes[i].tamanho = fluxo_tabela.readInt();
+            secoes[i].crc = fluxo_tabela.readInt();
+            secoes[i].verificar = true;
+            if (secoes[i].posicao < inicio_dados || secoes[i].tamanho < 0)
+                throw new IOException("Tabela de seções inválida.");
+        }
+        return secoes;
+    }
+
+    /**
+     * Calcula o tamanho do cabeçalho da versão 2.0 (versão, tabela e CRC32).
+     * @param contagem Número de seções.
+     * @return Tamanho do cabeçalho, em bytes.
+     */
+    private static int tamanhoCabecalho(int contagem) {
+        return VERSAO_2.length + 1 + contagem * TAMANHO_ENTRADA + 4;
+    }
+
+    /**
+     * Verifica o CRC32 dos dados de uma seção.
+     * @param secao Descritor da seção.
+     * @param dados Dados da seção.
+     * @throws IOException Caso o CRC32 não confira.
+     */
+    private static void verificarSecao(Secao secao, byte[] dados) throws IOException {
+        if (! secao.verificar) return;
+        CRC32 crc = new CRC32();
+        crc.update(dados);
+        if ((int) crc.getValue() != secao.crc)
+            throw new IOException("Seção " + secao.tipo + " do arquivo de botão corrompida.");
+    }
+
+    /**
+     * Decodifica a seção de nomes.
+     * @param dados Dados da seção.
+     * @return Vetor com o nome do botão e o nome do som, nessa ordem.
+     * @throws IOException Caso os dados sejam inválidos.
+     */
+    private static String[] decodificarNomes(byte[] dados) throws IOException {
+        DataInputStream fluxo = new DataInputStream(new ByteArrayInputStream(dados));
+        String nome_botao = fluxo.readUTF();
+        String nome_som = fluxo.readUTF();
+        return new String[] { nome_botao, nome_som };
+    }
+
+    /**
+     * Decodifica a seção de referência ao som.
+     * @param dados Dados da seção.
+     * @return Chave do som.
+     * @throws IOException Caso os dados sejam inválidos.
+     */
+    private static String decodificarReferencia(byte[] dados) throws IOException {
+        String chave = new DataInputStream(new ByteArrayInputStream(dados)).readUTF();
+        if (! RepositorioSons.chaveValida(chave)) throw new IOException("Chave de som inválida.");
+        return chave;
+    }
+
+    /**
+     * Lê o restante de um botão na versão 2.0 de um fluxo sequencial. A versão já deve ter sido lida. Apenas
+     * os bytes do botão são consumidos do fluxo; seções desconhecidas são ignoradas.
+     * @param fluxo Fluxo de entrada posicionado logo após a versão.
+     * @param repositorio Repositório de onde ler o som, se o botão o referenciar. Pode ser <b>null</b>.
+     * @return Botão lido.
+     * @throws IOException Caso haja problema na leitura, o botão esteja corrompido ou referencie um som
+     * sem que haja repositório.
+     */
+    static Botao lerBotao(DataInputStream fluxo, RepositorioSons repositorio) throws IOException {
+        // lê a tabela e ordena as seções pela posição, para lê-las em sequência.
+        Secao[] secoes = lerTabela(fluxo, VERSAO_2);
+        Secao[] ordenadas = secoes.clone();
+        Arrays.sort(ordenadas, ORDEM_POSICAO);
+
+        // lê as seções conhecidas.
+        long posicao = tamanhoCabecalho(secoes.length);
+        byte[] nomes = null, icone = null, som = null, referencia = null;
+        for (Secao secao : ordenadas) {
+            if (secao.posicao < posicao) throw new IOException("Seções sobrepostas.");
+            pular(fluxo, secao.posicao - posicao);
+            byte[] dados = new byte[secao.tamanho];
+            fluxo.readFully(dados);
+            posicao = secao.posicao + secao.tamanho;
+            verificarSecao(secao, dados);
+            if (secao.tipo == SECAO_NOMES) nomes = dados;
+            else if (secao.tipo == SECAO_ICONE) icone = dados;
+            else if (secao.tipo == SECAO_SOM) som = dados;
+            else if (secao.tipo == SECAO_REFERENCIA_SOM) referencia = dados;
+        }
+        if (nomes == null || icone == null || (som == null && referencia == null))
+            throw new IOException("Arquivo de botão incompleto.");
+
+        // obtém o som, do próprio fluxo ou do repositório.
+        Som som_botao;
+        if (som != null) {
+            som_botao = RepositorioSons.internar(Som.lerSom(new ByteArrayInputStream(som)));
+        } else if (repositorio != null) {
+            som_botao = repositorio.obter(decodificarReferencia(referencia));
+        } else {
+            throw new IOException("Botão referencia um som, mas não há repositório de sons.");
+        }
+
+        // constrói o botão.
+        String[] nome = decodificarNomes(nomes);
+        return new Botao(
+          /* nome do botão: */ nome[0],
+          /*         ícone: */ Icone.lerIcone(new ByteArrayInputStream(icone)),
+          /*   nome do som: */ nome[1],
+          /*           som: */ som_botao
+        );
+    }
+
+    /**
+     * Pula um número de bytes de um fluxo de entrada.
+     * @param fluxo Fluxo de entrada.
+     * @param bytes Número de bytes a pular.
+     * @throws IOException Caso o fluxo termine antes.
+     */
+    private static void pular(DataInputStream fluxo, long bytes) throws IOException {
+        while (bytes > 0) {
+            int pulados = fluxo.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (pulados <= 0) throw new EOFException();
+            bytes -= pulados;
+        }
+    }
+
+    /**
+     * Escreve um botão na versão 2.0 do formato.
+     * @param botao Botão a escrever.
+     * @param fluxo Fluxo de saída.
+     * @param repositorio Repositório onde guardar o som, que passa a ser apenas referenciado pelo botão. Se
+     * for <b>null</b>, o som é escrito no próprio botão.
+     * @throws IOException Caso haja problema com o fluxo de saída ou com o repositório.
+     */
+    static void escreverBotao(Botao botao, OutputStream fluxo, RepositorioSons repositorio) throws IOException {
+        // lê o som uma única vez (ele pode ser carregado sob demanda) e codifica as seções.
+        Som som_botao = botao.obterSom();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(ICONE_BYTES + 2 + som_botao.contagemAmostras());
+        DataOutputStream dados = new DataOutputStream(buffer);
+        dados.writeUTF(botao.obterNomeBotao());
+        dados.writeUTF(botao.obterNomeSom());
+        byte[] nomes = buffer.toByteArray();
+
+        buffer.reset();
+        botao.obterIcone().escreverIcone(buffer);
+        byte[] icone = buffer.toByteArray();
+
+        buffer.reset();
+        int tipo_som;
+        if (repositorio != null) {
+            tipo_som = SECAO_REFERENCIA_SOM;
+            dados.writeUTF(repositorio.guardar(som_botao));
+        } else {
+            tipo_som = SECAO_SOM;
+            som_botao.escreverSom(buffer, Som.obterCodec(CodecSom.TAG_SEM_PERDAS));
+        }
+        byte[] som = buffer.toByteArray();
+
+        buffer.reset();
+        dados.writeInt(SOM_AMOSTRAGEM);
+        dados.writeInt(som_botao.contagemAmostras());
+        byte[] metadados = buffer.toByteArray();
+
+        escreverSecoes(
+          /*  tipos: */ new int[] { SECAO_NOMES, SECAO_ICONE, tipo_som, SECAO_METADADOS },
+          /* seções: */ new byte[][] { nomes, icone, som, metadados },
+          /*  fluxo: */ fluxo
+        );
+    }
+
+    /**
+     * Escreve um botão na versão 1.0 do formato, sem tabela de seções, com o som no formato simples.
+     * @param botao Botão a escrever.
+     * @param fluxo Fluxo de saída.
+     * @throws IOException Caso haja problema com o fluxo de saída.
+     */
+    static void escreverBotaoVersao1(Botao botao, OutputStream fluxo) throws IOException {
+        DataOutputStream fluxo_dados = new DataOutputStream(fluxo);
+        fluxo_dados.write(VERSAO_1);
+        fluxo_dados.writeUTF(botao.obterNomeBotao());
+        fluxo_dados.writeUTF(botao.obterNomeSom());
+        botao.obterIcone().escreverIcone(fluxo_dados);
+        botao.obterSom().escreverSom(fluxo_dados);
+        fluxo_dados.flush();
+    }
+
+    /**
+     * Escreve o cabeçalho, a tabela e as seções de um botão na versão 2.0, em sequência.
+     * @param tipos Tipos das seções.
+     * @param dados Dados das seções.
+     * @param fluxo Fluxo de saída.
+     * @throws IOException Caso haja problema com o fluxo de saída.
+     */
+    private static void escreverSecoes(int[] tipos, byte[][] dados, OutputStream fluxo) throws IOException {
+        // monta o cabeçalho e a tabela.
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(tamanhoCabecalho(tipos.length));
+        DataOutputStream cabecalho = new DataOutputStream(buffer);
+        cabecalho.write(VERSAO_2);
+        cabecalho.writeByte(tipos.length);
+        long posicao = tamanhoCabecalho(tipos.length);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < tipos.length; i ++) {
+            crc.reset();
+            crc.update(dados[i]);
+            cabecalho.writeByte(tipos[i]);
+            cabecalho.writeInt((int) posicao);
+            cabecalho.writeInt(dados[i].length);
+            cabecalho.writeInt((int) crc.getValue());
+            posicao += dados[i].length;
+        }
+        crc.reset();
+        crc.update(buffer.toByteArray());
+        cabecalho.writeInt((int) crc.getValue());
+
+        // escreve o cabeçalho e as seções.
+        buffer.writeTo(fluxo);
+        for (byte[] secao : dados)
+            fluxo.write(secao);
+    }
+}
@@ -0,0 +1,495 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Classe que implementa o formato de arquivo de prancha (FIP). Na versão 1.0, o arquivo contém a versão
+ * ("FIP1.0\0"), o número de botões (1 byte) e os botões, um após o outro, na versão 1.0 do formato de
+ * arquivo de botão (ver {@link ArquivoBotao}).
+ * <p>
+ * Na versão 2.0 ("FIP2.0\0"), cada botão é guardado como seus nomes, seu ícone e a chave do seu som no
+ * repositório de sons (ver {@link RepositorioSons}), opcionalmente seguida de uma cópia do som, usada
+ * quando o som não está na biblioteca de quem abre a prancha. Cada botão tem o formato:
+ * <ul>
+ * <li>opções (1 byte; o bit 0 indica se há uma cópia do som);</li>
+ * <li>nome do botão e nome do som (UTF);</li>
+ * <li>ícone (8 bytes);</li>
+ * <li>chave do som (UTF);</li>
+ * <li>se houver cópia do som, o tamanho da cópia (int) e o som, codificado sem perdas.</li>
+ * </ul>
+ * O arquivo termina com o CRC32 de todo o conteúdo anterior (int).
+ * <p>
+ * Os arquivos são lidos e escritos por canais de arquivo com buffers diretos grandes, e as operações
+ * podem ser feitas em segundo plano.
+ * @author Felipe Michels Fontoura
+ */
+public class ArquivoPrancha implements ConstantesArmazenamento {
+    /**
+     * Versão 1.0 do formato (cstring).
+     */
+    static final byte[] VERSAO_1 = new byte[] { 'F', 'I', 'P', '1', '.', '0', 0 };
+
+    /**
+     * Versão 2.0 do formato (cstring), com os sons referenciados pela chave.
+     */
+    static final byte[] VERSAO_2 = new byte[] { 'F', 'I', 'P', '2', '.', '0', 0 };
+
+    /**
+     * Opção da versão 2.0 que indica que o botão traz uma cópia do som.
+     */
+    private static final int OPCAO_SOM_EMBUTIDO = 0x01;
+
+    /**
+     * Número máximo de botões numa prancha.
+     */
+    public static final int MAXIMO_BOTOES = 4;
+
+    /**
+     * Tamanho dos buffers diretos usados na leitura e na escrita.
+     */
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    /**
+     * Tamanho mínimo de um botão num arquivo (versão, dois nomes vazios, ícone e som vazio).
+     */
+    private static final int TAMANHO_MINIMO_BOTAO = 7 + 2 + 2 + ICONE_BYTES + 2;
+
+    /**
+     * Tamanho mínimo de um botão na versão 2.0 (opções, dois nomes vazios, ícone e chave vazia).
+     */
+    private static final int TAMANHO_MINIMO_REFERENCIA = 1 + 2 + 2 + ICONE_BYTES + 2;
+
+    private ArquivoPrancha() {
+    }
+
+    /**
+     * Lê um arquivo de prancha, sem biblioteca para resolver as referências a sons. Pranchas da versão 2.0
+     * só podem ser lidas assim se trouxerem cópias dos sons.
+     * @param origem Arquivo a ler.
+     * @return Botões da prancha.
+     * @throws IOException Caso haja problema na leitura ou o arquivo não seja uma prancha válida.
+     */
+    public static Botao[] ler(File origem) throws IOException {
+        return ler(origem, null);
+    }
+
+    /**
+     * Lê um arquivo de prancha. O cabeçalho e o número de botões são validados antes de os botões serem
+     * lidos, em sequência. Na versão 2.0, os sons são procurados primeiro no repositório e, se não
+     * estiverem lá, as cópias guardadas na prancha são usadas.
+     * @param origem Arquivo a ler.
+     * @param repositorio Repositório de sons da biblioteca (ou nulo).
+     * @return Botões da prancha.
+     * @throws IOException Caso haja problema na leitura, o arquivo não seja uma prancha válida ou algum som
+     * não possa ser encontrado.
+     */
+    public static Botao[] ler(File origem, RepositorioSons repositorio) throws IOException {
+        FileInputStream arquivo = new FileInputStream(origem);
+        try {
+            FileChannel canal = arquivo.getChannel();
+            CheckedInputStream fluxo_verificado = new CheckedInputStream(new FluxoEntradaCanal(canal), new CRC32());
+            DataInputStream fluxo = new DataInputStream(fluxo_verificado);
+
+            // valida o cabeçalho.
+            byte[] versao = new byte[VERSAO_1.length];
+            fluxo.readFully(versao);
+            if (Arrays.equals(versao, VERSAO_2))
+                return lerReferencias(canal, fluxo_verificado, fluxo, repositorio);
+            if (! Arrays.equals(versao, VERSAO_1)) throw new IOException("Formato de arquivo de prancha desconhecido.");
+
+            // valida a contagem de botões.
+            int contagem = fluxo.readUnsignedByte();
+            if (contagem > MAXIMO_BOTOES) throw new IOException("Número de botões inválido: " + contagem + ".");
+            if (canal.size() < VERSAO_1.length + 1 + (long) contagem * TAMANHO_MINIMO_BOTAO)
+                throw new IOException("Arquivo de prancha truncado.");
+
+            // lê os botões.
+            Botao[] botoes = new Botao[contagem];
+            for (int i = 0; i < contagem; i ++) {
+                botoes[i] = Botao.lerBotao(fluxo);
+                if (botoes[i] == null) throw new IOException("Botão " + (i + 1) + " da prancha inválido.");
+            }
+            return botoes;
+        } finally {
+            arquivo.close();
+        }
+    }
+
+    /**
+     * Lê os botões de uma prancha da versão 2.0, logo após o cabeçalho.
+     * @param canal Canal do arquivo.
+     * @param fluxo_verificado Fluxo que calcula o CRC32 do conteúdo.
+     * @param fluxo Fluxo de dados sobre o fluxo verificado.
+     * @param repositorio Repositório de sons da biblioteca (ou nulo).
+     * @return Botões da prancha.
+     * @throws IOException Caso haja problema na leitura ou algum som não possa ser encontrado.
+     */
+    private static Botao[] lerReferencias(FileChannel canal, CheckedInputStream fluxo_verificado, DataInputStream fluxo, RepositorioSons repositorio) throws IOException {
+        // valida a contagem de botões.
+        int contagem = fluxo.readUnsignedByte();
+        if (contagem > MAXIMO_BOTOES) throw new IOException("Número de botões inválido: " + contagem + ".");
+        if (canal.size() < VERSAO_2.length + 1 + (long) contagem * TAMANHO_MINIMO_REFERENCIA + 4)
+            throw new IOException("Arquivo de prancha truncado.");
+
+        // lê os botões.
+        Botao[] botoes = new Botao[contagem];
+        for (int i = 0; i < contagem; i ++) {
+            int opcoes = fluxo.readUnsignedByte();
+            String nome_botao = fluxo.readUTF();
+            String nome_som = fluxo.readUTF();
+            byte[] grade = new byte[ICONE_BYTES];
+            fluxo.readFully(grade);
+            Icone icone = Icone.lerIcone(new ByteArrayInputStream(grade));
+            String chave = fluxo.readUTF();
+            if (! RepositorioSons.chaveValida(chave))
+                throw new IOException("Botão " + (i + 1) + " da prancha inválido.");
+
+            // procura o som na biblioteca.
+            Som som = null;
+            IOException erro = null;
+            if (repositorio != null && repositorio.contem(chave)) {
+                try {
+                    som = repositorio.obter(chave);
+                } catch (IOException ioe) {
+                    erro = ioe;
+                }
+            }
+
+            // lê (ou pula) a cópia do som.
+            if ((opcoes & OPCAO_SOM_EMBUTIDO) != 0) {
+                int tamanho = fluxo.readInt();
+                if (tamanho < 0 || tamanho > canal.size()) throw new IOException("Botão " + (i + 1) + " da prancha inválido.");
+                if (som != null) {
+                    if (fluxo.skipBytes(tamanho) != tamanho) throw new EOFException();
+                } else {
+                    byte[] dados = new byte[tamanho];
+                    fluxo.readFully(dados);
+                    som = Som.lerSom(new ByteArrayInputStream(dados));
+                    if (som == null || ! chave.equals(RepositorioSons.calcularChave(som)))
+                        throw new IOException("A cópia do som do botão " + (i + 1) + " da prancha está corrompida.");
+                    som = RepositorioSons.internar(som);
+                }
+            }
+            if (som == null) {
+                if (erro != null) throw erro;
+                throw new IOException("O som " + nome_som + " não foi encontrado na biblioteca.");
+            }
+            botoes[i] = new Botao(nome_botao, icone, nome_som, som);
+        }
+
+        // verifica o CRC.
+        int crc = (int) fluxo_verificado.getChecksum().getValue();
+        if (fluxo.readInt() != crc) throw new IOException("Arquivo de prancha corrompido.");
+        return botoes;
+    }
+
+    /**
+     * Lê as chaves dos sons que uma prancha apenas referencia, isto é, dos botões sem cópia do som. Pranchas
+     * da versão 1.0 trazem os sons completos, então não referenciam nenhum.
+     * @param origem Arquivo a ler.
+     * @return Chaves referenciadas.
+     * @throws IOException Caso haja problema na leitura ou o arquivo não seja uma prancha válida.
+     */
+    static List<String> lerChavesReferenciadas(File origem) throws IOException {
+        List<String> chaves = new ArrayList<String>();
+        DataInputStream fluxo = new DataInputStream(new BufferedInputStream(new FileInputStream(origem)));
+        try {
+            byte[] versao = new byte[VERSAO_2.length];
+            fluxo.readFully(versao);
+            if (Arrays.equals(versao, VERSAO_1)) return chaves;
+            if (! Arrays.equals(versao, VERSAO_2)) throw new IOException("Formato de arquivo de prancha desconhecido.");
+
+            int contagem = fluxo.readUnsignedByte();
+            if (contagem > MAXIMO_BOTOES) throw new IOException("Número de botões inválido: " + contagem + ".");
+            for (int i = 0; i < contagem; i ++) {
+                int opcoes = fluxo.readUnsignedByte();
+                fluxo.readUTF();
+                fluxo.readUTF();
+                if (fluxo.skipBytes(ICONE_BYTES) != ICONE_BYTES) throw new EOFException();
+                String chave = fluxo.readUTF();
+                if ((opcoes & OPCAO_SOM_EMBUTIDO) != 0) {
+                    int tamanho = fluxo.readInt();
+                    if (tamanho < 0 || fluxo.skipBytes(tamanho) != tamanho) throw new EOFException();
+                } else {
+                    chaves.add(chave);
+                }
+            }
+            return chaves;
+        } finally {
+            fluxo.close();
+        }
+    }
+
+    /**
+     * Grava um arquivo de prancha na versão 1.0, com cópias completas dos botões na versão 1.0 do formato de
+     * botão, para que o arquivo continue podendo ser lido por versões antigas do programa.
+     * @param destino Arquivo de destino.
+     * @param botoes Botões da prancha.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public static void gravar(File destino, Botao[] botoes) throws IOException {
+        if (botoes.length > MAXIMO_BOTOES) throw new IOException("Número de botões inválido: " + botoes.length + ".");
+        FileOutputStream arquivo = new FileOutputStream(destino);
+        try {
+            OutputStream fluxo = new FluxoSaidaCanal(arquivo.getChannel());
+            fluxo.write(VERSAO_1);
+            fluxo.write(botoes.length);
+            for (Botao botao : botoes)
+                ArquivoBotao.escreverBotaoVersao1(botao, fluxo);
+            fluxo.flush();
+        } finally {
+            arquivo.close();
+        }
+    }
+
+    /**
+     * Grava um arquivo de prancha na versão 2.0, com os sons referenciados pela chave. Os sons são
+     * guardados no repositório, se ainda não estiverem lá. Uma prancha sem cópias dos sons é registrada no
+     * repositório, para que os sons que ela referencia não sejam apagados.
+     * @param destino Arquivo de destino.
+     * @param botoes Botões da prancha.
+     * @param repositorio Repositório de sons da biblioteca. Se for nulo, as cópias dos sons são sempre
+     * guardadas na prancha.
+     * @param embutir_sons Se cópias dos sons devem ser guardadas na prancha, para que ela possa ser aberta
+     * sem a biblioteca.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public static void gravar(File destino, Botao[] botoes, RepositorioSons repositorio, boolean embutir_sons) throws IOException {
+        if (botoes.length > MAXIMO_BOTOES) throw new IOException("Número de botões inválido: " + botoes.length + ".");
+        if (repositorio == null) embutir_sons = true;
+
+        // obtém os sons e suas chaves. Uma prancha só com referências é registrada no repositório, com as
+        // chaves, antes de ser escrita.
+        Som[] sons = new Som[botoes.length];
+        List<String> chaves = new ArrayList<String>();
+        for (int i = 0; i < botoes.length; i ++) {
+            sons[i] = botoes[i].obterSom();
+            chaves.add(repositorio != null ? repositorio.guardar(sons[i]) : RepositorioSons.calcularChave(sons[i]));
+        }
+        if (! embutir_sons) repositorio.registrarPrancha(destino, chaves);
+
+        FileOutputStream arquivo = new FileOutputStream(destino);
+        try {
+            OutputStream fluxo_canal = new FluxoSaidaCanal(arquivo.getChannel());
+            CheckedOutputStream fluxo_verificado = new CheckedOutputStream(fluxo_canal, new CRC32());
+            DataOutputStream fluxo = new DataOutputStream(fluxo_verificado);
+            fluxo.write(VERSAO_2);
+            fluxo.write(botoes.length);
+            for (int i = 0; i < botoes.length; i ++) {
+                Botao botao = botoes[i];
+                Som som = sons[i];
+                String chave = chaves.get(i);
+                fluxo.write(embutir_sons ? OPCAO_SOM_EMBUTIDO : 0);
+                fluxo.writeUTF(botao.obterNomeBotao());
+                fluxo.writeUTF(botao.obterNomeSom());
+                botao.obterIcone().escreverIcone(fluxo);
+                fluxo.writeUTF(chave);
+                if (embutir_sons) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    som.escreverSom(buffer, Som.obterCodec(CodecSom.TAG_SEM_PERDAS));
+                    fluxo.writeInt(buffer.size());
+                    buffer.writeTo(fluxo);
+                }
+            }
+            fluxo.flush();
+            new DataOutputStream(fluxo_canal).writeInt((int) fluxo_verificado.getChecksum().getValue());
+            fluxo_canal.flush();
+        } finally {
+            arquivo.close();
+        }
+    }
+
+    /**
+     * Lê um arquivo de prancha numa thread própria, sem biblioteca para resolver as referências a sons.
+     * @param origem Arquivo a ler.
+     * @param ouvinte Ouvinte que recebe os botões lidos ou o erro.
+     */
+    public static void lerEmSegundoPlano(File origem, OuvinteArquivoPrancha ouvinte) {
+        lerEmSegundoPlano(origem, null, ouvinte);
+    }
+
+    /**
+     * Lê um arquivo de prancha numa thread própria.
+     * @param origem Arquivo a ler.
+     * @param repositorio Repositório de sons da biblioteca (ou nulo).
+     * @param ouvinte Ouvinte que recebe os botões lidos ou o erro.
+     */
+    public static void lerEmSegundoPlano(final File origem, final RepositorioSons repositorio, final OuvinteArquivoPrancha ouvinte) {
+        new Thread("Leitura de prancha") {
+            @Override public void run() {
+                Botao[] botoes;
+                try {
+                    botoes = ler(origem, repositorio);
+                } catch (IOException ioe) {
+                    ouvinte.operacaoFalhou(ioe);
+                    return;
+                }
+                ouvinte.leituraConcluida(botoes);
+            }
+        }.start();
+    }
+
+    /**
+     * Grava um arquivo de prancha na versão 1.0 numa thread própria. Os botões são copiados antes da
+     * gravação começar, de modo que podem continuar sendo alterados.
+     * @param destino Arquivo de destino.
+     * @param botoes Botões da prancha.
+     * @param ouvinte Ouvinte que recebe a conclusão ou o erro.
+     */
+    public static void gravarEmSegundoPlano(File destino, Botao[] botoes, OuvinteArquivoPrancha ouvinte) {
+        gravarEmSegundoPlano(destino, botoes, true, null, true, ouvinte);
+    }
+
+    /**
+     * Grava um arquivo de prancha na versão 2.0 numa thread própria. Os botões são copiados antes da
+     * gravação começar, de modo que podem continuar sendo alterados.
+     * @param destino Arquivo de destino.
+     * @param botoes Botões da prancha.
+     * @param repositorio Repositório de sons da biblioteca (ou nulo).
+     * @param embutir_sons Se cópias dos sons devem ser guardadas na prancha.
+     * @param ouvinte Ouvinte que recebe a conclusão ou o erro.
+     */
+    public static void gravarEmSegundoPlano(File destino, Botao[] botoes, RepositorioSons repositorio, boolean embutir_sons, OuvinteArquivoPrancha ouvinte) {
+        gravarEmSegundoPlano(destino, botoes, false, repositorio, embutir_sons, ouvinte);
+    }
+
+    /**
+     * Grava um arquivo de prancha numa thread própria.
+     * @param destino Arquivo de destino.
+     * @param botoes Botões da prancha.
+     * @param versao_1 Se a prancha deve ser gravada na versão 1.0.
+     * @param repositorio Repositório de sons da biblioteca (ou nulo), na versão 2.0.
+     * @param embutir_sons Se cópias dos sons devem ser guardadas na prancha, na versão 2.0.
+     * @param ouvinte Ouvinte que recebe a conclusão ou o erro.
+     */
+    private static void gravarEmSegundoPlano(final File destino, Botao[] botoes, final boolean versao_1, final RepositorioSons repositorio, final boolean embutir_sons, final OuvinteArquivoPrancha ouvinte) {
+        final Botao[] copias = new Botao[botoes.length];
+        // os sons são lidos pela thread de gravação; se algum não puder ser lido, o ouvinte é informado.
+        for (int i = 0; i < botoes.length; i ++) copias[i] = Botao.copiarSemCarregar(botoes[i]);
+        new Thread("Gravação de prancha") {
+            @Override public void run() {
+                try {
+                    if (versao_1) gravar(destino, copias);
+                    else gravar(destino, copias, repositorio, embutir_sons);
+                } catch (IOException ioe) {
+                    ouvinte.operacaoFalhou(ioe);
+                    return;
+                }
+                ouvinte.gravacaoConcluida();
+            }
+        }.start();
+    }
+
+    /**
+     * Fluxo de entrada que lê de um canal de arquivo através de um buffer direto.
+     */
+    private static class FluxoEntradaCanal extends InputStream {
+        private FileChannel canal;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+
+        FluxoEntradaCanal(FileChannel canal) {
+            this.canal = canal;
+            buffer.limit(0);
+        }
+
+        /**
+         * Preenche o buffer, se estiver vazio.
+         * @return <b>false</b> se o canal terminou.
+         */
+        private boolean preencher() throws IOException {
+            while (! buffer.hasRemaining()) {
+                buffer.clear();
+                int lidos = canal.read(buffer);
+                buffer.flip();
+                if (lidos < 0) return false;
+            }
+            return true;
+        }
+
+        @Override public int read() throws IOException {
+            return preencher() ? buffer.get() & 0xFF : -1;
+        }
+
+        /**
+         * Lê até o número de bytes pedido, preenchendo o buffer quantas vezes for preciso; só lê menos se o
+         * canal terminar.
+         */
+        @Override public int read(byte[] destino, int inicio, int tamanho) throws IOException {
+            if (tamanho == 0) return 0;
+            int lidos = 0;
+            while (lidos < tamanho && preencher()) {
+                int parte = Math.min(tamanho - lidos, buffer.remaining());
+                buffer.get(destino, inicio + lidos, parte);
+                lidos += parte;
+            }
+            return (lidos == 0) ? -1 : lidos;
+        }
+    }
+
+    /**
+     * Fluxo de saída que escreve num canal de arquivo através de um buffer direto.
+     */
+    private static class FluxoSaidaCanal extends OutputStream {
+        private FileChannel canal;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+
+        FluxoSaidaCanal(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        @Override public void write(int b) throws IOException {
+            if (! buffer.hasRemaining()) flush();
+            buffer.put((byte) b);
+        }
+
+        @Override public void write(byte[] origem, int inicio, int tamanho) throws IOException {
+            while (tamanho > 0) {
+                if (! buffer.hasRemaining()) flush();
+                int l = Math.min(tamanho, buffer.remaining());
+                buffer.put(origem, inicio, l);
+                inicio += l;
+                tamanho -= l;
+            }
+        }
+
+        @Override public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) canal.write(buffer);
+            buffer.clear();
+        }
+    }
+}
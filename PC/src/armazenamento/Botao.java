@@ -27,14 +27,27 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 package armazenamento;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Classe representante de um modelo de botão.
  * @author Felipe Michels Fontoura
  */
 public class Botao implements ConstantesArmazenamento {
+    /**
+     * Número máximo de threads usadas na leitura de uma pasta de botões.
+     */
+    private static final int MAXIMO_THREADS_LEITURA = 8;
+
     /**
      * Nome do botão.
      */
@@ -51,10 +64,21 @@ public class Botao implements ConstantesArmazenamento {
     private String nome_som;
 
     /**
-     * Som associado a esse botão.
+     * Som associado a esse botão. É nulo se o som deve ser carregado sob demanda.
      */
     private Som som;
 
+    /**
+     * Arquivo de onde carregar o som sob demanda. É nulo se o som já está nesse objeto.
+     */
+    private File arquivo_som;
+
+    /**
+     * Chave do som carregado sob demanda (ver {@link RepositorioSons#calcularChave(Som)}). É nula se o som
+     * já está nesse objeto.
+     */
+    private String chave_som;
+
     /**
      * Cria um novo botão vazio.
      */
@@ -89,14 +113,67 @@ public class Botao implements ConstantesArmazenamento {
     }
 
     /**
-     * Cria um novo botão com conteúdos idênticos a outro.
+     * Cria um novo botão com conteúdos idênticos a outro. Se o som do outro botão for carregado sob
+     * demanda, ele é lido, de modo que a cópia não depende do arquivo do outro botão.
      * @param botao Botão a clonar.
+     * @throws IOException Caso o som do botão não possa ser lido.
      */
-    public Botao(Botao botao) {
+    public Botao(Botao botao) throws IOException {
         this.nome_botao = botao.nome_botao;
         this.icone = new Icone(botao.icone);
         this.nome_som = botao.nome_som;
-        this.som = new Som(botao.som);
+        this.som = botao.obterSom(); // o som é imutável, então pode ser compartilhado.
+    }
+
+    /**
+     * Lê de um arquivo apenas os nomes e o ícone de um botão. O som só é lido do arquivo quando for
+     * necessário, e fica num cache limitado, podendo ser descartado e lido novamente depois.
+     * @param arquivo Arquivo do botão.
+     * @return Botão lido.
+     * @throws IOException Caso haja problema na leitura do arquivo ou ele não seja um arquivo de botão.
+     */
+    public static Botao lerBotaoSobDemanda(File arquivo) throws IOException {
+        ArquivoBotao arquivo_botao = new ArquivoBotao(arquivo);
+        try {
+            String[] nomes = arquivo_botao.lerNomes();
+            return criarSobDemanda(arquivo, nomes[0], arquivo_botao.lerIcone(), nomes[1], arquivo_botao.lerChaveSom());
+        } finally {
+            arquivo_botao.fechar();
+        }
+    }
+
+    /**
+     * Cria um botão cujo som é carregado sob demanda de um arquivo.
+     * @param arquivo Arquivo do botão.
+     * @param nome_botao Nome do botão.
+     * @param icone Ícone do botão.
+     * @param nome_som Nome do som.
+     * @param chave_som Chave do som.
+     * @return Botão criado.
+     */
+    static Botao criarSobDemanda(File arquivo, String nome_botao, Icone icone, String nome_som, String chave_som) {
+        Botao botao = new Botao(nome_botao, icone, nome_som, null);
+        botao.som = null;
+        botao.arquivo_som = arquivo;
+        botao.chave_som = chave_som;
+        CacheSons.remover(arquivo);
+        return botao;
+    }
+
+    /**
+     * Cria uma cópia de um botão sem ler o som: se ele for carregado sob demanda, a cópia o lê do mesmo
+     * arquivo quando for necessário. A cópia deve ser usada antes que esse arquivo seja alterado.
+     * @param botao Botão a copiar.
+     * @return Cópia do botão.
+     */
+    static Botao copiarSemCarregar(Botao botao) {
+        synchronized (botao) {
+            Botao copia = new Botao(botao.nome_botao, new Icone(botao.icone), botao.nome_som, null);
+            copia.som = botao.som;
+            copia.arquivo_som = botao.arquivo_som;
+            copia.chave_som = botao.chave_som;
+            return copia;
+        }
     }
 
     /**
@@ -124,11 +201,32 @@ public class Botao implements ConstantesArmazenamento {
     }
 
     /**
-     * Obtém o som associado a esse botão.
+     * Obtém o som associado a esse botão. Se o som for carregado sob demanda, ele é lido do arquivo
+     * na primeira vez (ou quando tiver sido descartado do cache).
      * @return Som associado a esse botão.
+     * @throws IOException Caso o som seja carregado sob demanda e não possa ser lido.
      */
-    public Som obterSom() {
-        return som;
+    public Som obterSom() throws IOException {
+        File arquivo;
+        synchronized (this) {
+            if (som != null) return som;
+            arquivo = arquivo_som;
+        }
+
+        // verifica se o som está no cache.
+        Som carregado = CacheSons.obter(arquivo);
+        if (carregado != null) return carregado;
+
+        // lê o som do arquivo, fora do bloqueio do botão; uma falha é repassada a quem pediu o som, em vez de
+        // o som ser trocado por um som vazio.
+        ArquivoBotao arquivo_botao = new ArquivoBotao(arquivo);
+        try {
+            carregado = arquivo_botao.lerSom();
+        } finally {
+            arquivo_botao.fechar();
+        }
+        CacheSons.guardar(arquivo, carregado);
+        return carregado;
     }
 
     /**
@@ -162,36 +260,51 @@ public class Botao implements ConstantesArmazenamento {
     }
 
     /**
-     * Define o som associado a esse botão.
-     * @return Antigo som associado a esse botão.
+     * Define o som associado a esse botão. O som deixa de ser carregado sob demanda.
+     * @return Antigo som associado a esse botão (nulo se ele ainda não tinha sido carregado).
      */
-    public Som definirSom(Som som) {
+    public synchronized Som definirSom(Som som) {
         Som velho_som = this.som;
         this.som = som;
+        arquivo_som = null;
+        chave_som = null;
         return velho_som;
     }
 
     /**
-     * Lê um botão de um fluxo de entrada de dados.
+     * Lê um botão de um fluxo de entrada de dados. Aceita as versões 1.0 e 2.0 do formato. O som deve
+     * estar no próprio botão.
      * @param fluxo Fluxo de entrada de dados.
-     * @return Botão lido.
-     * @throws IOException Caso haja problema com o fluxo de entrada.
+     * @return Botão lido, ou nulo se a versão for desconhecida.
+     * @throws IOException Caso haja problema com o fluxo de entrada ou o botão esteja corrompido.
      */
     public static Botao lerBotao(InputStream fluxo) throws IOException {
+        return lerBotao(fluxo, null);
+    }
+
+    /**
+     * Lê um botão de um fluxo de entrada de dados. Aceita as versões 1.0 e 2.0 do formato.
+     * @param fluxo Fluxo de entrada de dados.
+     * @param repositorio Repositório de onde ler o som, se o botão o referenciar. Pode ser <b>null</b>.
+     * @return Botão lido, ou nulo se a versão for desconhecida.
+     * @throws IOException Caso haja problema com o fluxo de entrada ou o botão esteja corrompido.
+     */
+    public static Botao lerBotao(InputStream fluxo, RepositorioSons repositorio) throws IOException {
         // cria um fluxo de entrada de dados.
         DataInputStream fluxo_dados = new DataInputStream(fluxo);
 
-        // lê a versão (cstring).
+        // lê a versão (cstring). Um fluxo que termina antes dela não tem botão.
         byte[] versao = new byte[7];
-        int lidos = fluxo_dados.read(versao);
-        if (lidos < 7) {
+        try {
+            fluxo_dados.readFully(versao);
+        } catch (EOFException eofe) {
+            return null;
+        }
+        if (Arrays.equals(versao, ArquivoBotao.VERSAO_2)) {
+            // versão 2.0, com tabela de seções.
+            return ArquivoBotao.lerBotao(fluxo_dados, repositorio);
+        } else if (! Arrays.equals(versao, ArquivoBotao.VERSAO_1)) {
             return null;
-        } else {
-            if (versao[0] != 'F' || versao[1] != 'I' || versao[2] != 'B'
-             || versao[3] != '1' || versao[4] != '.' || versao[5] != '0'
-             || versao[6] != 0) {
-                return null;
-            }
         }
 
         // lê os dados do botão.
@@ -202,37 +315,34 @@ public class Botao implements ConstantesArmazenamento {
         Icone icone = Icone.lerIcone(fluxo_dados);
 
         // lê o som.
-        Som som = Som.lerSom(fluxo_dados);
+        Som som = RepositorioSons.internar(Som.lerSom(fluxo_dados));
 
         // constrói o botão.
         return new Botao(nome_botao, icone, nome_som, som);
     }
 
     /**
-     * Escreve um botão em um fluxo de saída de dados.
+     * Escreve um botão em um fluxo de saída de dados, na versão 2.0 do formato, com o som no próprio botão.
      * @param fluxo Fluxo de saída de dados.
      * @throws IOException Caso haja problema com o fluxo de saída.
      */
     public void escreverBotao(OutputStream fluxo) throws IOException {
-        // cria um fluxo de saída de dados.
-        DataOutputStream fluxo_dados = new DataOutputStream(fluxo);
-
-        // escreve a versão (cstring).
-        byte[] versao = new byte[] { 'F', 'I', 'B', '1', '.', '0', 0 };
-        fluxo_dados.write(versao);
-
-        // escreve os dados do botão.
-        fluxo_dados.writeUTF(nome_botao);
-        fluxo_dados.writeUTF(nome_som);
-
-        // escreve o ícone.
-        icone.escreverIcone(fluxo_dados);
+        escreverBotao(fluxo, null);
+    }
 
-        // escreve o som.
-        som.escreverSom(fluxo_dados);
+    /**
+     * Escreve um botão em um fluxo de saída de dados, na versão 2.0 do formato.
+     * @param fluxo Fluxo de saída de dados.
+     * @param repositorio Repositório onde guardar o som, que passa a ser apenas referenciado pelo botão. Se
+     * for <b>null</b>, o som é escrito no próprio botão.
+     * @throws IOException Caso haja problema com o fluxo de saída ou com o repositório.
+     */
+    public void escreverBotao(OutputStream fluxo, RepositorioSons repositorio) throws IOException {
+        // escreve o botão com a tabela de seções.
+        ArquivoBotao.escreverBotao(this, fluxo, repositorio);
 
         // força o envio dos dados no fluxo de dados.
-        fluxo_dados.flush();
+        fluxo.flush();
     }
 
     /**
@@ -241,33 +351,99 @@ public class Botao implements ConstantesArmazenamento {
      * @return Mapeamento arquivos-botões dessa pasta.
      */
     public static Map<Botao, File> lerBotoes(File pasta_botoes) {
+        return lerBotoes(pasta_botoes, null);
+    }
+
+    /**
+     * Lê o mapeamento arquivos-botões de uma determinada pasta. Os dados dos arquivos que não mudaram
+     * desde a última leitura são obtidos do catálogo da pasta, sem abrir os arquivos; os demais são lidos
+     * em paralelo, por um número limitado de threads, e o catálogo é então atualizado. O progresso é
+     * informado a um ouvinte.
+     * @param pasta_botoes Pasta de onde ler os botões.
+     * @param ouvinte Ouvinte do progresso da leitura. Pode ser <b>null</b>.
+     * @return Mapeamento arquivos-botões dessa pasta.
+     */
+    public static Map<Botao, File> lerBotoes(File pasta_botoes, final OuvinteCarregamento ouvinte) {
         // cria o mapeamento dos botões a seus arquivos.
         Map<Botao, File> arquivos_botoes = new IdentityHashMap<Botao, File>();
         // NOTA: escolheu-se o identity hash map pois ele compara referências; é isso que é preciso aqui.
         // NOTA 2: o uso dessa classe NÃO É GERALMENTE INDICADO, apenas em raros casos, como essa implementação.
 
         // verifica se a pasta é realmente uma pasta.
-        if (pasta_botoes.isDirectory()) {
-            // obtém os arquivos dessa pasta.
-            File[] arquivos = pasta_botoes.listFiles(new FiltroFormato(extensao_botao));
+        if (! pasta_botoes.isDirectory()) return arquivos_botoes;
+
+        // termina as gravações interrompidas por uma queda.
+        FilaPersistencia.recuperar(pasta_botoes);
+
+        // obtém os arquivos dessa pasta, em ordem de nome.
+        File[] arquivos = pasta_botoes.listFiles(new FiltroFormato(extensao_botao));
+        if (arquivos == null) return arquivos_botoes;
+        Arrays.sort(arquivos);
+        final int total = arquivos.length;
+
+        // obtém do catálogo as entradas dos arquivos que não mudaram.
+        Map<String, CatalogoBotoes.Entrada> catalogo = CatalogoBotoes.ler(pasta_botoes);
+        CatalogoBotoes.Entrada[] entradas = new CatalogoBotoes.Entrada[total];
+        int atuais = 0;
+        for (int i = 0; i < total; i ++) {
+            CatalogoBotoes.Entrada entrada = catalogo.get(arquivos[i].getName());
+            if (entrada != null && entrada.atual(arquivos[i])) {
+                entradas[i] = entrada;
+                atuais ++;
+            }
+        }
+        final AtomicInteger lidos = new AtomicInteger(atuais);
+        if (ouvinte != null) ouvinte.carregamentoAvancou(atuais, total);
+
+        // lê os arquivos novos ou alterados (o som é lido apenas quando for necessário).
+        if (atuais < total) {
+            int threads = Math.max(1, Math.min(total - atuais, Math.min(Runtime.getRuntime().availableProcessors(), MAXIMO_THREADS_LEITURA)));
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<CatalogoBotoes.Entrada>> leituras = new ArrayList<Future<CatalogoBotoes.Entrada>>(total);
+            for (int i = 0; i < total; i ++) {
+                if (entradas[i] != null) {
+                    leituras.add(null);
+                    continue;
+                }
+                final File arquivo = arquivos[i];
+                leituras.add(executor.submit(new Callable<CatalogoBotoes.Entrada>() {
+                    @Override public CatalogoBotoes.Entrada call() throws Exception {
+                        try {
+                            return CatalogoBotoes.criarEntrada(arquivo);
+                        } finally {
+                            if (ouvinte != null) ouvinte.carregamentoAvancou(lidos.incrementAndGet(), total);
+                        }
+                    }
+                }));
+            }
 
-            // tenta ler cada arquivo da pasta.
-            for (File arquivo : arquivos) {
-                FileInputStream fluxo_arquivo = null;
+            // recolhe as entradas lidas; arquivos ilegíveis ficam fora da biblioteca e do catálogo.
+            for (int i = 0; i < total; i ++) {
+                if (leituras.get(i) == null) continue;
                 try {
-                    // tenta abrir o arquivo.
-                    fluxo_arquivo = new FileInputStream(arquivo);
-
-                    // tenta ler o botão.
-                    Botao botao = Botao.lerBotao(fluxo_arquivo);
-                    arquivos_botoes.put(botao, arquivo);
+                    entradas[i] = leituras.get(i).get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
                 } catch (Exception e) {}
+            }
+            executor.shutdownNow();
+        }
 
-                // fecha o arquivo.
-                try {
-                    if (fluxo_arquivo != null)
-                        fluxo_arquivo.close();
-                } catch (Exception e) {}
+        // cria os botões, na ordem dos arquivos.
+        List<CatalogoBotoes.Entrada> novo_catalogo = new ArrayList<CatalogoBotoes.Entrada>(total);
+        for (int i = 0; i < total; i ++) {
+            if (entradas[i] == null) continue;
+            arquivos_botoes.put(entradas[i].criarBotao(arquivos[i]), arquivos[i]);
+            novo_catalogo.add(entradas[i]);
+        }
+
+        // atualiza o catálogo, se algo mudou.
+        if (atuais < total || catalogo.size() != atuais) {
+            try {
+                CatalogoBotoes.escrever(pasta_botoes, novo_catalogo);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
             }
         }
 
@@ -281,11 +457,33 @@ public class Botao implements ConstantesArmazenamento {
     @Override public boolean equals(Object obj) {
         if (obj instanceof Botao) {
             Botao botao = (Botao) obj;
+            if (botao.hashCode() != hashCode()) return false;
             if (! botao.nome_botao.equals(nome_botao)) return false;
             if (! botao.nome_som.equals(nome_som)) return false;
             if (! botao.icone.equals(icone)) return false;
-            if (! botao.som.equals(som)) return false;
+            if (! botao.obterChaveSom().equals(obterChaveSom())) return false;
             return true;
         } else return super.equals(obj);
     }
+
+    /**
+     * {@inheritDoc} O som entra no hash pela sua chave, conhecida sem ler o som mesmo quando ele é carregado
+     * sob demanda. O botão é alterável, então o hash muda quando ele é alterado.
+     */
+    @Override public int hashCode() {
+        int h = nome_botao.hashCode();
+        h = 31 * h + nome_som.hashCode();
+        h = 31 * h + icone.hashCode();
+        h = 31 * h + obterChaveSom().hashCode();
+        return h;
+    }
+
+    /**
+     * Obtém a chave do som desse botão, sem ler o som se ele for carregado sob demanda.
+     * @return Chave do som.
+     */
+    private synchronized String obterChaveSom() {
+        if (som != null) return RepositorioSons.calcularChave(som);
+        return chave_som;
+    }
 }
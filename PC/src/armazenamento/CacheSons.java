@@ -0,0 +1,89 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache dos sons carregados sob demanda a partir dos arquivos de botão. Guarda no máximo um número fixo
+ * de sons, descartando os usados há mais tempo; além disso, os sons são mantidos por referências fracas
+ * (soft references), podendo ser liberados pelo coletor de lixo quando faltar memória.
+ * @author Felipe Michels Fontoura
+ */
+final class CacheSons {
+    /**
+     * Número máximo de sons no cache.
+     */
+    private static final int MAXIMO_SONS = 64;
+
+    /**
+     * Mapeamento dos arquivos aos seus sons, em ordem de acesso.
+     */
+    private static final Map<File, SoftReference<Som>> sons = new LinkedHashMap<File, SoftReference<Som>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override protected boolean removeEldestEntry(Map.Entry<File, SoftReference<Som>> mais_antigo) {
+            return size() > MAXIMO_SONS;
+        }
+    };
+
+    private CacheSons() {
+    }
+
+    /**
+     * Obtém o som de um arquivo, se estiver no cache.
+     * @param arquivo Arquivo de origem do som.
+     * @return Som do arquivo, ou nulo se não estiver no cache.
+     */
+    static synchronized Som obter(File arquivo) {
+        SoftReference<Som> referencia = sons.get(arquivo);
+        if (referencia == null) return null;
+        Som som = referencia.get();
+        if (som == null) sons.remove(arquivo);
+        return som;
+    }
+
+    /**
+     * Guarda o som de um arquivo no cache.
+     * @param arquivo Arquivo de origem do som.
+     * @param som Som lido do arquivo.
+     */
+    static synchronized void guardar(File arquivo, Som som) {
+        sons.put(arquivo, new SoftReference<Som>(som));
+    }
+
+    /**
+     * Remove o som de um arquivo do cache (por exemplo, porque o arquivo foi alterado).
+     * @param arquivo Arquivo de origem do som.
+     */
+    static synchronized void remover(File arquivo) {
+        sons.remove(arquivo);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Catálogo de uma pasta de botões. Guarda, para cada arquivo de botão, os nomes, o ícone e a chave do som
+ * (ver {@link RepositorioSons#calcularChave(Som)}), junto com a data de modificação e o tamanho do
+ * arquivo. Assim, ao ler a pasta, apenas os arquivos que mudaram precisam ser abertos; o som deles só é
+ * lido se não estiver no repositório, para calcular a chave.
+ *
+ * O formato do catálogo é:
+ * <ul>
+ * <li>cabeçalho "FIC1.0\0";</li>
+ * <li>número de entradas (int);</li>
+ * <li>para cada entrada: nome do arquivo (UTF), data de modificação (long), tamanho (long), nome do botão
+ * (UTF), nome do som (UTF), ícone (long) e chave do som (UTF);</li>
+ * <li>CRC32 de todos os dados anteriores (int).</li>
+ * </ul>
+ * @author Felipe Michels Fontoura
+ */
+final class CatalogoBotoes {
+    /**
+     * Nome do arquivo de catálogo dentro da pasta de botões.
+     */
+    static final String NOME_ARQUIVO = "catalogo.fic";
+
+    /**
+     * Cabeçalho do arquivo de catálogo.
+     */
+    private static final byte[] VERSAO_1 = new byte[] { 'F', 'I', 'C', '1', '.', '0', 0 };
+
+    /**
+     * Entrada do catálogo, com os dados de um arquivo de botão.
+     */
+    static final class Entrada {
+        final String nome_arquivo;
+        final long modificacao;
+        final long tamanho;
+        final String nome_botao;
+        final String nome_som;
+        final long icone;
+        final String chave_som;
+
+        Entrada(String nome_arquivo, long modificacao, long tamanho, String nome_botao, String nome_som, long icone, String chave_som) {
+            this.nome_arquivo = nome_arquivo;
+            this.modificacao = modificacao;
+            this.tamanho = tamanho;
+            this.nome_botao = nome_botao;
+            this.nome_som = nome_som;
+            this.icone = icone;
+            this.chave_som = chave_som;
+        }
+
+        /**
+         * Verifica se essa entrada ainda corresponde a um arquivo, comparando a data de modificação e o
+         * tamanho.
+         * @param arquivo Arquivo de botão.
+         * @return <b>true</b> se o arquivo não mudou desde que a entrada foi criada.
+         */
+        boolean atual(File arquivo) {
+            return arquivo.lastModified() == modificacao && arquivo.length() == tamanho;
+        }
+
+        /**
+         * Cria um botão com os dados dessa entrada, cujo som é carregado sob demanda.
+         * @param arquivo Arquivo de botão.
+         * @return Botão criado.
+         */
+        Botao criarBotao(File arquivo) {
+            return Botao.criarSobDemanda(arquivo, nome_botao, new Icone(icone), nome_som, chave_som);
+        }
+    }
+
+    private CatalogoBotoes() {
+    }
+
+    /**
+     * Lê o catálogo de uma pasta de botões. Se o catálogo não existir ou estiver corrompido, retorna um
+     * catálogo vazio.
+     * @param pasta_botoes Pasta de botões.
+     * @return Mapeamento dos nomes de arquivo às entradas do catálogo.
+     */
+    static Map<String, Entrada> ler(File pasta_botoes) {
+        Map<String, Entrada> entradas = new HashMap<String, Entrada>();
+        File arquivo = new File(pasta_botoes, NOME_ARQUIVO);
+        if (! arquivo.isFile()) return entradas;
+
+        DataInputStream fluxo = null;
+        try {
+            CheckedInputStream fluxo_verificado = new CheckedInputStream(new BufferedInputStream(new FileInputStream(arquivo)), new CRC32());
+            fluxo = new DataInputStream(fluxo_verificado);
+
+            // verifica o cabeçalho.
+            byte[] versao = new byte[VERSAO_1.length];
+            fluxo.readFully(versao);
+            if (! Arrays.equals(versao, VERSAO_1)) return entradas;
+
+            // lê as entradas.
+            int contagem = fluxo.readInt();
+            for (int i = 0; i < contagem; i ++) {
+                Entrada entrada = new Entrada(
+                  /* nome_arquivo: */ fluxo.readUTF(),
+                  /*  modificacao: */ fluxo.readLong(),
+                  /*      tamanho: */ fluxo.readLong(),
+                  /*   nome_botao: */ fluxo.readUTF(),
+                  /*     nome_som: */ fluxo.readUTF(),
+                  /*        icone: */ fluxo.readLong(),
+                  /*    chave_som: */ fluxo.readUTF()
+                );
+                if (! RepositorioSons.chaveValida(entrada.chave_som)) throw new IOException("Chave de som inválida.");
+                entradas.put(entrada.nome_arquivo, entrada);
+            }
+
+            // verifica o CRC; se não bater, descarta todo o catálogo.
+            int crc_calculado = (int) fluxo_verificado.getChecksum().getValue();
+            if (fluxo.readInt() != crc_calculado) entradas.clear();
+        } catch (IOException ioe) {
+            // catálogo ilegível; todos os arquivos serão lidos novamente.
+            entradas.clear();
+        } finally {
+            if (fluxo != null) try { fluxo.close(); } catch (IOException ioe) {}
+        }
+        return entradas;
+    }
+
+    /**
+     * Escreve o catálogo de uma pasta de botões. O catálogo é escrito num arquivo temporário, que então
+     * substitui o anterior.
+     * @param pasta_botoes Pasta de botões.
+     * @param entradas Entradas do catálogo.
+     * @throws IOException Caso não seja possível escrever o catálogo.
+     */
+    static void escrever(File pasta_botoes, Collection<Entrada> entradas) throws IOException {
+        File arquivo = new File(pasta_botoes, NOME_ARQUIVO);
+        File temporario = new File(pasta_botoes, NOME_ARQUIVO + ".tmp");
+
+        CheckedOutputStream fluxo_verificado = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporario)), new CRC32());
+        DataOutputStream fluxo = new DataOutputStream(fluxo_verificado);
+        try {
+            fluxo.write(VERSAO_1);
+            fluxo.writeInt(entradas.size());
+            for (Entrada entrada : entradas) {
+                fluxo.writeUTF(entrada.nome_arquivo);
+                fluxo.writeLong(entrada.modificacao);
+                fluxo.writeLong(entrada.tamanho);
+                fluxo.writeUTF(entrada.nome_botao);
+                fluxo.writeUTF(entrada.nome_som);
+                fluxo.writeLong(entrada.icone);
+                fluxo.writeUTF(entrada.chave_som);
+            }
+            fluxo.writeInt((int) fluxo_verificado.getChecksum().getValue());
+        } finally {
+            fluxo.close();
+        }
+
+        // substitui o catálogo anterior (no Windows, o destino precisa ser apagado antes).
+        if (! temporario.renameTo(arquivo)) {
+            arquivo.delete();
+            if (! temporario.renameTo(arquivo)) {
+                temporario.delete();
+                throw new IOException("Não foi possível substituir o catálogo.");
+            }
+        }
+    }
+
+    /**
+     * Cria a entrada de catálogo de um arquivo de botão, lendo do arquivo os nomes, o ícone e a chave
+     * do som.
+     * @param arquivo Arquivo de botão.
+     * @return Entrada criada.
+     * @throws IOException Caso haja problema na leitura ou o arquivo não seja um arquivo de botão.
+     */
+    static Entrada criarEntrada(File arquivo) throws IOException {
+        // obtém a data e o tamanho antes da leitura, para que uma alteração durante ela seja percebida depois.
+        long modificacao = arquivo.lastModified();
+        long tamanho = arquivo.length();
+
+        // lê os dados do botão.
+        String[] nomes;
+        Icone icone;
+        String chave_som;
+        ArquivoBotao arquivo_botao = new ArquivoBotao(arquivo);
+        try {
+            nomes = arquivo_botao.lerNomes();
+            icone = arquivo_botao.lerIcone();
+            chave_som = arquivo_botao.lerChaveSom();
+        } finally {
+            arquivo_botao.fechar();
+        }
+
+        return new Entrada(arquivo.getName(), modificacao, tamanho, nomes[0], nomes[1], icone.obterGrade(), chave_som);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codificação IMA ADPCM, com 4 bits por amostra (metade do tamanho do PCM de 8 bits). As amostras de 8
+ * bits são tratadas como amostras de 16 bits; o estado do codificador começa zerado. Duas amostras são
+ * guardadas por byte, a primeira nos 4 bits menos significativos.
+ * @author Felipe Michels Fontoura
+ */
+public final class CodecADPCM implements CodecSom {
+    /**
+     * Tabela de passos de quantização.
+     */
+    private static final int[] PASSOS = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80,
+        88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307, 337, 371, 408, 449, 494, 544,
+        598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024,
+        3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    /**
+     * Variação do índice de passo para cada código (sem o bit de sinal).
+     */
+    private static final int[] VARIACOES = { -1, -1, -1, -1, 2, 4, 6, 8 };
+
+    /**
+     * Tamanho dos blocos escritos de cada vez na codificação, em bytes.
+     */
+    private static final int TAMANHO_BLOCO = 4096;
+
+    @Override public int obterTag() {
+        return TAG_ADPCM;
+    }
+
+    @Override public void codificar(byte[] amostras, int inicio, int tamanho, OutputStream destino) throws IOException {
+        byte[] bloco = new byte[Math.min((tamanho + 1) >> 1, TAMANHO_BLOCO)];
+        int preditor = 0, indice = 0, n = 0;
+        for (int i = 0; i < tamanho; i += 2) {
+            int codigos = 0;
+            for (int j = 0; j < 2; j ++) {
+                // a última amostra de um número ímpar de amostras é completada com silêncio.
+                int amostra = (i + j < tamanho) ? amostras[inicio + i + j] << 8 : 0;
+
+                // quantiza a diferença em relação à predição.
+                int passo = PASSOS[indice];
+                int diferenca = amostra - preditor;
+                int codigo = 0;
+                if (diferenca < 0) {
+                    codigo = 8;
+                    diferenca = -diferenca;
+                }
+                if (diferenca >= passo) {
+                    codigo |= 4;
+                    diferenca -= passo;
+                }
+                if (diferenca >= (passo >> 1)) {
+                    codigo |= 2;
+                    diferenca -= passo >> 1;
+                }
+                if (diferenca >= (passo >> 2)) codigo |= 1;
+
+                // atualiza o estado exatamente como o decodificador fará.
+                preditor = proximoPreditor(preditor, passo, codigo);
+                indice = proximoIndice(indice, codigo);
+                codigos |= codigo << (j << 2);
+            }
+            bloco[n ++] = (byte) codigos;
+            if (n == bloco.length) {
+                destino.write(bloco, 0, n);
+                n = 0;
+            }
+        }
+        if (n > 0) destino.write(bloco, 0, n);
+    }
+
+    @Override public void decodificar(byte[] dados, int inicio_dados, int tamanho_dados, byte[] amostras, int inicio, int tamanho) throws IOException {
+        if (tamanho_dados < ((tamanho + 1) >> 1)) throw new IOException("Dados ADPCM insuficientes.");
+        int preditor = 0, indice = 0;
+        for (int i = 0; i < tamanho; i ++) {
+            int codigo = (dados[inicio_dados + (i >> 1)] >> ((i & 1) << 2)) & 0xF;
+            preditor = proximoPreditor(preditor, PASSOS[indice], codigo);
+            indice = proximoIndice(indice, codigo);
+
+            // volta para 8 bits, arredondando.
+            int amostra = (preditor + 0x80) >> 8;
+            amostras[inicio + i] = (byte) ((amostra > 127) ? 127 : amostra);
+        }
+    }
+
+    /**
+     * Calcula a próxima predição a partir de um código.
+     * @param preditor Predição atual.
+     * @param passo Passo de quantização atual.
+     * @param codigo Código de 4 bits.
+     * @return Próxima predição, limitada a 16 bits.
+     */
+    private static int proximoPreditor(int preditor, int passo, int codigo) {
+        int diferenca = passo >> 3;
+        if ((codigo & 4) != 0) diferenca += passo;
+        if ((codigo & 2) != 0) diferenca += passo >> 1;
+        if ((codigo & 1) != 0) diferenca += passo >> 2;
+        preditor += ((codigo & 8) != 0) ? -diferenca : diferenca;
+        if (preditor > 32767) return 32767;
+        if (preditor < -32768) return -32768;
+        return preditor;
+    }
+
+    /**
+     * Calcula o próximo índice de passo a partir de um código.
+     * @param indice Índice atual.
+     * @param codigo Código de 4 bits.
+     * @return Próximo índice, limitado à tabela de passos.
+     */
+    private static int proximoIndice(int indice, int codigo) {
+        indice += VARIACOES[codigo & 7];
+        if (indice < 0) return 0;
+        if (indice >= PASSOS.length) return PASSOS.length - 1;
+        return indice;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codificação PCM de 8 bits não sinalizados, sem compressão (a mesma usada nos arquivos da versão 1.0).
+ * @author Felipe Michels Fontoura
+ */
+public final class CodecPCM implements CodecSom {
+    /**
+     * Tamanho dos blocos convertidos de cada vez na codificação.
+     */
+    private static final int TAMANHO_BLOCO = 4096;
+
+    @Override public int obterTag() {
+        return TAG_PCM;
+    }
+
+    @Override public void codificar(byte[] amostras, int inicio, int tamanho, OutputStream destino) throws IOException {
+        byte[] bloco = new byte[Math.min(tamanho, TAMANHO_BLOCO)];
+        for (int feitas = 0; feitas < tamanho; feitas += bloco.length) {
+            int l = Math.min(bloco.length, tamanho - feitas);
+            for (int i = 0; i < l; i ++)
+                bloco[i] = (byte) (amostras[inicio + feitas + i] ^ 0x80);
+            destino.write(bloco, 0, l);
+        }
+    }
+
+    @Override public void decodificar(byte[] dados, int inicio_dados, int tamanho_dados, byte[] amostras, int inicio, int tamanho) throws IOException {
+        if (tamanho_dados < tamanho) throw new IOException("Dados PCM insuficientes.");
+        for (int i = 0; i < tamanho; i ++)
+            amostras[inicio + i] = (byte) (dados[inicio_dados + i] ^ 0x80);
+    }
+}
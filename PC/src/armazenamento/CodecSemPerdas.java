@@ -0,0 +1,248 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codificação sem perdas. As amostras são divididas em blocos; em cada bloco, escolhe-se o preditor
+ * (de ordem 0, 1 ou 2) e o parâmetro de Rice que resultam no menor tamanho, e os resíduos da predição
+ * (reduzidos a 8 bits, com aritmética módulo 256) são escritos com códigos de Rice. Cada bloco começa
+ * com 2 bits para a ordem do preditor e 3 bits para o parâmetro de Rice.
+ * @author Felipe Michels Fontoura
+ */
+public final class CodecSemPerdas implements CodecSom {
+    /**
+     * Número de amostras por bloco.
+     */
+    private static final int TAMANHO_BLOCO = 256;
+
+    /**
+     * Maior ordem de preditor.
+     */
+    private static final int ORDEM_MAXIMA = 2;
+
+    /**
+     * Maior parâmetro de Rice.
+     */
+    private static final int PARAMETRO_MAXIMO = 7;
+
+    @Override public int obterTag() {
+        return TAG_SEM_PERDAS;
+    }
+
+    @Override public void codificar(byte[] amostras, int inicio, int tamanho, OutputStream destino) throws IOException {
+        EscritorBits escritor = new EscritorBits(destino);
+        int[] residuos = new int[TAMANHO_BLOCO];
+        int anterior = 0, penultima = 0;
+        for (int bloco = 0; bloco < tamanho; bloco += TAMANHO_BLOCO) {
+            int l = Math.min(TAMANHO_BLOCO, tamanho - bloco);
+
+            // escolhe a ordem e o parâmetro de menor custo.
+            int melhor_ordem = 0, melhor_parametro = 0;
+            long melhor_custo = Long.MAX_VALUE;
+            for (int ordem = 0; ordem <= ORDEM_MAXIMA; ordem ++) {
+                long[] somas = new long[PARAMETRO_MAXIMO + 1];
+                int a = anterior, p = penultima;
+                for (int i = 0; i < l; i ++) {
+                    int amostra = amostras[inicio + bloco + i];
+                    int residuo = zigue(amostra - prever(ordem, a, p));
+                    for (int k = 0; k <= PARAMETRO_MAXIMO; k ++) somas[k] += residuo >> k;
+                    p = a;
+                    a = amostra;
+                }
+                for (int k = 0; k <= PARAMETRO_MAXIMO; k ++) {
+                    long custo = somas[k] + (long) (k + 1) * l;
+                    if (custo < melhor_custo) {
+                        melhor_custo = custo;
+                        melhor_ordem = ordem;
+                        melhor_parametro = k;
+                    }
+                }
+            }
+
+            // escreve o bloco.
+            for (int i = 0; i < l; i ++) {
+                int amostra = amostras[inicio + bloco + i];
+                residuos[i] = zigue(amostra - prever(melhor_ordem, anterior, penultima));
+                penultima = anterior;
+                anterior = amostra;
+            }
+            escritor.escrever(melhor_ordem, 2);
+            escritor.escrever(melhor_parametro, 3);
+            for (int i = 0; i < l; i ++) {
+                escritor.escreverUnario(residuos[i] >> melhor_parametro);
+                escritor.escrever(residuos[i] & ((1 << melhor_parametro) - 1), melhor_parametro);
+            }
+        }
+        escritor.terminar();
+    }
+
+    @Override public void decodificar(byte[] dados, int inicio_dados, int tamanho_dados, byte[] amostras, int inicio, int tamanho) throws IOException {
+        LeitorBits leitor = new LeitorBits(dados, inicio_dados, tamanho_dados);
+        int anterior = 0, penultima = 0;
+        for (int bloco = 0; bloco < tamanho; bloco += TAMANHO_BLOCO) {
+            int l = Math.min(TAMANHO_BLOCO, tamanho - bloco);
+            int ordem = leitor.ler(2);
+            int parametro = leitor.ler(3);
+            if (ordem > ORDEM_MAXIMA) throw new IOException("Ordem de preditor inválida.");
+            for (int i = 0; i < l; i ++) {
+                int residuo = (leitor.lerUnario() << parametro) | leitor.ler(parametro);
+                int amostra = (byte) (prever(ordem, anterior, penultima) + zague(residuo));
+                amostras[inicio + bloco + i] = (byte) amostra;
+                penultima = anterior;
+                anterior = amostra;
+            }
+        }
+    }
+
+    /**
+     * Calcula a predição de uma amostra.
+     * @param ordem Ordem do preditor.
+     * @param anterior Amostra anterior.
+     * @param penultima Amostra antes da anterior.
+     * @return Predição.
+     */
+    private static int prever(int ordem, int anterior, int penultima) {
+        if (ordem == 0) return 0;
+        if (ordem == 1) return anterior;
+        return 2 * anterior - penultima;
+    }
+
+    /**
+     * Reduz um resíduo a 8 bits sinalizados e o mapeia para um número não negativo (0, -1, 1, -2, ...).
+     * @param residuo Resíduo da predição.
+     * @return Resíduo mapeado, entre 0 e 255.
+     */
+    private static int zigue(int residuo) {
+        int r = (byte) residuo;
+        return (r << 1) ^ (r >> 31);
+    }
+
+    /**
+     * Desfaz o mapeamento de {@link #zigue(int)}.
+     * @param residuo Resíduo mapeado.
+     * @return Resíduo sinalizado.
+     */
+    private static int zague(int residuo) {
+        return (residuo >>> 1) ^ -(residuo & 1);
+    }
+
+    /**
+     * Escritor de bits sobre um fluxo de saída, do bit mais significativo para o menos significativo.
+     */
+    private static class EscritorBits {
+        private OutputStream destino;
+        private byte[] buffer = new byte[4096];
+        private int posicao;
+        private int acumulador;
+        private int bits;
+
+        EscritorBits(OutputStream destino) {
+            this.destino = destino;
+        }
+
+        void escrever(int valor, int quantidade) throws IOException {
+            for (int i = quantidade - 1; i >= 0; i --) escreverBit((valor >> i) & 1);
+        }
+
+        void escreverUnario(int valor) throws IOException {
+            for (int i = 0; i < valor; i ++) escreverBit(0);
+            escreverBit(1);
+        }
+
+        private void escreverBit(int bit) throws IOException {
+            acumulador = (acumulador << 1) | bit;
+            if (++ bits == 8) {
+                buffer[posicao ++] = (byte) acumulador;
+                acumulador = 0;
+                bits = 0;
+                if (posicao == buffer.length) {
+                    destino.write(buffer, 0, posicao);
+                    posicao = 0;
+                }
+            }
+        }
+
+        void terminar() throws IOException {
+            while (bits != 0) escreverBit(0);
+            destino.write(buffer, 0, posicao);
+            posicao = 0;
+        }
+    }
+
+    /**
+     * Leitor de bits sobre um vetor, na ordem do {@link EscritorBits}. Os bits são lidos byte a byte num
+     * acumulador, para que cada código seja extraído com poucas operações.
+     */
+    private static class LeitorBits {
+        private byte[] dados;
+        private int posicao;
+        private int fim;
+        private long acumulador;
+        private int bits;
+
+        LeitorBits(byte[] dados, int inicio, int tamanho) {
+            this.dados = dados;
+            this.posicao = inicio;
+            this.fim = inicio + tamanho;
+        }
+
+        private void completar(int quantidade) throws IOException {
+            while (bits < quantidade) {
+                if (posicao >= fim) throw new IOException("Dados sem perdas insuficientes.");
+                acumulador = (acumulador << 8) | (dados[posicao ++] & 0xFF);
+                bits += 8;
+            }
+        }
+
+        int ler(int quantidade) throws IOException {
+            if (quantidade == 0) return 0;
+            completar(quantidade);
+            bits -= quantidade;
+            return (int) (acumulador >>> bits) & ((1 << quantidade) - 1);
+        }
+
+        int lerUnario() throws IOException {
+            int valor = 0;
+            while (true) {
+                completar(1);
+                // procura o primeiro bit 1 entre os bits disponíveis.
+                int disponiveis = (int) acumulador & (int) ((1L << bits) - 1);
+                if (disponiveis != 0) {
+                    int zeros = bits - (32 - Integer.numberOfLeadingZeros(disponiveis));
+                    bits -= zeros + 1;
+                    return valor + zeros;
+                }
+                valor += bits;
+                bits = 0;
+                if (valor > 255) throw new IOException("Código de Rice inválido.");
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Interface de uma codificação das amostras de som para armazenamento. Cada codificação é identificada
+ * por uma etiqueta, gravada junto com o som (ver {@link Som#escreverSom(OutputStream, CodecSom)}).
+ * @author Felipe Michels Fontoura
+ */
+public interface CodecSom {
+    /**
+     * Etiqueta da codificação PCM de 8 bits, sem compressão.
+     */
+    int TAG_PCM = 0;
+
+    /**
+     * Etiqueta reservada para a codificação lei-mu. Ela usa 8 bits por amostra, como o PCM de 8 bits
+     * usado pelo software, e por isso não é implementada: não reduziria o tamanho, apenas a qualidade.
+     */
+    int TAG_MU_LEI = 1;
+
+    /**
+     * Etiqueta da codificação IMA ADPCM de 4 bits por amostra (com perdas).
+     */
+    int TAG_ADPCM = 2;
+
+    /**
+     * Etiqueta da codificação sem perdas (predição linear e códigos de Rice).
+     */
+    int TAG_SEM_PERDAS = 3;
+
+    /**
+     * Obtém a etiqueta dessa codificação.
+     * @return Etiqueta da codificação.
+     */
+    int obterTag();
+
+    /**
+     * Codifica um trecho de amostras sinalizadas.
+     * @param amostras Vetor de amostras.
+     * @param inicio Posição da primeira amostra.
+     * @param tamanho Número de amostras.
+     * @param destino Fluxo onde escrever os dados codificados.
+     * @throws IOException Caso haja problema com o fluxo de saída.
+     */
+    void codificar(byte[] amostras, int inicio, int tamanho, OutputStream destino) throws IOException;
+
+    /**
+     * Decodifica amostras sinalizadas, escrevendo-as diretamente no vetor de destino.
+     * @param dados Vetor com os dados codificados.
+     * @param inicio_dados Posição do primeiro byte codificado.
+     * @param tamanho_dados Número de bytes codificados.
+     * @param amostras Vetor de destino das amostras.
+     * @param inicio Posição da primeira amostra no vetor de destino.
+     * @param tamanho Número de amostras a decodificar.
+     * @throws IOException Caso os dados codificados sejam inválidos ou insuficientes.
+     */
+    void decodificar(byte[] dados, int inicio_dados, int tamanho_dados, byte[] amostras, int inicio, int tamanho) throws IOException;
+}
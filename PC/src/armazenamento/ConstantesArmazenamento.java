@@ -41,6 +41,16 @@ public interface ConstantesArmazenamento {
      */
     String extensao_botao = "fib";
 
+    /**
+     * Extensão dos arquivos de som do repositório de sons.
+     */
+    String extensao_som = "fis";
+
+    /**
+     * Extensão dos arquivos de pacote de botões.
+     */
+    String extensao_pacote = "fpb";
+
     /**
      * Número de amostras por segundo do som.
      */
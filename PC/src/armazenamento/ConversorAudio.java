@@ -0,0 +1,224 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Conversor de blocos de frames PCM, em qualquer formato inteiro suportado, para amostras mono em ponto
+ * flutuante (entre -1 e 1). Há uma rotina de decodificação para cada tamanho de amostra e ordem de bytes;
+ * as amostras não sinalizadas são convertidas por uma máscara aplicada ao byte mais significativo. Os
+ * canais são misturados depois, num passo separado.
+ * @author Felipe Michels Fontoura
+ */
+final class ConversorAudio {
+    /**
+     * Número de canais.
+     */
+    private final int canais;
+
+    /**
+     * Tamanho de cada amostra, em bytes.
+     */
+    private final int tamanho_amostra;
+
+    /**
+     * Tamanho de cada frame, em bytes.
+     */
+    private final int tamanho_frame;
+
+    /**
+     * Se as amostras estão em big-endian.
+     */
+    private final boolean big_endian;
+
+    /**
+     * Máscara aplicada ao byte mais significativo das amostras (0x80 se não forem sinalizadas).
+     */
+    private final int mascara;
+
+    /**
+     * Fator que leva a soma dos canais de um frame ao intervalo entre -1 e 1.
+     */
+    private final float escala;
+
+    /**
+     * Vetor reutilizado com os valores decodificados de um bloco, antes da mistura dos canais.
+     */
+    private int[] valores = new int[0];
+
+    /**
+     * Cria um conversor para um formato de áudio.
+     * @param formato_audio Formato do áudio.
+     * @throws UnsupportedAudioFileException Caso o formato não seja PCM inteiro, com amostras de 1 a 4
+     * bytes.
+     */
+    ConversorAudio(AudioFormat formato_audio) throws UnsupportedAudioFileException {
+        // verifica se o formato é válido.
+        if (formato_audio.getFrameRate() == AudioSystem.NOT_SPECIFIED)
+            throw new UnsupportedAudioFileException("Frame rate inválido.");
+        if (formato_audio.getFrameSize() == AudioSystem.NOT_SPECIFIED)
+            throw new UnsupportedAudioFileException("Frame size inválido.");
+        if (formato_audio.getChannels() == AudioSystem.NOT_SPECIFIED)
+            throw new UnsupportedAudioFileException("Número de canais inválido.");
+        if (formato_audio.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && formato_audio.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED)
+            throw new UnsupportedAudioFileException("Codificação não suportada: " + formato_audio.getEncoding() + ".");
+
+        // verifica se o tamanho das amostras é de 1 a 4 bytes, sem bytes desalinhados.
+        canais = formato_audio.getChannels();
+        tamanho_frame = formato_audio.getFrameSize();
+        tamanho_amostra = tamanho_frame / canais;
+        if (tamanho_amostra < 1 || tamanho_amostra > 4 || tamanho_frame != canais * tamanho_amostra)
+            throw new UnsupportedAudioFileException("Tamanho de amostra não suportado.");
+
+        big_endian = formato_audio.isBigEndian();
+        mascara = formato_audio.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED ? 0x80 : 0x00;
+        escala = (float) (1.0 / (canais * Math.pow(2, tamanho_amostra * 8 - 1)));
+    }
+
+    /**
+     * Obtém o tamanho de cada frame, em bytes.
+     * @return Tamanho de cada frame.
+     */
+    int obterTamanhoFrame() {
+        return tamanho_frame;
+    }
+
+    /**
+     * Decodifica um bloco de frames, somando os canais de cada frame numa única amostra. Os valores são
+     * primeiro decodificados, todos de uma vez, num vetor de inteiros, e depois misturados.
+     * @param dados Vetor com os frames.
+     * @param inicio Posição do primeiro frame no vetor.
+     * @param frames Número de frames a decodificar.
+     * @param destino Vetor de destino, com pelo menos <i>frames</i> posições.
+     */
+    void decodificar(byte[] dados, int inicio, int frames, float[] destino) {
+        int total = frames * canais;
+        if (valores.length < total) valores = new int[total];
+        switch (tamanho_amostra) {
+            case 1:
+                decodificar8(dados, inicio, total, valores);
+                break;
+            case 2:
+                if (big_endian) decodificar16BE(dados, inicio, total, valores);
+                else decodificar16LE(dados, inicio, total, valores);
+                break;
+            case 3:
+                if (big_endian) decodificar24BE(dados, inicio, total, valores);
+                else decodificar24LE(dados, inicio, total, valores);
+                break;
+            default:
+                if (big_endian) decodificar32BE(dados, inicio, total, valores);
+                else decodificar32LE(dados, inicio, total, valores);
+                break;
+        }
+        misturar(valores, frames, destino);
+    }
+
+    /**
+     * Mistura os canais de cada frame, com laços próprios para áudio mono e estéreo.
+     * @param valores Valores decodificados, frame após frame.
+     * @param frames Número de frames.
+     * @param destino Vetor de destino.
+     */
+    private void misturar(int[] valores, int frames, float[] destino) {
+        final float escala = this.escala;
+        if (canais == 1) {
+            for (int i = 0; i < frames; i ++)
+                destino[i] = valores[i] * escala;
+        } else if (canais == 2) {
+            for (int i = 0; i < frames; i ++)
+                destino[i] = ((float) valores[2 * i] + valores[2 * i + 1]) * escala;
+        } else {
+            for (int i = 0, v = 0; i < frames; i ++) {
+                float soma = 0;
+                for (int c = 0; c < canais; c ++)
+                    soma += valores[v ++];
+                destino[i] = soma * escala;
+            }
+        }
+    }
+
+    // cada rotina abaixo decodifica os valores (frames vezes canais) em ordem, num laço sem desvios, com
+    // índices que crescem a passo fixo.
+
+    private void decodificar8(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++)
+            destino[i] = (byte) (dados[inicio + i] ^ mascara);
+    }
+
+    private void decodificar16LE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 2 * i;
+            destino[i] = ((byte) (dados[p + 1] ^ mascara) << 8) | (dados[p] & 0xFF);
+        }
+    }
+
+    private void decodificar16BE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 2 * i;
+            destino[i] = ((byte) (dados[p] ^ mascara) << 8) | (dados[p + 1] & 0xFF);
+        }
+    }
+
+    private void decodificar24LE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 3 * i;
+            destino[i] = ((byte) (dados[p + 2] ^ mascara) << 16) | ((dados[p + 1] & 0xFF) << 8) | (dados[p] & 0xFF);
+        }
+    }
+
+    private void decodificar24BE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 3 * i;
+            destino[i] = ((byte) (dados[p] ^ mascara) << 16) | ((dados[p + 1] & 0xFF) << 8) | (dados[p + 2] & 0xFF);
+        }
+    }
+
+    private void decodificar32LE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 4 * i;
+            destino[i] = ((byte) (dados[p + 3] ^ mascara) << 24) | ((dados[p + 2] & 0xFF) << 16) | ((dados[p + 1] & 0xFF) << 8) | (dados[p] & 0xFF);
+        }
+    }
+
+    private void decodificar32BE(byte[] dados, int inicio, int total, int[] destino) {
+        final int mascara = this.mascara;
+        for (int i = 0; i < total; i ++) {
+            int p = inicio + 4 * i;
+            destino[i] = ((byte) (dados[p] ^ mascara) << 24) | ((dados[p + 1] & 0xFF) << 16) | ((dados[p + 2] & 0xFF) << 8) | (dados[p + 3] & 0xFF);
+        }
+    }
+}
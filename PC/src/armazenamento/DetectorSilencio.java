@@ -0,0 +1,116 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+/**
+ * Detector do silêncio no início e no fim de um som, pela energia. As amostras são percorridas uma única
+ * vez, calculando a energia de cada quadro de 10 ms (descontado o nível DC do quadro); os quadros são
+ * então examinados a partir das duas pontas, e o som útil vai do primeiro ao último quadro cuja energia
+ * passa de um limiar, com uma pequena margem de cada lado para não cortar o começo e o fim das palavras.
+ * @author Felipe Michels Fontoura
+ */
+public class DetectorSilencio implements ConstantesArmazenamento {
+    /**
+     * Número de amostras de cada quadro (10 ms).
+     */
+    private static final int AMOSTRAS_QUADRO = SOM_AMOSTRAGEM / 100;
+
+    /**
+     * Número de quadros mantidos como margem antes e depois do som útil (60 ms).
+     */
+    private static final int QUADROS_MARGEM = 6;
+
+    /**
+     * Energia média mínima por amostra para um quadro não ser silêncio, independente do pico (amplitude
+     * eficaz de cerca de 2 em 128).
+     */
+    private static final double ENERGIA_MINIMA = 4.0;
+
+    /**
+     * Fração da energia do quadro mais forte abaixo da qual um quadro é silêncio (-36 dB).
+     */
+    private static final double FRACAO_PICO = 0.00025;
+
+    private DetectorSilencio() {
+    }
+
+    /**
+     * Calcula o trecho útil de um som, sem o silêncio do início e do fim.
+     * @param som Descritor de som.
+     * @return Vetor com a primeira amostra e o número de amostras do trecho útil. Se o som for todo
+     * silêncio, o trecho é o som inteiro.
+     */
+    public static int[] calcularTrecho(Som som) {
+        int tamanho = som.contagemAmostras();
+        byte[] amostras = new byte[tamanho];
+        som.extrairAmostras(amostras, true);
+
+        // calcula a energia de cada quadro, numa única passada pelas amostras.
+        int quadros = (tamanho + AMOSTRAS_QUADRO - 1) / AMOSTRAS_QUADRO;
+        double[] energias = new double[quadros];
+        double pico = 0;
+        for (int q = 0; q < quadros; q ++) {
+            int inicio = q * AMOSTRAS_QUADRO;
+            int fim = Math.min(tamanho, inicio + AMOSTRAS_QUADRO);
+            long soma = 0, soma_quadrados = 0;
+            for (int i = inicio; i < fim; i ++) {
+                int amostra = amostras[i];
+                soma += amostra;
+                soma_quadrados += amostra * amostra;
+            }
+            int n = fim - inicio;
+            double energia = (soma_quadrados - (double) soma * soma / n) / n;
+            energias[q] = energia;
+            if (energia > pico) pico = energia;
+        }
+
+        // determina o limiar e procura os quadros úteis a partir das pontas.
+        double limiar = Math.max(ENERGIA_MINIMA, pico * FRACAO_PICO);
+        int primeiro = 0;
+        while (primeiro < quadros && energias[primeiro] < limiar) primeiro ++;
+        if (primeiro == quadros) return new int[] { 0, tamanho };
+        int ultimo = quadros - 1;
+        while (energias[ultimo] < limiar) ultimo --;
+
+        // aplica as margens.
+        int inicio = Math.max(0, primeiro - QUADROS_MARGEM) * AMOSTRAS_QUADRO;
+        int fim = Math.min(tamanho, (ultimo + 1 + QUADROS_MARGEM) * AMOSTRAS_QUADRO);
+        return new int[] { inicio, fim - inicio };
+    }
+
+    /**
+     * Corta o silêncio do início e do fim de um som.
+     * @param som Descritor de som.
+     * @return Descritor do trecho útil do som (que compartilha as amostras com o original), ou o próprio
+     * som se não houver silêncio a cortar.
+     */
+    public static Som cortarSilencio(Som som) {
+        int[] trecho = calcularTrecho(som);
+        if (trecho[0] == 0 && trecho[1] == som.contagemAmostras()) return som;
+        return som.obterTrecho(trecho[0], trecho[1]);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import auxiliar.Auxiliar;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fila de persistência de botões. As gravações são feitas por uma thread própria, de modo que quem as
+ * solicita (normalmente a thread de eventos) não espera pelo disco. Gravações repetidas do mesmo arquivo
+ * que ainda não foram feitas são agrupadas, ficando apenas a mais recente.
+ *
+ * Cada botão é escrito num arquivo temporário, que então é renomeado para o arquivo definitivo; assim, uma
+ * falha no meio da gravação nunca deixa um botão pela metade. Uma queda no meio da troca é desfeita por
+ * {@link #recuperar(File)}, na próxima leitura da pasta. Opcionalmente, os arquivos temporários de um
+ * lote de gravações são sincronizados com o disco, todos juntos, antes das renomeações.
+ * @author Felipe Michels Fontoura
+ */
+public class FilaPersistencia implements ConstantesArmazenamento {
+    /**
+     * Marca, na fila, de que um arquivo deve ser apagado.
+     */
+    private static final Botao APAGAR = new Botao();
+
+    /**
+     * Gravações pendentes, pelo arquivo.
+     */
+    private final Map<File, Botao> pendentes = new LinkedHashMap<File, Botao>();
+
+    /**
+     * Repositório onde guardar os sons. Pode ser <b>null</b>.
+     */
+    private final RepositorioSons repositorio;
+
+    /**
+     * Define se os arquivos são sincronizados com o disco antes de serem renomeados.
+     */
+    private final boolean sincronizar;
+
+    /**
+     * Ouvinte dos eventos da fila. Pode ser <b>null</b>.
+     */
+    private final OuvintePersistencia ouvinte;
+
+    /**
+     * Thread de gravação.
+     */
+    private final Thread thread;
+
+    /**
+     * Indica que a thread de gravação está processando um lote.
+     */
+    private boolean gravando;
+
+    /**
+     * Indica que a fila foi encerrada.
+     */
+    private boolean encerrada;
+
+    /**
+     * Cria uma nova fila de persistência e inicia sua thread de gravação.
+     * @param repositorio Repositório onde guardar os sons, ou <b>null</b> para escrevê-los nos botões.
+     * @param sincronizar Se os arquivos devem ser sincronizados com o disco antes de serem renomeados.
+     * @param ouvinte Ouvinte dos eventos da fila. Pode ser <b>null</b>.
+     */
+    public FilaPersistencia(RepositorioSons repositorio, boolean sincronizar, OuvintePersistencia ouvinte) {
+        this.repositorio = repositorio;
+        this.sincronizar = sincronizar;
+        this.ouvinte = ouvinte;
+        thread = new Thread("Gravação da biblioteca") {
+            @Override public void run() {
+                executar();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Solicita a gravação de um botão. É gravada uma cópia do botão no momento da chamada, de modo que ele
+     * pode continuar sendo alterado. A cópia não lê o som de um botão carregado sob demanda; ele é lido
+     * pela thread de gravação, antes que qualquer arquivo do lote seja substituído ou apagado.
+     * @param botao Botão a gravar.
+     * @param arquivo Arquivo onde gravar o botão.
+     */
+    public void gravar(Botao botao, File arquivo) {
+        Botao copia = Botao.copiarSemCarregar(botao);
+        synchronized (this) {
+            if (encerrada) throw new IllegalStateException("Fila de persistência encerrada.");
+            pendentes.put(arquivo, copia);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Solicita que o arquivo de um botão seja apagado. Gravações pendentes desse arquivo são descartadas.
+     * @param arquivo Arquivo a apagar.
+     */
+    public synchronized void apagar(File arquivo) {
+        if (encerrada) throw new IllegalStateException("Fila de persistência encerrada.");
+        pendentes.put(arquivo, APAGAR);
+        notifyAll();
+    }
+
+    /**
+     * Verifica se há uma gravação pendente de um arquivo (que, portanto, pode ainda não existir).
+     * @param arquivo Arquivo.
+     * @return <b>true</b> se houver gravação pendente.
+     */
+    public synchronized boolean pendente(File arquivo) {
+        return pendentes.containsKey(arquivo);
+    }
+
+    /**
+     * Espera até que todas as gravações solicitadas tenham sido feitas.
+     * @throws InterruptedException Caso a thread seja interrompida durante a espera.
+     */
+    public synchronized void esperar() throws InterruptedException {
+        while (gravando || ! pendentes.isEmpty()) wait();
+    }
+
+    /**
+     * Encerra a fila, esperando que as gravações pendentes sejam feitas.
+     */
+    public void encerrar() {
+        synchronized (this) {
+            encerrada = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Laço da thread de gravação: obtém os pedidos pendentes em lotes e os executa.
+     */
+    private void executar() {
+        while (true) {
+            // espera por pedidos e os retira da fila.
+            Map<File, Botao> lote;
+            synchronized (this) {
+                while (pendentes.isEmpty() && ! encerrada) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                if (pendentes.isEmpty()) return;
+                lote = new LinkedHashMap<File, Botao>(pendentes);
+                pendentes.clear();
+                gravando = true;
+            }
+
+            // executa o lote. A thread continua mesmo que o lote falhe de forma inesperada.
+            try {
+                gravarLote(lote);
+            } catch (RuntimeException re) {
+                re.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    gravando = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Executa um lote de pedidos: escreve os arquivos temporários, sincroniza-os (se for o caso) e os
+     * renomeia; apaga os arquivos a apagar.
+     * @param lote Pedidos do lote.
+     */
+    private void gravarLote(Map<File, Botao> lote) {
+        List<File> arquivos = new ArrayList<File>();
+        List<File> temporarios = new ArrayList<File>();
+        List<FileOutputStream> abertos = new ArrayList<FileOutputStream>();
+        List<File> apagar = new ArrayList<File>();
+
+        for (Map.Entry<File, Botao> pedido : lote.entrySet()) {
+            File arquivo = pedido.getKey();
+            if (pedido.getValue() == APAGAR) {
+                // os arquivos só são apagados no fim, pois botões do lote podem ler seus sons deles.
+                apagar.add(arquivo);
+                continue;
+            }
+
+            // escreve o arquivo temporário.
+            File temporario = obterTemporario(arquivo);
+            FileOutputStream fluxo_arquivo = null;
+            try {
+                fluxo_arquivo = new FileOutputStream(temporario);
+                OutputStream fluxo = new BufferedOutputStream(fluxo_arquivo);
+                pedido.getValue().escreverBotao(fluxo, repositorio);
+                fluxo.flush();
+                if (sincronizar) {
+                    // o arquivo fica aberto para ser sincronizado junto com os demais.
+                    abertos.add(fluxo_arquivo);
+                } else {
+                    fluxo_arquivo.close();
+                }
+                arquivos.add(arquivo);
+                temporarios.add(temporario);
+            } catch (IOException ioe) {
+                fechar(fluxo_arquivo);
+                temporario.delete();
+                notificarFalha(arquivo, ioe);
+            } catch (RuntimeException re) {
+                // um erro inesperado num botão não pode parar a thread, ou os pedidos seguintes nunca
+                // seriam gravados.
+                fechar(fluxo_arquivo);
+                temporario.delete();
+                notificarFalha(arquivo, new IOException("Erro inesperado ao gravar " + arquivo.getName() + ".", re));
+            }
+        }
+
+        // sincroniza todos os arquivos do lote de uma vez. Um arquivo que não pôde ser sincronizado não
+        // substitui o definitivo, que fica como estava.
+        boolean[] sincronizados = new boolean[arquivos.size()];
+        Arrays.fill(sincronizados, ! sincronizar);
+        for (int i = 0; i < abertos.size(); i ++) {
+            try {
+                abertos.get(i).getChannel().force(true);
+                sincronizados[i] = true;
+            } catch (IOException ioe) {
+                notificarFalha(arquivos.get(i), ioe);
+            }
+            fechar(abertos.get(i));
+        }
+
+        // substitui os arquivos definitivos.
+        for (int i = 0; i < arquivos.size(); i ++) {
+            File arquivo = arquivos.get(i);
+            File temporario = temporarios.get(i);
+            if (! sincronizados[i]) {
+                temporario.delete();
+                continue;
+            }
+            try {
+                Auxiliar.substituirArquivo(temporario, arquivo);
+            } catch (IOException ioe) {
+                temporario.delete();
+                notificarFalha(arquivo, ioe);
+                continue;
+            }
+            notificarConclusao(arquivo);
+        }
+
+        // apaga os arquivos a apagar.
+        for (File arquivo : apagar) {
+            if (arquivo.delete() || ! arquivo.exists()) notificarConclusao(arquivo);
+            else notificarFalha(arquivo, new IOException("Não foi possível apagar " + arquivo.getName() + "."));
+        }
+    }
+
+    /**
+     * Obtém o arquivo temporário onde um botão é escrito antes de substituir o definitivo.
+     * @param arquivo Arquivo definitivo.
+     * @return Arquivo temporário.
+     */
+    private static File obterTemporario(File arquivo) {
+        return new File(arquivo.getPath() + ".tmp");
+    }
+
+    /**
+     * Termina as substituições de arquivos de uma pasta de botões interrompidas por uma queda: um botão
+     * cujo arquivo sumiu no meio da troca é restaurado a partir do arquivo temporário ou da reserva, e as
+     * sobras são apagadas. Deve ser chamado antes de a pasta ser lida.
+     * @param pasta_botoes Pasta de botões.
+     */
+    public static void recuperar(File pasta_botoes) {
+        File[] sobras = pasta_botoes.listFiles(new FileFilter() {
+            public boolean accept(File arquivo) {
+                String nome = arquivo.getName();
+                return nome.endsWith("." + extensao_botao + ".tmp") || nome.endsWith("." + extensao_botao + ".bak");
+            }
+        });
+        if (sobras == null) return;
+        for (File sobra : sobras) {
+            String caminho = sobra.getPath();
+            File arquivo = new File(caminho.substring(0, caminho.length() - 4));
+            Auxiliar.recuperarSubstituicao(obterTemporario(arquivo), arquivo);
+        }
+    }
+
+    /**
+     * Fecha um fluxo, ignorando erros.
+     * @param fluxo Fluxo a fechar. Pode ser <b>null</b>.
+     */
+    private static void fechar(OutputStream fluxo) {
+        if (fluxo == null) return;
+        try {
+            fluxo.close();
+        } catch (IOException ioe) {}
+    }
+
+    /**
+     * Informa ao ouvinte que um pedido foi concluído.
+     * @param arquivo Arquivo do pedido.
+     */
+    private void notificarConclusao(File arquivo) {
+        if (ouvinte != null) ouvinte.persistenciaConcluida(arquivo);
+    }
+
+    /**
+     * Informa ao ouvinte que um pedido falhou.
+     * @param arquivo Arquivo do pedido.
+     * @param erro Erro ocorrido.
+     */
+    private void notificarFalha(File arquivo, IOException erro) {
+        if (ouvinte != null) ouvinte.persistenciaFalhou(arquivo, erro);
+        else erro.printStackTrace();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import auxiliar.Auxiliar;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Fonte de som sobre um arquivo de áudio longo, que não é carregado inteiro na memória. Ao abrir o
+ * arquivo, ele é percorrido uma vez, sem reamostragem, para montar uma visão geral grosseira (o mínimo e o
+ * máximo de cada trecho curto); depois, apenas os trechos pedidos são decodificados e reamostrados para
+ * 8 KHz, a partir de uma posição próxima do início do trecho.
+ * @author Felipe Michels Fontoura
+ */
+public class FonteSom implements ConstantesArmazenamento {
+    /**
+     * Número de amostras (a 8 KHz) representadas por cada posição da visão geral.
+     */
+    public static final int AMOSTRAS_VISAO_GERAL = SOM_AMOSTRAGEM / 20;
+
+    /**
+     * Arquivo de áudio.
+     */
+    private final File arquivo;
+
+    /**
+     * Taxa de frames do arquivo, em Hz.
+     */
+    private final int taxa;
+
+    /**
+     * Número de amostras do som, a 8 KHz.
+     */
+    private final int contagem_amostras;
+
+    /**
+     * Valores mínimos de cada posição da visão geral.
+     */
+    private final byte[] minimos;
+
+    /**
+     * Valores máximos de cada posição da visão geral.
+     */
+    private final byte[] maximos;
+
+    /**
+     * Abre um arquivo de áudio como fonte de som, montando a visão geral.
+     * @param arquivo Arquivo de áudio a ler.
+     * @throws UnsupportedAudioFileException Caso o formato de áudio não seja suportado.
+     * @throws IOException Caso haja um erro na leitura do arquivo.
+     */
+    public FonteSom(File arquivo) throws UnsupportedAudioFileException, IOException {
+        this.arquivo = arquivo;
+        LeitorBlocosAudio leitor = LeitorBlocosAudio.abrir(arquivo);
+        try {
+            taxa = leitor.obterTaxa();
+
+            // cada posição da visão geral cobre um número fixo de frames.
+            int frames_posicao = (int) Math.max(1, ((long) AMOSTRAS_VISAO_GERAL * taxa) / SOM_AMOSTRAGEM);
+            byte[] minimos = new byte[1024];
+            byte[] maximos = new byte[1024];
+            int posicoes = 0;
+
+            // percorre o arquivo, acumulando o mínimo e o máximo de cada posição.
+            float[] bloco_mono = new float[leitor.obterFramesBloco()];
+            float minimo = 0, maximo = 0;
+            int restantes = 0;
+            long frames_total = 0;
+            int frames;
+            while ((frames = leitor.ler(bloco_mono)) >= 0) {
+                for (int i = 0; i < frames; i ++) {
+                    float valor = bloco_mono[i];
+                    if (restantes == 0) {
+                        // fecha a posição anterior e começa uma nova.
+                        if (posicoes > 0) {
+                            minimos[posicoes - 1] = paraAmostra(minimo);
+                            maximos[posicoes - 1] = paraAmostra(maximo);
+                        }
+                        if (posicoes == minimos.length) {
+                            minimos = Auxiliar.copiarTrecho(minimos, 0, posicoes * 2, (byte) 0);
+                            maximos = Auxiliar.copiarTrecho(maximos, 0, posicoes * 2, (byte) 0);
+                        }
+                        posicoes ++;
+                        restantes = frames_posicao;
+                        minimo = valor;
+                        maximo = valor;
+                    } else if (valor < minimo) minimo = valor;
+                    else if (valor > maximo) maximo = valor;
+                    restantes --;
+                }
+                frames_total += frames;
+            }
+            if (posicoes > 0) {
+                minimos[posicoes - 1] = paraAmostra(minimo);
+                maximos[posicoes - 1] = paraAmostra(maximo);
+            }
+
+            this.minimos = Auxiliar.copiarTrecho(minimos, 0, posicoes, (byte) 0);
+            this.maximos = Auxiliar.copiarTrecho(maximos, 0, posicoes, (byte) 0);
+            contagem_amostras = (int) Math.min(Integer.MAX_VALUE, (frames_total * SOM_AMOSTRAGEM + taxa - 1) / taxa);
+        } finally {
+            leitor.fechar();
+        }
+    }
+
+    /**
+     * Converte um valor entre -1 e 1 para uma amostra sinalizada de 8 bits.
+     */
+    private static byte paraAmostra(float valor) {
+        int amostra = Math.round(valor * 128f);
+        if (amostra > 127) amostra = 127;
+        else if (amostra < -128) amostra = -128;
+        return (byte) amostra;
+    }
+
+    /**
+     * Obtém o arquivo de áudio dessa fonte.
+     * @return Arquivo de áudio.
+     */
+    public File obterArquivo() {
+        return arquivo;
+    }
+
+    /**
+     * Obtém o número de amostras do som inteiro, a 8 KHz.
+     * @return Número de amostras.
+     */
+    public int contagemAmostras() {
+        return contagem_amostras;
+    }
+
+    /**
+     * Obtém os valores mínimos da visão geral. Cada posição cobre {@link #AMOSTRAS_VISAO_GERAL} amostras.
+     * @return Vetor com os valores mínimos (sinalizados). Não deve ser alterado.
+     */
+    public byte[] obterMinimosVisaoGeral() {
+        return minimos;
+    }
+
+    /**
+     * Obtém os valores máximos da visão geral. Cada posição cobre {@link #AMOSTRAS_VISAO_GERAL} amostras.
+     * @return Vetor com os valores máximos (sinalizados). Não deve ser alterado.
+     */
+    public byte[] obterMaximosVisaoGeral() {
+        return maximos;
+    }
+
+    /**
+     * Decodifica um trecho do som, a 8 KHz. Apenas os frames do arquivo necessários para o trecho (e para o
+     * filtro de reamostragem) são decodificados.
+     * @param inicio Primeira amostra do trecho.
+     * @param tamanho Número de amostras do trecho.
+     * @return Descritor do trecho do som.
+     * @throws UnsupportedAudioFileException Caso o formato de áudio não seja suportado.
+     * @throws IOException Caso haja um erro na leitura do arquivo.
+     */
+    public Som lerTrecho(int inicio, int tamanho) throws UnsupportedAudioFileException, IOException {
+        if (inicio < 0) inicio = 0;
+        if (tamanho > contagem_amostras - inicio) tamanho = Math.max(0, contagem_amostras - inicio);
+
+        LeitorBlocosAudio leitor = LeitorBlocosAudio.abrir(arquivo);
+        try {
+            ReamostradorSom reamostrador = new ReamostradorSom(taxa, SOM_AMOSTRAGEM);
+            long l = reamostrador.obterInterpolacao();
+            long m = reamostrador.obterDecimacao();
+
+            // começa num ponto em que as grades de entrada e de saída coincidem (k * M frames, k * L
+            // amostras), com frames suficientes antes do trecho para o filtro.
+            long k = Math.max(0, ((long) inicio * m - (long) reamostrador.obterAlcance() * l) / (l * m));
+            leitor.pular(k * m);
+            int descartar = (int) (inicio - k * l);
+
+            // reamostra até completar o trecho.
+            byte[] amostras = new byte[descartar + tamanho];
+            float[] bloco_mono = new float[leitor.obterFramesBloco()];
+            int gerados = 0;
+            int frames;
+            while (gerados < amostras.length && (frames = leitor.ler(bloco_mono)) >= 0)
+                gerados += reamostrador.processar(bloco_mono, frames, amostras, gerados, amostras.length - gerados);
+            gerados += reamostrador.finalizar(amostras, gerados, amostras.length - gerados);
+
+            return new Som(amostras, descartar, Math.max(0, gerados - descartar), true);
+        } finally {
+            leitor.fechar();
+        }
+    }
+}
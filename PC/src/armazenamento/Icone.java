@@ -40,19 +40,25 @@ import java.io.IOException;
  */
 public class Icone {
     /**
-     * Grade representando a imagem monocromática.
+     * Grade representando a imagem monocromática, empacotada em 64 bits. A célula (x, y) corresponde
+     * ao bit de número (8 * y + x); assim, cada byte do valor é uma linha do ícone, no mesmo formato
+     * usado nos arquivos e na prancha.
      */
-    private boolean[][] grade;
+    private long grade;
 
     /**
      * Cria um novo ícone vazio.
      */
     public Icone() {
-        // cria a grade
-        grade = new boolean[8][8];
+        grade = 0L;
+    }
 
-        // limpa a grade
-        for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++) grade[x][y] = false;
+    /**
+     * Cria um novo ícone a partir de sua grade empacotada.
+     * @param grade Grade empacotada (um bit por célula, uma linha por byte).
+     */
+    public Icone(long grade) {
+        this.grade = grade;
     }
 
     /**
@@ -71,11 +77,27 @@ public class Icone {
      * @param icone Ícone a clonar.
      */
     public Icone(Icone icone) {
-        this();
+        this((icone == null) ? 0L : icone.grade);
+    }
 
-        // copia a grade
-        if (icone == null) for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++) grade[x][y] = false;
-        else substituirGrade(icone.grade);
+    /**
+     * Obtém o número do bit associado a determinada célula.
+     * @param x Posição horizontal da célula.
+     * @param y Posição vertical da célula.
+     * @return Número do bit da célula na grade empacotada.
+     */
+    private static int bit(int x, int y) {
+        if (x < 0 || x >= 8 || y < 0 || y >= 8)
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y + ")");
+        return (y << 3) | x;
+    }
+
+    /**
+     * Obtém a grade empacotada desse ícone (um bit por célula, uma linha por byte).
+     * @return Grade empacotada desse ícone.
+     */
+    public long obterGrade() {
+        return grade;
     }
 
     /**
@@ -89,7 +111,11 @@ public class Icone {
             if (grade[x] == null) return;
             if (grade[x].length < 8) return;
         }
-        for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++) grade[x][y] = this.grade[x][y];
+        long bits = this.grade;
+        for (int y = 0; y < 8; y ++) for (int x = 0; x < 8; x ++) {
+            grade[x][y] = (bits & 1L) != 0;
+            bits = bits >>> 1;
+        }
     }
 
     /**
@@ -103,7 +129,12 @@ public class Icone {
             if (grade[x] == null) return;
             if (grade[x].length < 8) return;
         }
-        for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++) this.grade[x][y] = grade[x][y];
+        long bits = 0L;
+        for (int y = 7; y >= 0; y --) for (int x = 7; x >= 0; x --) {
+            bits = bits << 1;
+            if (grade[x][y]) bits = bits | 1L;
+        }
+        this.grade = bits;
     }
 
     /**
@@ -113,7 +144,6 @@ public class Icone {
      * @return Objeto com o ícone.
      */
     public static Icone importarImagem(BufferedImage imagem) {
-        boolean[][] grade = new boolean[8][8];
         BufferedImage imgRedimensionada = new BufferedImage(
           /*        largura: */ 8,
           /*         altura: */ 8,
@@ -140,6 +170,7 @@ public class Icone {
         }
         media_grey = acumulador / (8 * 8);
         // System.out.println("La media: " + media_grey);
+        long grade = 0L;
         for (int contI = 0; contI < 8; contI++) {
             for (int contJ = 0; contJ < 8; contJ++) {
                 c = new Color(imgRedimensionada.getRGB(contI, contJ));
@@ -147,9 +178,7 @@ public class Icone {
                 // grey = (int) (c.getRed() +  c.getGreen() + c.getBlue()) / 4;
                 // System.out.print(grey + "\t");
                 if (grey >= media_grey)
-                    grade[contI][contJ] = true;
-                else
-                    grade[contI][contJ] = false;
+                    grade = grade | (1L << bit(contI, contJ));
             }
             // System.out.println("");
         }
@@ -173,10 +202,14 @@ public class Icone {
           /* tipo de imagem: */ BufferedImage.TYPE_4BYTE_ABGR
         );
 
-        // desenha a imagem, pixel a pixel.
-        for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++) {
-            imagem.setRGB(x, y, grade[x][y] ? cor_sim : cor_nao);
+        // desenha a imagem, pixel a pixel (os bits já estão na ordem das linhas).
+        int[] pixels = new int[64];
+        long bits = grade;
+        for (int i = 0; i < 64; i ++) {
+            pixels[i] = ((bits & 1L) != 0) ? cor_sim : cor_nao;
+            bits = bits >>> 1;
         }
+        imagem.setRGB(0, 0, 8, 8, pixels, 0, 8);
 
         // retorna a imagem gerada.
         return imagem;
@@ -189,7 +222,7 @@ public class Icone {
      * @return Célula na posição especificada.
      */
     public boolean obterCelula(int x, int y) {
-        return grade[x][y];
+        return (grade & (1L << bit(x, y))) != 0;
     }
 
     /**
@@ -200,8 +233,10 @@ public class Icone {
      * @return Valor antigo contido nessa célula.
      */
     public boolean definirCelula(int x, int y, boolean valor) {
-        boolean retorno = grade[x][y];
-        grade[x][y] = valor;
+        long mascara = 1L << bit(x, y);
+        boolean retorno = (grade & mascara) != 0;
+        if (valor) grade = grade | mascara;
+        else grade = grade & ~mascara;
         return retorno;
     }
 
@@ -212,17 +247,11 @@ public class Icone {
      * @throws IOException Caso haja algum problema na leitura dos dados.
      */
     public static Icone lerIcone(InputStream fluxo) throws IOException {
-        // cria a grade do ícone.
-        boolean[][] grade = new boolean[8][8];
-
-        // lê cada linha, bit a bit.
+        // lê cada linha (um byte por linha, bit menos significativo à esquerda).
+        long grade = 0L;
         for (int y = 0; y < 8; y ++) {
             int linha = fluxo.read();
-            int shift = 1;
-            for (int x = 0; x < 8; x ++) {
-                grade[x][y] = (linha & shift) != 0;
-                shift = shift << 1;
-            }
+            grade = grade | ((long) (linha & 0xFF) << (y << 3));
         }
 
         // cria o ícone a partir da grade.
@@ -235,15 +264,10 @@ public class Icone {
      * @throws IOException Caso haja algum problema na leitura dos dados.
      */
     public void escreverIcone(OutputStream fluxo) throws IOException {
-        for (int y = 0; y < 8; y ++) {
-            int linha = 0;
-            int shift = 1;
-            for (int x = 0; x < 8; x ++) {
-                if (grade[x][y]) linha = linha | shift;
-                shift = shift << 1;
-            }
-            fluxo.write(linha);
-        }
+        byte[] linhas = new byte[8];
+        for (int y = 0; y < 8; y ++)
+            linhas[y] = (byte) (grade >>> (y << 3));
+        fluxo.write(linhas);
     }
 
     /**
@@ -251,11 +275,14 @@ public class Icone {
      */
     @Override public boolean equals(Object obj) {
         if (obj instanceof Icone) {
-            Icone icone = (Icone) obj;
-            for (int x = 0; x < 8; x ++) for (int y = 0; y < 8; y ++)
-                if (icone.grade[x][y] != grade[x][y])
-                    return false;
-            return true;
+            return ((Icone) obj).grade == grade;
         } else return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public int hashCode() {
+        return (int) (grade ^ (grade >>> 32));
+    }
 }
@@ -0,0 +1,231 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import auxiliar.Auxiliar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Importação de arquivos de áudio em lote. Os arquivos são decodificados e reamostrados em paralelo, por
+ * um número limitado de threads, e cada arquivo importado vira um botão com o nome do arquivo e um ícone
+ * vazio (opcionalmente, com o silêncio do início e do fim do som cortado). A importação roda em segundo
+ * plano, informando os botões criados e o progresso a um ouvinte, e pode ser cancelada.
+ * @author Felipe Michels Fontoura
+ */
+public class ImportadorLote {
+    /**
+     * Número máximo de threads de importação.
+     */
+    private static final int MAXIMO_THREADS_IMPORTACAO = 4;
+
+    /**
+     * Tempo máximo de espera por uma importação antes de verificar o cancelamento, em milissegundos.
+     */
+    private static final long ESPERA_CANCELAMENTO = 100;
+
+    /**
+     * Extensões dos arquivos de áudio importados.
+     */
+    public static final String[] EXTENSOES_AUDIO = new String[] { "wav", "aif", "aiff", "au" };
+
+    /**
+     * Arquivos a importar.
+     */
+    private final File[] arquivos;
+
+    /**
+     * Ouvinte dos eventos da importação.
+     */
+    private final OuvinteImportacao ouvinte;
+
+    /**
+     * Se o silêncio do início e do fim dos sons deve ser cortado.
+     */
+    private final boolean cortar_silencio;
+
+    /**
+     * Se a importação foi cancelada.
+     */
+    private volatile boolean cancelada;
+
+    /**
+     * Executor das importações, enquanto a importação estiver em andamento.
+     */
+    private volatile ExecutorService executor;
+
+    /**
+     * Cria uma importação em lote. A importação só começa com {@link #iniciar()}.
+     * @param arquivos Arquivos de áudio a importar.
+     * @param cortar_silencio Se o silêncio do início e do fim dos sons deve ser cortado.
+     * @param ouvinte Ouvinte dos eventos da importação.
+     */
+    public ImportadorLote(File[] arquivos, boolean cortar_silencio, OuvinteImportacao ouvinte) {
+        this.arquivos = arquivos.clone();
+        this.cortar_silencio = cortar_silencio;
+        this.ouvinte = ouvinte;
+    }
+
+    /**
+     * Obtém os arquivos de áudio de uma seleção de arquivos e pastas. As pastas são percorridas
+     * recursivamente.
+     * @param selecionados Arquivos e pastas selecionados.
+     * @return Arquivos de áudio, em ordem de nome dentro de cada pasta.
+     */
+    public static File[] listarArquivos(File[] selecionados) {
+        List<File> lista = new ArrayList<File>();
+        for (File selecionado : selecionados) listarArquivos(selecionado, lista);
+        return lista.toArray(new File[lista.size()]);
+    }
+
+    /**
+     * Acrescenta os arquivos de áudio de um arquivo ou pasta a uma lista.
+     * @param arquivo Arquivo ou pasta.
+     * @param lista Lista de destino.
+     */
+    private static void listarArquivos(File arquivo, List<File> lista) {
+        if (arquivo.isDirectory()) {
+            File[] conteudo = arquivo.listFiles();
+            if (conteudo == null) return;
+            Arrays.sort(conteudo);
+            for (File item : conteudo) listarArquivos(item, lista);
+        } else if (arquivo.isFile()) {
+            String extensao = Auxiliar.obterExtensao(arquivo);
+            if (extensao == null) return;
+            for (String extensao_audio : EXTENSOES_AUDIO)
+                if (extensao.equalsIgnoreCase(extensao_audio)) {
+                    lista.add(arquivo);
+                    return;
+                }
+        }
+    }
+
+    /**
+     * Cria um botão a partir de um arquivo de áudio, com o nome do arquivo (sem a extensão) e um ícone
+     * vazio.
+     * @param arquivo Arquivo de áudio.
+     * @param cortar_silencio Se o silêncio do início e do fim do som deve ser cortado.
+     * @return Botão criado.
+     * @throws UnsupportedAudioFileException Caso o formato de áudio não seja suportado.
+     * @throws IOException Caso haja um erro na leitura do arquivo.
+     */
+    public static Botao criarBotao(File arquivo, boolean cortar_silencio) throws UnsupportedAudioFileException, IOException {
+        String nome = arquivo.getName();
+        int ponto = nome.lastIndexOf('.');
+        if (ponto > 0) nome = nome.substring(0, ponto);
+        Som som = Som.importarArquivo(arquivo);
+        if (cortar_silencio) som = DetectorSilencio.cortarSilencio(som);
+        return new Botao(nome, new Icone(), nome, som);
+    }
+
+    /**
+     * Inicia a importação, numa thread própria.
+     */
+    public void iniciar() {
+        new Thread("Importação em lote") {
+            @Override public void run() {
+                importar();
+            }
+        }.start();
+    }
+
+    /**
+     * Cancela a importação. Os arquivos que estiverem sendo importados são descartados, e nenhum outro é
+     * importado.
+     */
+    public void cancelar() {
+        cancelada = true;
+        ExecutorService executor = this.executor;
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Importa os arquivos, entregando os botões ao ouvinte na ordem em que ficam prontos.
+     */
+    private void importar() {
+        final int total = arquivos.length;
+        int threads = Math.max(1, Math.min(total, Math.min(Runtime.getRuntime().availableProcessors(), MAXIMO_THREADS_IMPORTACAO)));
+        executor = Executors.newFixedThreadPool(threads);
+        if (cancelada) executor.shutdownNow();
+        try {
+            // agenda a importação de todos os arquivos.
+            CompletionService<Botao> importacoes = new ExecutorCompletionService<Botao>(executor);
+            Map<Future<Botao>, File> pendentes = new IdentityHashMap<Future<Botao>, File>(total);
+            for (final File arquivo : arquivos) {
+                if (cancelada) break;
+                pendentes.put(importacoes.submit(new Callable<Botao>() {
+                    @Override public Botao call() throws Exception {
+                        return criarBotao(arquivo, cortar_silencio);
+                    }
+                }), arquivo);
+            }
+            ouvinte.importacaoAvancou(0, total);
+
+            // recolhe os botões importados (a espera é limitada para que o cancelamento seja percebido
+            // mesmo que nenhuma importação termine).
+            int processados = 0;
+            while (! pendentes.isEmpty() && ! cancelada) {
+                Future<Botao> futuro = importacoes.poll(ESPERA_CANCELAMENTO, TimeUnit.MILLISECONDS);
+                if (futuro == null) continue;
+                File arquivo = pendentes.remove(futuro);
+                processados ++;
+                try {
+                    Botao botao = futuro.get();
+                    if (! cancelada) ouvinte.botaoImportado(arquivo, botao);
+                } catch (ExecutionException ee) {
+                    Throwable causa = ee.getCause();
+                    if (! cancelada) ouvinte.importacaoFalhou(arquivo, causa instanceof Exception ? (Exception) causa : ee);
+                }
+                ouvinte.importacaoAvancou(processados, total);
+            }
+        } catch (InterruptedException ie) {
+            cancelada = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            cancelada = true;
+        } finally {
+            executor.shutdownNow();
+            ouvinte.importacaoTerminou(cancelada);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice de um conjunto de botões pelo valor, para verificar rapidamente se um botão igual a outro já está
+ * no conjunto. Os botões são agrupados pelo hash; como eles podem ser alterados, o hash usado é o do
+ * momento em que foram indexados, e um botão alterado deve ser reindexado com {@link #atualizar(Botao)}.
+ * @author Felipe Michels Fontoura
+ */
+public class IndiceBotoes {
+    /**
+     * Botões indexados, agrupados pelo hash.
+     */
+    private final Map<Integer, List<Botao>> grupos = new HashMap<Integer, List<Botao>>();
+
+    /**
+     * Hash de cada botão indexado no momento em que foi indexado.
+     */
+    private final Map<Botao, Integer> hashes = new IdentityHashMap<Botao, Integer>();
+
+    /**
+     * Cria um índice vazio.
+     */
+    public IndiceBotoes() {
+    }
+
+    /**
+     * Cria um índice com um conjunto de botões.
+     * @param botoes Botões a indexar.
+     */
+    public IndiceBotoes(Collection<Botao> botoes) {
+        for (Botao botao : botoes) adicionar(botao);
+    }
+
+    /**
+     * Adiciona um botão ao índice. Se o botão já estiver indexado, nada acontece.
+     * @param botao Botão a adicionar.
+     */
+    public void adicionar(Botao botao) {
+        if (hashes.containsKey(botao)) return;
+        Integer hash = Integer.valueOf(botao.hashCode());
+        hashes.put(botao, hash);
+        List<Botao> grupo = grupos.get(hash);
+        if (grupo == null) {
+            grupo = new ArrayList<Botao>(1);
+            grupos.put(hash, grupo);
+        }
+        grupo.add(botao);
+    }
+
+    /**
+     * Remove um botão do índice.
+     * @param botao Botão a remover (o próprio objeto indexado).
+     */
+    public void remover(Botao botao) {
+        Integer hash = hashes.remove(botao);
+        if (hash == null) return;
+        List<Botao> grupo = grupos.get(hash);
+        for (int i = 0; i < grupo.size(); i ++) {
+            if (grupo.get(i) == botao) {
+                grupo.remove(i);
+                break;
+            }
+        }
+        if (grupo.isEmpty()) grupos.remove(hash);
+    }
+
+    /**
+     * Reindexa um botão que foi alterado.
+     * @param botao Botão alterado.
+     */
+    public void atualizar(Botao botao) {
+        remover(botao);
+        adicionar(botao);
+    }
+
+    /**
+     * Procura no índice um botão igual a outro.
+     * @param botao Botão a procurar.
+     * @return Botão indexado igual ao procurado, ou nulo se não houver.
+     */
+    public Botao procurar(Botao botao) {
+        List<Botao> grupo = grupos.get(Integer.valueOf(botao.hashCode()));
+        if (grupo == null) return null;
+        for (Botao indexado : grupo)
+            if (indexado == botao || indexado.equals(botao)) return indexado;
+        return null;
+    }
+
+    /**
+     * Verifica se há no índice um botão igual a outro.
+     * @param botao Botão a procurar.
+     * @return <b>true</b> se houver um botão igual.
+     */
+    public boolean contem(Botao botao) {
+        return procurar(botao) != null;
+    }
+
+    /**
+     * Obtém o número de botões indexados.
+     * @return Número de botões.
+     */
+    public int tamanho() {
+        return hashes.size();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Leitor de áudio em blocos grandes. Cada leitura pede ao fluxo um bloco inteiro (de cerca de 64 KB,
+ * alinhado ao tamanho do frame) num buffer reutilizado, e os frames completos do bloco são decodificados
+ * de uma vez para amostras mono; os bytes de um frame incompleto são guardados para a próxima leitura.
+ * @author Felipe Michels Fontoura
+ */
+final class LeitorBlocosAudio {
+    /**
+     * Tamanho aproximado dos blocos lidos, em bytes.
+     */
+    private static final int TAMANHO_BLOCO = 64 * 1024;
+
+    /**
+     * Fluxo de áudio de origem.
+     */
+    private final AudioInputStream entrada_audio;
+
+    /**
+     * Conversor dos frames para amostras mono.
+     */
+    private final ConversorAudio conversor;
+
+    /**
+     * Tamanho de cada frame, em bytes.
+     */
+    private final int tamanho_frame;
+
+    /**
+     * Taxa de frames, em Hz.
+     */
+    private final int taxa;
+
+    /**
+     * Buffer de leitura, reutilizado a cada bloco.
+     */
+    private final byte[] bloco;
+
+    /**
+     * Número de bytes de um frame incompleto no início do buffer.
+     */
+    private int pendentes;
+
+    /**
+     * Se o fim do fluxo já foi alcançado.
+     */
+    private boolean fim;
+
+    /**
+     * Cria um leitor de blocos sobre um fluxo de áudio PCM.
+     * @param entrada_audio Fluxo de áudio de origem.
+     * @throws UnsupportedAudioFileException Caso o formato do áudio não seja suportado.
+     */
+    LeitorBlocosAudio(AudioInputStream entrada_audio) throws UnsupportedAudioFileException {
+        this.entrada_audio = entrada_audio;
+        conversor = new ConversorAudio(entrada_audio.getFormat());
+        tamanho_frame = conversor.obterTamanhoFrame();
+        taxa = Math.round(entrada_audio.getFormat().getFrameRate());
+        if (taxa <= 0) throw new UnsupportedAudioFileException("Frame rate inválido.");
+        bloco = new byte[Math.max(1, TAMANHO_BLOCO / tamanho_frame) * tamanho_frame];
+    }
+
+    /**
+     * Abre um arquivo de áudio para leitura em blocos. Codificações não lineares (como a-law e mu-law) são
+     * convertidas para PCM, se possível.
+     * @param arquivo Arquivo de áudio.
+     * @return Leitor de blocos do arquivo, que deve ser fechado depois do uso.
+     * @throws UnsupportedAudioFileException Caso o formato do áudio não seja suportado.
+     * @throws IOException Caso haja um erro na leitura do arquivo.
+     */
+    static LeitorBlocosAudio abrir(File arquivo) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream entrada_audio = AudioSystem.getAudioInputStream(arquivo);
+        try {
+            AudioFormat formato_audio = entrada_audio.getFormat();
+            if (formato_audio.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && formato_audio.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED
+             && AudioSystem.isConversionSupported(AudioFormat.Encoding.PCM_SIGNED, formato_audio))
+                entrada_audio = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, entrada_audio);
+            return new LeitorBlocosAudio(entrada_audio);
+        } catch (UnsupportedAudioFileException uafe) {
+            entrada_audio.close();
+            throw uafe;
+        } catch (RuntimeException re) {
+            entrada_audio.close();
+            throw re;
+        }
+    }
+
+    /**
+     * Obtém a taxa de frames do áudio.
+     * @return Taxa de frames, em Hz.
+     */
+    int obterTaxa() {
+        return taxa;
+    }
+
+    /**
+     * Obtém o número de frames do áudio, se for conhecido.
+     * @return Número de frames, ou {@link AudioSystem#NOT_SPECIFIED}.
+     */
+    long obterFrames() {
+        return entrada_audio.getFrameLength();
+    }
+
+    /**
+     * Obtém o número máximo de frames de um bloco.
+     * @return Número máximo de frames devolvidos por {@link #ler(float[])}.
+     */
+    int obterFramesBloco() {
+        return bloco.length / tamanho_frame;
+    }
+
+    /**
+     * Lê e decodifica um bloco de frames.
+     * @param destino Vetor de destino das amostras mono, com pelo menos {@link #obterFramesBloco()}
+     * posições.
+     * @return Número de frames decodificados, ou -1 no fim do fluxo.
+     * @throws IOException Caso haja um erro na leitura.
+     */
+    int ler(float[] destino) throws IOException {
+        int frames = 0;
+        while (frames == 0) {
+            if (fim) return -1;
+
+            // lê o quanto o fluxo puder entregar, sem esperar que o bloco se complete.
+            int lidos = entrada_audio.read(bloco, pendentes, bloco.length - pendentes);
+            if (lidos < 0) {
+                fim = true;
+                lidos = 0;
+            }
+            int disponiveis = pendentes + lidos;
+
+            // decodifica os frames completos e guarda o resto.
+            frames = disponiveis / tamanho_frame;
+            conversor.decodificar(bloco, 0, frames, destino);
+            pendentes = disponiveis - frames * tamanho_frame;
+            if (pendentes > 0 && frames > 0)
+                System.arraycopy(bloco, frames * tamanho_frame, bloco, 0, pendentes);
+        }
+        return frames;
+    }
+
+    /**
+     * Pula frames do início do áudio, sem decodificá-los. Deve ser chamado antes da primeira leitura.
+     * @param frames Número de frames a pular.
+     * @throws IOException Caso haja um erro na leitura.
+     */
+    void pular(long frames) throws IOException {
+        long bytes = frames * tamanho_frame;
+        while (bytes > 0 && ! fim) {
+            long pulados = entrada_audio.skip(bytes);
+            if (pulados <= 0) {
+                // o fluxo não sabe pular; lê e descarta.
+                pulados = entrada_audio.read(bloco, 0, (int) Math.min(bloco.length, bytes));
+                if (pulados < 0) fim = true;
+            }
+            if (pulados > 0) bytes -= pulados;
+        }
+    }
+
+    /**
+     * Fecha o fluxo de áudio.
+     * @throws IOException Caso haja um erro ao fechar o fluxo.
+     */
+    void fechar() throws IOException {
+        entrada_audio.close();
+    }
+}
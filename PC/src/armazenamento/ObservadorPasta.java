@@ -0,0 +1,248 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Observador de uma pasta de botões. Uma thread própria verifica periodicamente a data de modificação e
+ * o tamanho dos arquivos de botão; uma alteração só é considerada quando o arquivo permanece igual por
+ * duas verificações seguidas, para que arquivos ainda sendo copiados não sejam lidos pela metade. Os
+ * arquivos alterados são lidos na própria thread do observador, e as diferenças são informadas a um
+ * ouvinte.
+ * @author Felipe Michels Fontoura
+ */
+public class ObservadorPasta implements ConstantesArmazenamento {
+    /**
+     * Estado de um arquivo: data de modificação e tamanho.
+     */
+    private static class Estado {
+        final long modificacao;
+        final long tamanho;
+
+        Estado(File arquivo) {
+            modificacao = arquivo.lastModified();
+            tamanho = arquivo.length();
+        }
+
+        @Override public boolean equals(Object obj) {
+            if (! (obj instanceof Estado)) return false;
+            Estado estado = (Estado) obj;
+            return estado.modificacao == modificacao && estado.tamanho == tamanho;
+        }
+
+        @Override public int hashCode() {
+            return (int) (modificacao ^ (modificacao >>> 32) ^ tamanho);
+        }
+    }
+
+    /**
+     * Estado que indica que um arquivo não existe.
+     */
+    private static final Estado AUSENTE = null;
+
+    /**
+     * Pasta observada.
+     */
+    private final File pasta;
+
+    /**
+     * Intervalo entre as verificações, em milissegundos.
+     */
+    private final long intervalo;
+
+    /**
+     * Ouvinte das alterações.
+     */
+    private final OuvintePasta ouvinte;
+
+    /**
+     * Estado dos arquivos já informados ao ouvinte (ou que ele já conhece), pelo nome.
+     */
+    private final Map<String, Estado> conhecidos = new HashMap<String, Estado>();
+
+    /**
+     * Estado dos arquivos que não puderam ser lidos como botões, pelo nome.
+     */
+    private final Map<String, Estado> invalidos = new HashMap<String, Estado>();
+
+    /**
+     * Estado dos arquivos alterados na última verificação, que ainda não foram informados.
+     */
+    private final Map<String, Estado> candidatos = new HashMap<String, Estado>();
+
+    /**
+     * Thread de verificação.
+     */
+    private Thread thread;
+
+    /**
+     * Cria um observador de uma pasta. Os arquivos existentes no momento são considerados conhecidos.
+     * @param pasta Pasta a observar.
+     * @param intervalo Intervalo entre as verificações, em milissegundos.
+     * @param ouvinte Ouvinte das alterações.
+     */
+    public ObservadorPasta(File pasta, long intervalo, OuvintePasta ouvinte) {
+        this.pasta = pasta;
+        this.intervalo = intervalo;
+        this.ouvinte = ouvinte;
+        File[] arquivos = listar();
+        if (arquivos != null)
+            for (File arquivo : arquivos) conhecidos.put(arquivo.getName(), new Estado(arquivo));
+    }
+
+    /**
+     * Inicia a observação da pasta.
+     */
+    public synchronized void iniciar() {
+        if (thread != null) return;
+        thread = new Thread("Observação da biblioteca") {
+            @Override public void run() {
+                try {
+                    while (! isInterrupted()) {
+                        Thread.sleep(intervalo);
+                        verificar();
+                    }
+                } catch (InterruptedException ie) {}
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Termina a observação da pasta.
+     */
+    public synchronized void parar() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Registra o estado atual de um arquivo como conhecido, sem informá-lo ao ouvinte. Deve ser chamado
+     * por quem alterou o arquivo, para que a própria alteração não seja informada de volta.
+     * @param arquivo Arquivo alterado.
+     */
+    public synchronized void registrar(File arquivo) {
+        String nome = arquivo.getName();
+        candidatos.remove(nome);
+        invalidos.remove(nome);
+        if (arquivo.isFile()) conhecidos.put(nome, new Estado(arquivo));
+        else conhecidos.remove(nome);
+    }
+
+    /**
+     * Lista os arquivos de botão da pasta.
+     * @return Arquivos de botão, ou nulo se a pasta não puder ser lida.
+     */
+    private File[] listar() {
+        return pasta.listFiles(new FiltroFormato(extensao_botao));
+    }
+
+    /**
+     * Verifica a pasta uma vez, informando as alterações estáveis ao ouvinte.
+     */
+    private void verificar() {
+        File[] arquivos = listar();
+        if (arquivos == null) return;
+
+        // obtém o estado atual de todos os arquivos, inclusive os que sumiram.
+        Map<String, Estado> atuais = new HashMap<String, Estado>();
+        for (File arquivo : arquivos) atuais.put(arquivo.getName(), new Estado(arquivo));
+        Set<String> nomes = new HashSet<String>(atuais.keySet());
+        synchronized (this) {
+            nomes.addAll(conhecidos.keySet());
+            nomes.addAll(candidatos.keySet());
+        }
+
+        for (String nome : nomes) {
+            Estado atual = atuais.get(nome);
+            boolean existia;
+            Estado conhecido;
+            synchronized (this) {
+                existia = conhecidos.containsKey(nome);
+                conhecido = conhecidos.get(nome);
+                if ((existia && igual(atual, conhecido)) || (! existia && (atual == AUSENTE || igual(atual, invalidos.get(nome))))) {
+                    // nada mudou.
+                    candidatos.remove(nome);
+                    continue;
+                }
+                if (! candidatos.containsKey(nome) || ! igual(candidatos.get(nome), atual)) {
+                    // mudou agora; espera a próxima verificação para ver se o arquivo ficou estável.
+                    candidatos.put(nome, atual);
+                    continue;
+                }
+                candidatos.remove(nome);
+            }
+
+            // a alteração é estável: lê o arquivo fora do bloqueio.
+            File arquivo = new File(pasta, nome);
+            Botao botao = null;
+            if (atual != AUSENTE) {
+                try {
+                    botao = Botao.lerBotaoSobDemanda(arquivo);
+                } catch (IOException ioe) {
+                    // não é um botão válido: é tratado como se não existisse, até ser alterado de novo.
+                }
+            }
+
+            synchronized (this) {
+                // se o arquivo foi registrado enquanto era lido, a alteração já é conhecida.
+                if (conhecidos.containsKey(nome) != existia || ! igual(conhecidos.get(nome), conhecido)) continue;
+                if (botao != null) {
+                    conhecidos.put(nome, atual);
+                    invalidos.remove(nome);
+                } else {
+                    conhecidos.remove(nome);
+                    if (atual != AUSENTE) invalidos.put(nome, atual);
+                    else invalidos.remove(nome);
+                }
+            }
+
+            // informa o ouvinte.
+            if (botao != null && existia) ouvinte.botaoAlterado(arquivo, botao);
+            else if (botao != null) ouvinte.botaoAdicionado(arquivo, botao);
+            else if (existia) ouvinte.botaoRemovido(arquivo);
+        }
+    }
+
+    /**
+     * Compara dois estados, que podem ser nulos.
+     * @param a Primeiro estado.
+     * @param b Segundo estado.
+     * @return <b>true</b> se os estados forem iguais.
+     */
+    private static boolean igual(Estado a, Estado b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+}
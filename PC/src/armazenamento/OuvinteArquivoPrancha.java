@@ -0,0 +1,53 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.IOException;
+
+/**
+ * Interface para objetos ouvintes das leituras e gravações de arquivos de prancha feitas em segundo plano
+ * por {@link ArquivoPrancha}. Os eventos são disparados a partir da thread da operação.
+ * @author Felipe Michels Fontoura
+ */
+public interface OuvinteArquivoPrancha {
+    /**
+     * Evento disparado quando um arquivo de prancha foi lido.
+     * @param botoes Botões lidos, na ordem da prancha.
+     */
+    public void leituraConcluida(Botao[] botoes);
+
+    /**
+     * Evento disparado quando um arquivo de prancha foi gravado.
+     */
+    public void gravacaoConcluida();
+
+    /**
+     * Evento disparado quando a leitura ou a gravação falhou.
+     * @param erro Erro ocorrido.
+     */
+    public void operacaoFalhou(IOException erro);
+}
@@ -0,0 +1,63 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import java.io.File;
+
+/**
+ * Interface para objetos ouvintes de eventos de uma importação de arquivos de áudio em lote. Os eventos
+ * são disparados pela thread da importação, e não pela thread de eventos da interface gráfica.
+ * @author Felipe Michels Fontoura
+ */
+public interface OuvinteImportacao {
+    /**
+     * Evento disparado quando um arquivo foi importado.
+     * @param arquivo Arquivo de áudio importado.
+     * @param botao Botão criado a partir do arquivo.
+     */
+    public void botaoImportado(File arquivo, Botao botao);
+
+    /**
+     * Evento disparado quando não foi possível importar um arquivo.
+     * @param arquivo Arquivo de áudio.
+     * @param erro Erro ocorrido.
+     */
+    public void importacaoFalhou(File arquivo, Exception erro);
+
+    /**
+     * Evento disparado quando mais um arquivo foi processado (importado ou não).
+     * @param processados Número de arquivos processados até o momento.
+     * @param total Número total de arquivos.
+     */
+    public void importacaoAvancou(int processados, int total);
+
+    /**
+     * Evento disparado quando a importação terminou. É o último evento disparado.
+     * @param cancelada Se a importação foi cancelada antes de processar todos os arquivos.
+     */
+    public void importacaoTerminou(boolean cancelada);
+}
@@ -0,0 +1,538 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import auxiliar.Auxiliar;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Pacote de botões: uma biblioteca inteira guardada num único arquivo, acessado por mapeamento em memória.
+ *
+ * O formato do pacote é:
+ * <ul>
+ * <li>cabeçalho "FPB1.0\0";</li>
+ * <li>posição da tabela de botões (long);</li>
+ * <li>área de dados, com as amostras (sinalizadas) dos sons, umas após as outras;</li>
+ * <li>tabela de botões: número de botões (int); para cada botão, nome do botão (UTF), nome do som (UTF),
+ * ícone (long), posição das amostras (long) e número de amostras (int); e o CRC32 da tabela (int).</li>
+ * </ul>
+ *
+ * As alterações são sempre acrescentadas ao final do arquivo: as amostras novas e, depois delas, uma nova
+ * tabela; só então a posição da tabela no cabeçalho é atualizada. Amostras e tabelas antigas passam a ser
+ * espaço desperdiçado, que é recuperado pela compactação.
+ *
+ * O pacote é um formato opcional, para levar uma biblioteca de uma vez (ver {@link #importarPasta(File)} e
+ * {@link #exportarPasta(File)}); a biblioteca em uso continua sendo a pasta de arquivos de botão avulsos.
+ * @author Felipe Michels Fontoura
+ */
+public class PacoteBotoes implements ConstantesArmazenamento {
+    /**
+     * Cabeçalho do arquivo de pacote.
+     */
+    private static final byte[] VERSAO_1 = new byte[] { 'F', 'P', 'B', '1', '.', '0', 0 };
+
+    /**
+     * Posição, no arquivo, da posição da tabela de botões.
+     */
+    private static final int POSICAO_PONTEIRO_TABELA = VERSAO_1.length;
+
+    /**
+     * Posição, no arquivo, do início da área de dados.
+     */
+    private static final int POSICAO_DADOS = POSICAO_PONTEIRO_TABELA + 8;
+
+    /**
+     * Entrada da tabela de botões.
+     */
+    private static class Entrada {
+        String nome_botao;
+        String nome_som;
+        long icone;
+        long posicao;
+        int tamanho;
+    }
+
+    /**
+     * Arquivo do pacote.
+     */
+    private File origem;
+
+    /**
+     * Arquivo aberto para leitura e escrita.
+     */
+    private RandomAccessFile arquivo;
+
+    /**
+     * Mapeamento do arquivo em memória (apenas leitura).
+     */
+    private MappedByteBuffer mapa;
+
+    /**
+     * Todos os mapeamentos feitos desde a abertura do arquivo (cada escrita mapeia o arquivo de novo), a
+     * desfazer quando ele for fechado.
+     */
+    private List<MappedByteBuffer> mapas = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Tabela de botões do pacote.
+     */
+    private List<Entrada> entradas;
+
+    /**
+     * Posição da tabela atual no arquivo.
+     */
+    private long posicao_tabela;
+
+    /**
+     * Abre um pacote de botões, criando-o vazio se ele não existir.
+     * @param origem Arquivo do pacote.
+     * @throws IOException Caso o arquivo não possa ser aberto ou não seja um pacote válido.
+     */
+    public PacoteBotoes(File origem) throws IOException {
+        this.origem = origem;
+        abrir();
+    }
+
+    /**
+     * Abre o arquivo do pacote e lê sua tabela.
+     * @throws IOException Caso o arquivo não possa ser aberto ou não seja um pacote válido.
+     */
+    private void abrir() throws IOException {
+        // termina uma compactação interrompida por uma queda.
+        Auxiliar.recuperarSubstituicao(obterTemporario(), origem);
+
+        arquivo = new RandomAccessFile(origem, "rw");
+        try {
+            entradas = new ArrayList<Entrada>();
+            if (arquivo.length() == 0) {
+                // pacote novo: escreve o cabeçalho e uma tabela vazia.
+                arquivo.write(VERSAO_1);
+                arquivo.writeLong(0);
+                gravarTabela();
+                return;
+            }
+
+            // verifica o cabeçalho.
+            byte[] cabecalho = new byte[VERSAO_1.length];
+            arquivo.readFully(cabecalho);
+            if (! Arrays.equals(cabecalho, VERSAO_1)) throw new IOException("Formato de pacote de botões desconhecido.");
+            posicao_tabela = arquivo.readLong();
+            mapear();
+            lerTabela();
+        } catch (IOException ioe) {
+            fechar();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Obtém o arquivo temporário onde o pacote compactado é escrito.
+     * @return Arquivo temporário.
+     */
+    private File obterTemporario() {
+        return new File(origem.getPath() + ".tmp");
+    }
+
+    /**
+     * Mapeia o arquivo inteiro em memória.
+     * @throws IOException Caso o mapeamento falhe.
+     */
+    private void mapear() throws IOException {
+        FileChannel canal = arquivo.getChannel();
+        mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        mapas.add(mapa);
+    }
+
+    /**
+     * Desfaz um mapeamento em memória sem esperar pelo coletor de lixo; no Windows, um arquivo mapeado não
+     * pode ser renomeado nem apagado. Se a máquina virtual não permitir, o mapeamento fica para o coletor
+     * de lixo.
+     * @param mapeamento Mapeamento a desfazer. Não pode mais ser usado, nem nenhuma visão dele.
+     */
+    private static void desmapear(MappedByteBuffer mapeamento) {
+        try {
+            // Java 9 em diante.
+            Class<?> classe = Class.forName("sun.misc.Unsafe");
+            Field instancia = classe.getDeclaredField("theUnsafe");
+            instancia.setAccessible(true);
+            classe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instancia.get(null), mapeamento);
+            return;
+        } catch (Exception e) {}
+        try {
+            // Java 8 e anteriores.
+            Method obter_limpador = mapeamento.getClass().getMethod("cleaner");
+            obter_limpador.setAccessible(true);
+            Object limpador = obter_limpador.invoke(mapeamento);
+            if (limpador != null) limpador.getClass().getMethod("clean").invoke(limpador);
+        } catch (Exception e) {
+            System.gc();
+        }
+    }
+
+    /**
+     * Lê a tabela de botões a partir do mapeamento.
+     * @throws IOException Caso a tabela esteja corrompida.
+     */
+    private void lerTabela() throws IOException {
+        if (posicao_tabela < POSICAO_DADOS || posicao_tabela + 8 > mapa.capacity())
+            throw new IOException("Tabela do pacote de botões fora do arquivo.");
+
+        // obtém um fluxo sobre a tabela mapeada, sem copiá-la.
+        ByteBuffer tabela = mapa.duplicate();
+        tabela.position((int) posicao_tabela);
+        DataInputStream fluxo = new DataInputStream(new FluxoMapeado(tabela));
+
+        int contagem = fluxo.readInt();
+        if (contagem < 0) throw new IOException("Tabela do pacote de botões corrompida.");
+        List<Entrada> lidas = new ArrayList<Entrada>(contagem);
+        for (int i = 0; i < contagem; i ++) {
+            Entrada entrada = new Entrada();
+            entrada.nome_botao = fluxo.readUTF();
+            entrada.nome_som = fluxo.readUTF();
+            entrada.icone = fluxo.readLong();
+            entrada.posicao = fluxo.readLong();
+            entrada.tamanho = fluxo.readInt();
+            if (entrada.posicao < POSICAO_DADOS || entrada.tamanho < 0 || entrada.posicao + entrada.tamanho > posicao_tabela)
+                throw new IOException("Entrada do pacote de botões fora da área de dados.");
+            lidas.add(entrada);
+        }
+
+        // verifica o CRC da tabela.
+        int fim = tabela.position();
+        CRC32 crc = new CRC32();
+        crc.update(copiarTrecho(posicao_tabela, fim - (int) posicao_tabela));
+        if (fluxo.readInt() != (int) crc.getValue()) throw new IOException("CRC da tabela do pacote de botões não confere.");
+        entradas = lidas;
+    }
+
+    /**
+     * Copia um trecho do mapeamento para um vetor.
+     * @param posicao Posição inicial.
+     * @param tamanho Número de bytes.
+     * @return Vetor com os bytes copiados.
+     */
+    private byte[] copiarTrecho(long posicao, int tamanho) {
+        ByteBuffer trecho = mapa.duplicate();
+        trecho.position((int) posicao);
+        byte[] dados = new byte[tamanho];
+        trecho.get(dados);
+        return dados;
+    }
+
+    /**
+     * Acrescenta uma nova tabela ao final do arquivo, atualiza a posição da tabela no cabeçalho e mapeia
+     * novamente o arquivo.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    private void gravarTabela() throws IOException {
+        // monta a tabela.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream fluxo = new DataOutputStream(bytes);
+        fluxo.writeInt(entradas.size());
+        for (Entrada entrada : entradas) {
+            fluxo.writeUTF(entrada.nome_botao);
+            fluxo.writeUTF(entrada.nome_som);
+            fluxo.writeLong(entrada.icone);
+            fluxo.writeLong(entrada.posicao);
+            fluxo.writeInt(entrada.tamanho);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        fluxo.writeInt((int) crc.getValue());
+
+        // acrescenta a tabela ao final do arquivo e só então aponta o cabeçalho para ela.
+        long posicao = arquivo.length();
+        arquivo.seek(posicao);
+        arquivo.write(bytes.toByteArray());
+        arquivo.seek(POSICAO_PONTEIRO_TABELA);
+        arquivo.writeLong(posicao);
+        posicao_tabela = posicao;
+        mapear();
+    }
+
+    /**
+     * Acrescenta as amostras de um botão ao final do arquivo, criando sua entrada na tabela (que não é
+     * gravada).
+     * @param botao Botão.
+     * @return Entrada criada.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    private Entrada acrescentar(Botao botao) throws IOException {
+        Som som = botao.obterSom();
+        byte[] amostras = new byte[som.contagemAmostras()];
+        som.extrairAmostras(amostras, true);
+
+        Entrada entrada = new Entrada();
+        entrada.nome_botao = botao.obterNomeBotao();
+        entrada.nome_som = botao.obterNomeSom();
+        entrada.icone = botao.obterIcone().obterGrade();
+        entrada.posicao = arquivo.length();
+        entrada.tamanho = amostras.length;
+        arquivo.seek(entrada.posicao);
+        arquivo.write(amostras);
+        return entrada;
+    }
+
+    /**
+     * Obtém o número de botões do pacote.
+     * @return Número de botões.
+     */
+    public synchronized int contagemBotoes() {
+        return entradas.size();
+    }
+
+    /**
+     * Obtém o nome de um botão do pacote.
+     * @param indice Índice do botão.
+     * @return Nome do botão.
+     */
+    public synchronized String obterNomeBotao(int indice) {
+        return entradas.get(indice).nome_botao;
+    }
+
+    /**
+     * Obtém o ícone de um botão do pacote.
+     * @param indice Índice do botão.
+     * @return Ícone do botão.
+     */
+    public synchronized Icone obterIcone(int indice) {
+        return new Icone(entradas.get(indice).icone);
+    }
+
+    /**
+     * Obtém as amostras (sinalizadas) do som de um botão diretamente do mapeamento, sem copiá-las. O
+     * trecho retornado é apenas de leitura, e não pode ser usado depois que o pacote for fechado ou
+     * compactado, pois o mapeamento é desfeito.
+     * @param indice Índice do botão.
+     * @return Trecho do mapeamento com as amostras.
+     */
+    public synchronized ByteBuffer obterAmostras(int indice) {
+        Entrada entrada = entradas.get(indice);
+        ByteBuffer trecho = mapa.duplicate();
+        trecho.position((int) entrada.posicao);
+        trecho.limit((int) entrada.posicao + entrada.tamanho);
+        return trecho.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Lê um botão do pacote. As amostras do som são copiadas do mapeamento de uma só vez.
+     * @param indice Índice do botão.
+     * @return Botão lido.
+     */
+    public synchronized Botao lerBotao(int indice) {
+        Entrada entrada = entradas.get(indice);
+        byte[] amostras = new byte[entrada.tamanho];
+        obterAmostras(indice).get(amostras);
+        Som som = RepositorioSons.internar(Som.compartilhar(amostras, 0, amostras.length));
+        return new Botao(entrada.nome_botao, new Icone(entrada.icone), entrada.nome_som, som);
+    }
+
+    /**
+     * Adiciona um botão ao final do pacote.
+     * @param botao Botão a adicionar.
+     * @return Índice do botão adicionado.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public synchronized int adicionarBotao(Botao botao) throws IOException {
+        entradas.add(acrescentar(botao));
+        gravarTabela();
+        return entradas.size() - 1;
+    }
+
+    /**
+     * Substitui um botão do pacote. As amostras antigas passam a ser espaço desperdiçado.
+     * @param indice Índice do botão.
+     * @param botao Novo botão.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public synchronized void substituirBotao(int indice, Botao botao) throws IOException {
+        entradas.get(indice); // verifica o índice antes de escrever.
+        entradas.set(indice, acrescentar(botao));
+        gravarTabela();
+    }
+
+    /**
+     * Remove um botão do pacote. As amostras dele passam a ser espaço desperdiçado.
+     * @param indice Índice do botão.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public synchronized void removerBotao(int indice) throws IOException {
+        entradas.remove(indice);
+        gravarTabela();
+    }
+
+    /**
+     * Obtém o espaço do arquivo que não é mais usado por nenhum botão.
+     * @return Número de bytes desperdiçados.
+     */
+    public synchronized long obterEspacoDesperdicado() {
+        long usado = mapa.capacity() - posicao_tabela + POSICAO_DADOS;
+        for (Entrada entrada : entradas) usado += entrada.tamanho;
+        return mapa.capacity() - usado;
+    }
+
+    /**
+     * Compacta o pacote, reescrevendo apenas os botões existentes num arquivo temporário, que então
+     * substitui o arquivo do pacote. Os mapeamentos do pacote são desfeitos antes da troca; os trechos
+     * obtidos por {@link #obterAmostras(int)} deixam de valer.
+     * @throws IOException Caso haja problema na escrita.
+     */
+    public synchronized void compactar() throws IOException {
+        // escreve o pacote compactado.
+        File temporario = obterTemporario();
+        temporario.delete();
+        PacoteBotoes compactado = new PacoteBotoes(temporario);
+        try {
+            for (int i = 0; i < entradas.size(); i ++) compactado.entradas.add(compactado.acrescentar(lerBotao(i)));
+            compactado.gravarTabela();
+        } catch (IOException ioe) {
+            compactado.fechar();
+            temporario.delete();
+            throw ioe;
+        }
+        compactado.fechar();
+
+        // substitui o arquivo do pacote, já sem nenhum mapeamento dele, e o abre de novo.
+        fechar();
+        try {
+            Auxiliar.substituirArquivo(temporario, origem);
+        } catch (IOException ioe) {
+            temporario.delete();
+            abrir();
+            throw ioe;
+        }
+        abrir();
+    }
+
+    /**
+     * Importa para o pacote todos os arquivos de botão de uma pasta. Arquivos ilegíveis são ignorados.
+     * @param pasta_botoes Pasta de botões.
+     * @return Número de botões importados.
+     * @throws IOException Caso haja problema na escrita do pacote.
+     */
+    public synchronized int importarPasta(File pasta_botoes) throws IOException {
+        File[] arquivos = pasta_botoes.listFiles(new FiltroFormato(extensao_botao));
+        if (arquivos == null) return 0;
+        Arrays.sort(arquivos);
+
+        // acrescenta os botões e grava a tabela uma única vez, no final.
+        int importados = 0;
+        for (File arquivo : arquivos) {
+            ArquivoBotao arquivo_botao = null;
+            Botao botao;
+            try {
+                arquivo_botao = new ArquivoBotao(arquivo);
+                botao = arquivo_botao.lerBotao();
+            } catch (IOException ioe) {
+                continue;
+            } finally {
+                if (arquivo_botao != null) arquivo_botao.fechar();
+            }
+            entradas.add(acrescentar(botao));
+            importados ++;
+        }
+        if (importados > 0) gravarTabela();
+        return importados;
+    }
+
+    /**
+     * Exporta todos os botões do pacote como arquivos de botão avulsos numa pasta.
+     * @param pasta_botoes Pasta de botões.
+     * @return Número de botões exportados.
+     * @throws IOException Caso haja problema na escrita dos arquivos.
+     */
+    public synchronized int exportarPasta(File pasta_botoes) throws IOException {
+        long numero = System.currentTimeMillis();
+        for (int i = 0; i < entradas.size(); i ++) {
+            // procura um nome de arquivo livre.
+            File arquivo;
+            do {
+                arquivo = new File(pasta_botoes, "btn_" + Long.toHexString(numero) + "." + extensao_botao);
+                numero ++;
+            } while (arquivo.exists());
+
+            // escreve o botão num arquivo temporário, para que a pasta nunca tenha um botão pela metade.
+            File temporario = new File(arquivo.getPath() + ".tmp");
+            OutputStream fluxo = new BufferedOutputStream(new FileOutputStream(temporario));
+            try {
+                lerBotao(i).escreverBotao(fluxo);
+            } catch (IOException ioe) {
+                fluxo.close();
+                temporario.delete();
+                throw ioe;
+            }
+            fluxo.close();
+            Auxiliar.substituirArquivo(temporario, arquivo);
+        }
+        return entradas.size();
+    }
+
+    /**
+     * Fecha o pacote, desfazendo todos os seus mapeamentos. Os trechos obtidos por
+     * {@link #obterAmostras(int)} deixam de valer.
+     */
+    public synchronized void fechar() {
+        mapa = null;
+        for (MappedByteBuffer mapeamento : mapas) desmapear(mapeamento);
+        mapas.clear();
+        try {
+            arquivo.close();
+        } catch (IOException ioe) {}
+    }
+
+    /**
+     * Fluxo de entrada sobre um trecho mapeado em memória.
+     */
+    private static class FluxoMapeado extends InputStream {
+        private ByteBuffer buffer;
+
+        FluxoMapeado(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override public int read(byte[] destino, int inicio, int tamanho) {
+            if (! buffer.hasRemaining()) return -1;
+            tamanho = Math.min(tamanho, buffer.remaining());
+            buffer.get(destino, inicio, tamanho);
+            return tamanho;
+        }
+    }
+}
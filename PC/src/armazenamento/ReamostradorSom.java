@@ -0,0 +1,290 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+/**
+ * Reamostrador de áudio por filtro FIR polifásico. A razão entre as taxas de saída e de entrada é reduzida
+ * a uma fração L/M; o filtro (um sinc janelado, que também serve de filtro anti-aliasing) é dividido em L
+ * fases, e cada amostra de saída é o produto escalar de uma fase com a janela de entrada correspondente.
+ * As amostras de entrada são recebidas em blocos, de modo que o áudio não precisa estar inteiro na memória.
+ * @author Felipe Michels Fontoura
+ */
+final class ReamostradorSom {
+    /**
+     * Número de cruzamentos do zero do sinc de cada lado do filtro.
+     */
+    private static final int CRUZAMENTOS_ZERO = 8;
+
+    /**
+     * Fração da menor frequência de Nyquist usada como frequência de corte.
+     */
+    private static final double FAIXA_PASSANTE = 0.9;
+
+    /**
+     * Número máximo de fases guardadas. Se a razão entre as taxas tiver um denominador maior, a fase mais
+     * próxima é usada.
+     */
+    private static final int MAXIMO_FASES = 1024;
+
+    /**
+     * Fator de interpolação (L).
+     */
+    private final int interpolacao;
+
+    /**
+     * Fator de decimação (M).
+     */
+    private final int decimacao;
+
+    /**
+     * Número de fases guardadas.
+     */
+    private final int fases;
+
+    /**
+     * Número de coeficientes de cada fase.
+     */
+    private final int coeficientes_fase;
+
+    /**
+     * Coeficientes das fases, uma após a outra.
+     */
+    private final float[] coeficientes;
+
+    /**
+     * Janela das amostras de entrada ainda necessárias.
+     */
+    private float[] janela;
+
+    /**
+     * Número de amostras na janela.
+     */
+    private int tamanho_janela;
+
+    /**
+     * Posição, na janela, da amostra de entrada imediatamente anterior à próxima amostra de saída.
+     */
+    private int posicao;
+
+    /**
+     * Fase da próxima amostra de saída (de 0 a L - 1).
+     */
+    private int fase;
+
+    /**
+     * Total de amostras de entrada recebidas.
+     */
+    private long total_entrada;
+
+    /**
+     * Total de amostras de saída geradas.
+     */
+    private long total_saida;
+
+    /**
+     * Cria um reamostrador.
+     * @param taxa_entrada Taxa de amostragem da entrada, em Hz.
+     * @param taxa_saida Taxa de amostragem da saída, em Hz.
+     */
+    ReamostradorSom(int taxa_entrada, int taxa_saida) {
+        // reduz a razão entre as taxas.
+        int mdc = mdc(taxa_entrada, taxa_saida);
+        interpolacao = taxa_saida / mdc;
+        decimacao = taxa_entrada / mdc;
+        fases = Math.min(interpolacao, MAXIMO_FASES);
+
+        // determina a frequência de corte (relativa à taxa de entrada) e o tamanho do filtro.
+        double corte = FAIXA_PASSANTE * Math.min(1.0, (double) taxa_saida / taxa_entrada);
+        int meio = (int) Math.ceil(CRUZAMENTOS_ZERO / corte);
+        coeficientes_fase = 2 * meio;
+
+        // calcula os coeficientes de cada fase, normalizados para ganho unitário.
+        coeficientes = new float[fases * coeficientes_fase];
+        for (int f = 0; f < fases; f ++) {
+            double fracao = (double) f / fases;
+            double soma = 0;
+            for (int j = 0; j < coeficientes_fase; j ++) {
+                double distancia = fracao + meio - 1 - j;
+                double valor = corte * sinc(corte * distancia) * blackman(distancia / meio);
+                coeficientes[f * coeficientes_fase + j] = (float) valor;
+                soma += valor;
+            }
+            for (int j = 0; j < coeficientes_fase; j ++)
+                coeficientes[f * coeficientes_fase + j] /= soma;
+        }
+
+        // a janela começa com zeros antes da primeira amostra de entrada.
+        janela = new float[4096 + coeficientes_fase];
+        tamanho_janela = meio - 1;
+        posicao = meio - 1;
+        fase = 0;
+    }
+
+    /**
+     * Obtém o fator de interpolação (L): a cada M amostras de entrada, são geradas L amostras de saída.
+     * @return Fator de interpolação.
+     */
+    int obterInterpolacao() {
+        return interpolacao;
+    }
+
+    /**
+     * Obtém o fator de decimação (M): a cada M amostras de entrada, são geradas L amostras de saída.
+     * @return Fator de decimação.
+     */
+    int obterDecimacao() {
+        return decimacao;
+    }
+
+    /**
+     * Obtém o número de amostras de entrada anteriores a um instante que influenciam a amostra de saída
+     * desse instante.
+     * @return Alcance do filtro, em amostras de entrada.
+     */
+    int obterAlcance() {
+        return coeficientes_fase / 2;
+    }
+
+    /**
+     * Recebe um bloco de amostras de entrada e gera as amostras de saída possíveis.
+     * @param entrada Vetor com as amostras de entrada (entre -1 e 1).
+     * @param tamanho Número de amostras de entrada.
+     * @param saida Vetor de destino das amostras de saída (sinalizadas, de 8 bits).
+     * @param inicio Posição da primeira amostra de saída no vetor de destino.
+     * @param maximo Número máximo de amostras de saída a gerar.
+     * @return Número de amostras de saída geradas.
+     */
+    int processar(float[] entrada, int tamanho, byte[] saida, int inicio, int maximo) {
+        acrescentar(entrada, tamanho);
+        total_entrada += tamanho;
+        return gerar(saida, inicio, maximo, Long.MAX_VALUE);
+    }
+
+    /**
+     * Indica o fim da entrada, gerando as últimas amostras de saída.
+     * @param saida Vetor de destino das amostras de saída (sinalizadas, de 8 bits).
+     * @param inicio Posição da primeira amostra de saída no vetor de destino.
+     * @param maximo Número máximo de amostras de saída a gerar.
+     * @return Número de amostras de saída geradas.
+     */
+    int finalizar(byte[] saida, int inicio, int maximo) {
+        // completa a janela com zeros depois da última amostra de entrada.
+        acrescentar(new float[coeficientes_fase / 2], coeficientes_fase / 2);
+        long total = (total_entrada * interpolacao + decimacao - 1) / decimacao;
+        return gerar(saida, inicio, maximo, total);
+    }
+
+    /**
+     * Acrescenta amostras à janela, descartando as que não são mais necessárias.
+     * @param entrada Vetor com as amostras de entrada.
+     * @param tamanho Número de amostras.
+     */
+    private void acrescentar(float[] entrada, int tamanho) {
+        // descarta as amostras que ficaram para trás.
+        int descartar = posicao - (coeficientes_fase / 2 - 1);
+        if (descartar > 0) {
+            System.arraycopy(janela, descartar, janela, 0, tamanho_janela - descartar);
+            tamanho_janela -= descartar;
+            posicao -= descartar;
+        }
+
+        // aumenta a janela, se precisar.
+        if (tamanho_janela + tamanho > janela.length) {
+            float[] nova = new float[Math.max(janela.length * 2, tamanho_janela + tamanho)];
+            System.arraycopy(janela, 0, nova, 0, tamanho_janela);
+            janela = nova;
+        }
+        System.arraycopy(entrada, 0, janela, tamanho_janela, tamanho);
+        tamanho_janela += tamanho;
+    }
+
+    /**
+     * Gera amostras de saída enquanto houver amostras de entrada suficientes na janela.
+     * @param saida Vetor de destino das amostras de saída.
+     * @param inicio Posição da primeira amostra de saída no vetor de destino.
+     * @param maximo Número máximo de amostras de saída a gerar.
+     * @param total Número total de amostras de saída que podem ser geradas.
+     * @return Número de amostras de saída geradas.
+     */
+    private int gerar(byte[] saida, int inicio, int maximo, long total) {
+        final float[] janela = this.janela;
+        final float[] coeficientes = this.coeficientes;
+        final int n = coeficientes_fase;
+        final int meio = n / 2;
+        int gerados = 0;
+        while (gerados < maximo && total_saida < total && posicao + meio < tamanho_janela) {
+            // calcula o produto escalar da fase com a janela.
+            int base = posicao - meio + 1;
+            int deslocamento = (fases == interpolacao ? fase : (int) ((long) fase * fases / interpolacao)) * n;
+            float soma = 0;
+            for (int j = 0; j < n; j ++)
+                soma += janela[base + j] * coeficientes[deslocamento + j];
+
+            // converte a amostra para 8 bits.
+            int valor = Math.round(soma * 128f);
+            if (valor > 127) valor = 127;
+            else if (valor < -128) valor = -128;
+            saida[inicio + gerados] = (byte) valor;
+            gerados ++;
+            total_saida ++;
+
+            // avança para a próxima amostra de saída.
+            fase += decimacao;
+            posicao += fase / interpolacao;
+            fase %= interpolacao;
+        }
+        return gerados;
+    }
+
+    /**
+     * Calcula o seno cardinal normalizado.
+     */
+    private static double sinc(double x) {
+        if (x == 0) return 1.0;
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * Calcula a janela de Blackman, para x entre -1 e 1.
+     */
+    private static double blackman(double x) {
+        if (x <= -1.0 || x >= 1.0) return 0.0;
+        return 0.42 + 0.5 * Math.cos(Math.PI * x) + 0.08 * Math.cos(2 * Math.PI * x);
+    }
+
+    /**
+     * Calcula o máximo divisor comum de dois números positivos.
+     */
+    private static int mdc(int a, int b) {
+        while (b != 0) {
+            int resto = a % b;
+            a = b;
+            b = resto;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,563 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package armazenamento;
+
+import auxiliar.Auxiliar;
+
+import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repositório de sons endereçado por conteúdo. Cada som é guardado uma única vez, num arquivo cujo nome é
+ * o resumo SHA-256 de suas amostras (a chave do som), com a codificação sem perdas; os botões guardam
+ * apenas essa chave. Além disso, os sons lidos são internados: sons com as mesmas amostras compartilham
+ * um único descritor na memória.
+ *
+ * Os sons que não são mais referenciados são apagados por {@link #removerNaoReferenciados(File)}. Além dos
+ * arquivos de botão, contam como referências as pranchas gravadas sem cópias dos sons (que ficam
+ * registradas no repositório, com as chaves dos sons que usam), os sons guardados durante a execução e os
+ * sons ainda na memória. Uma prancha registrada que não é encontrada continua protegendo seus sons até
+ * faltar em várias limpezas seguidas (ver {@link #MINIMO_FALTAS} e {@link #PRAZO_FALTAS}).
+ * @author Felipe Michels Fontoura
+ */
+public class RepositorioSons implements ConstantesArmazenamento {
+    /**
+     * Nome da pasta do repositório dentro da pasta de botões.
+     */
+    public static final String NOME_PASTA = "sons";
+
+    /**
+     * Algoritmo de resumo usado nas chaves.
+     */
+    private static final String ALGORITMO = "SHA-256";
+
+    /**
+     * Número de dígitos hexadecimais de uma chave.
+     */
+    private static final int TAMANHO_CHAVE = 64;
+
+    /**
+     * Nome do arquivo, dentro da pasta do repositório, com os caminhos das pranchas que referenciam sons.
+     */
+    private static final String NOME_REGISTRO_PRANCHAS = "pranchas.txt";
+
+    /**
+     * Número de limpezas seguidas em que uma prancha registrada precisa faltar para sair do registro.
+     */
+    private static final int MINIMO_FALTAS = 5;
+
+    /**
+     * Tempo mínimo, desde a primeira falta, para que uma prancha registrada saia do registro.
+     */
+    private static final long PRAZO_FALTAS = 30L * 24 * 60 * 60 * 1000; // 30 dias
+
+    /**
+     * Prancha registrada: uma linha do registro de pranchas, no formato "faltas, início das faltas, chaves
+     * separadas por vírgulas, caminho", separados por tabulações. Linhas só com o caminho são de registros
+     * antigos, sem as chaves.
+     */
+    private static final class PranchaRegistrada {
+        /**
+         * Caminho da prancha, relativo à pasta de botões quando possível.
+         */
+        private String caminho;
+
+        /**
+         * Chaves dos sons que a prancha referencia, ou nulo se não forem conhecidas.
+         */
+        private Set<String> chaves;
+
+        /**
+         * Número de limpezas seguidas em que a prancha não foi encontrada.
+         */
+        private int faltas;
+
+        /**
+         * Momento da primeira dessas faltas (em milissegundos), ou zero.
+         */
+        private long desde;
+    }
+
+    /**
+     * Referência fraca a um som internado, que guarda a chave para que a entrada possa ser removida
+     * quando o som for liberado.
+     */
+    private static final class ReferenciaSom extends WeakReference<Som> {
+        private final String chave;
+
+        ReferenciaSom(String chave, Som som) {
+            super(som, liberados);
+            this.chave = chave;
+        }
+    }
+
+    /**
+     * Sons internados, pela chave. As referências são fracas, para que sons não usados possam ser liberados.
+     */
+    private static final Map<String, ReferenciaSom> internados = new HashMap<String, ReferenciaSom>();
+
+    /**
+     * Fila das referências dos sons internados que já foram liberados.
+     */
+    private static final ReferenceQueue<Som> liberados = new ReferenceQueue<Som>();
+
+    /**
+     * Pasta onde os sons são guardados.
+     */
+    private File pasta;
+
+    /**
+     * Chaves dos sons guardados desde que o repositório foi criado. Esses sons nunca são apagados, pois
+     * podem estar sendo referenciados por arquivos ainda não gravados.
+     */
+    private final Set<String> guardados = new HashSet<String>();
+
+    /**
+     * Cria um repositório de sons numa pasta. A pasta só é criada quando o primeiro som for guardado.
+     * @param pasta Pasta do repositório.
+     */
+    public RepositorioSons(File pasta) {
+        this.pasta = pasta;
+    }
+
+    /**
+     * Obtém o repositório de sons associado a uma pasta de botões.
+     * @param pasta_botoes Pasta de botões.
+     * @return Repositório de sons da pasta.
+     */
+    public static RepositorioSons daPastaBotoes(File pasta_botoes) {
+        return new RepositorioSons(new File(pasta_botoes, NOME_PASTA));
+    }
+
+    /**
+     * Calcula a chave de um som: o resumo SHA-256 de suas amostras sinalizadas, em hexadecimal.
+     * @param som Som.
+     * @return Chave do som.
+     */
+    public static String calcularChave(Som som) {
+        // o som é imutável, então a chave só precisa ser calculada uma vez.
+        if (som.chave != null) return som.chave;
+
+        MessageDigest resumo;
+        try {
+            resumo = MessageDigest.getInstance(ALGORITMO);
+        } catch (NoSuchAlgorithmException nsae) {
+            // todas as máquinas virtuais Java são obrigadas a implementar SHA-256.
+            throw new IllegalStateException(nsae);
+        }
+        som.atualizarResumo(resumo);
+        byte[] bytes = resumo.digest();
+        StringBuilder chave = new StringBuilder(TAMANHO_CHAVE);
+        for (byte b : bytes) {
+            chave.append(Character.forDigit((b >> 4) & 0xF, 16));
+            chave.append(Character.forDigit(b & 0xF, 16));
+        }
+        som.chave = chave.toString();
+        return som.chave;
+    }
+
+    /**
+     * Verifica se um texto é uma chave de som válida (o que também impede que ela aponte para fora da
+     * pasta do repositório).
+     * @param chave Texto a verificar.
+     * @return <b>true</b> se o texto for uma chave válida.
+     */
+    public static boolean chaveValida(String chave) {
+        if (chave == null || chave.length() != TAMANHO_CHAVE) return false;
+        for (int i = 0; i < TAMANHO_CHAVE; i ++)
+            if (Character.digit(chave.charAt(i), 16) < 0 || Character.isUpperCase(chave.charAt(i))) return false;
+        return true;
+    }
+
+    /**
+     * Obtém o descritor compartilhado de um som: se outro som com as mesmas amostras já estiver na
+     * memória, ele é retornado; caso contrário, o próprio som passa a ser o compartilhado.
+     * @param som Som.
+     * @return Descritor compartilhado.
+     */
+    public static Som internar(Som som) {
+        return internar(calcularChave(som), som);
+    }
+
+    /**
+     * Obtém o descritor compartilhado de um som cuja chave já é conhecida.
+     * @param chave Chave do som.
+     * @param som Som.
+     * @return Descritor compartilhado.
+     */
+    private static Som internar(String chave, Som som) {
+        synchronized (internados) {
+            removerLiberados();
+            WeakReference<Som> referencia = internados.get(chave);
+            Som existente = (referencia == null) ? null : referencia.get();
+            if (existente != null) return existente;
+            internados.put(chave, new ReferenciaSom(chave, som));
+            return som;
+        }
+    }
+
+    /**
+     * Remove do mapa dos sons internados as entradas dos sons já liberados. Deve ser chamado com o mapa
+     * bloqueado.
+     */
+    private static void removerLiberados() {
+        ReferenciaSom referencia;
+        while ((referencia = (ReferenciaSom) liberados.poll()) != null) {
+            // a entrada pode já ter sido substituída por outro som com a mesma chave.
+            if (internados.get(referencia.chave) == referencia) internados.remove(referencia.chave);
+        }
+    }
+
+    /**
+     * Obtém um som internado pela chave, se ele estiver na memória.
+     * @param chave Chave do som.
+     * @return Som, ou nulo se não estiver na memória.
+     */
+    private static Som procurarInternado(String chave) {
+        synchronized (internados) {
+            removerLiberados();
+            WeakReference<Som> referencia = internados.get(chave);
+            return (referencia == null) ? null : referencia.get();
+        }
+    }
+
+    /**
+     * Obtém o arquivo de um som do repositório.
+     * @param chave Chave do som.
+     * @return Arquivo do som.
+     */
+    private File arquivoSom(String chave) {
+        return new File(pasta, chave + "." + extensao_som);
+    }
+
+    /**
+     * Guarda um som no repositório, se ainda não houver um som com as mesmas amostras.
+     * @param som Som a guardar.
+     * @return Chave do som.
+     * @throws IOException Caso não seja possível escrever o som.
+     */
+    public String guardar(Som som) throws IOException {
+        String chave = calcularChave(som);
+        internar(chave, som);
+        synchronized (this) {
+            guardados.add(chave);
+        }
+        File arquivo = arquivoSom(chave);
+        if (arquivo.isFile()) return chave;
+
+        // escreve o som num arquivo temporário e o renomeia, para que um arquivo do repositório nunca
+        // fique incompleto. Se outra escrita do mesmo som terminar antes, basta descartar essa.
+        if (! pasta.isDirectory() && ! pasta.mkdirs() && ! pasta.isDirectory())
+            throw new IOException("Não foi possível criar o repositório de sons.");
+        File temporario = File.createTempFile(chave.substring(0, 8), ".tmp", pasta);
+        OutputStream fluxo = new BufferedOutputStream(new FileOutputStream(temporario));
+        try {
+            som.escreverSom(fluxo, Som.obterCodec(CodecSom.TAG_SEM_PERDAS));
+        } finally {
+            fluxo.close();
+        }
+        if (! temporario.renameTo(arquivo)) {
+            temporario.delete();
+            if (! arquivo.isFile()) throw new IOException("Não foi possível guardar o som " + chave + ".");
+        }
+        return chave;
+    }
+
+    /**
+     * Verifica se um som está no repositório (ou na memória).
+     * @param chave Chave do som.
+     * @return <b>true</b> se o som puder ser obtido com {@link #obter(String)}.
+     */
+    public boolean contem(String chave) {
+        if (! chaveValida(chave)) return false;
+        return procurarInternado(chave) != null || arquivoSom(chave).isFile();
+    }
+
+    /**
+     * Obtém um som do repositório. O som lido é verificado contra a chave.
+     * @param chave Chave do som.
+     * @return Som.
+     * @throws IOException Caso a chave seja inválida, o som não exista ou esteja corrompido.
+     */
+    public Som obter(String chave) throws IOException {
+        if (! chaveValida(chave)) throw new IOException("Chave de som inválida.");
+
+        // usa o som já internado, se houver.
+        Som som = procurarInternado(chave);
+        if (som != null) return som;
+
+        // lê o som do arquivo.
+        InputStream fluxo = new BufferedInputStream(new FileInputStream(arquivoSom(chave)));
+        try {
+            som = Som.lerSom(fluxo);
+        } finally {
+            fluxo.close();
+        }
+        if (! chave.equals(calcularChave(som))) throw new IOException("Som " + chave + " corrompido.");
+        return internar(chave, som);
+    }
+
+    /**
+     * Registra uma prancha que referencia sons do repositório sem trazer cópias deles. Os sons referenciados
+     * pelas pranchas registradas não são apagados, mesmo que a prancha não seja encontrada por algum tempo.
+     * @param prancha Arquivo da prancha.
+     * @param chaves Chaves dos sons que a prancha referencia.
+     * @throws IOException Caso não seja possível escrever o registro.
+     */
+    public synchronized void registrarPrancha(File prancha, Collection<String> chaves) throws IOException {
+        Map<String, PranchaRegistrada> pranchas = lerRegistroPranchas();
+        PranchaRegistrada registrada = new PranchaRegistrada();
+        registrada.caminho = relativizar(prancha);
+        registrada.chaves = new LinkedHashSet<String>(chaves);
+        pranchas.put(registrada.caminho, registrada);
+        escreverRegistroPranchas(pranchas);
+    }
+
+    /**
+     * Obtém a pasta de botões do repositório, em relação à qual são guardados os caminhos das pranchas.
+     * @return Pasta de botões.
+     */
+    private File obterPastaBotoes() {
+        return pasta.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * Obtém o caminho de uma prancha relativo à pasta de botões, para que o registro continue valendo se
+     * a pasta do programa for movida. Se a prancha estiver em outra raiz (outra unidade, no Windows), o
+     * caminho é absoluto.
+     * @param prancha Arquivo da prancha.
+     * @return Caminho da prancha, com "/" como separador.
+     */
+    private String relativizar(File prancha) {
+        List<String> partes_base, partes_prancha;
+        try {
+            partes_base = obterPartes(obterPastaBotoes().getCanonicalFile());
+            partes_prancha = obterPartes(prancha.getCanonicalFile());
+        } catch (IOException ioe) {
+            return prancha.getAbsolutePath();
+        }
+        if (! partes_base.get(0).equals(partes_prancha.get(0))) return prancha.getAbsolutePath();
+
+        // sobe até a pasta em comum e desce até a prancha.
+        int comum = 1;
+        while (comum < partes_base.size() && comum < partes_prancha.size() && partes_base.get(comum).equals(partes_prancha.get(comum)))
+            comum ++;
+        StringBuilder caminho = new StringBuilder();
+        for (int i = comum; i < partes_base.size(); i ++) caminho.append("../");
+        for (int i = comum; i < partes_prancha.size(); i ++) {
+            if (i > comum) caminho.append('/');
+            caminho.append(partes_prancha.get(i));
+        }
+        return caminho.toString();
+    }
+
+    /**
+     * Obtém as partes de um caminho absoluto: a raiz e os nomes das pastas e do arquivo.
+     * @param arquivo Arquivo, com caminho absoluto.
+     * @return Partes do caminho, a começar pela raiz.
+     */
+    private static List<String> obterPartes(File arquivo) {
+        LinkedList<String> partes = new LinkedList<String>();
+        for (File parte = arquivo; parte != null; parte = parte.getParentFile())
+            partes.addFirst(parte.getParentFile() == null ? parte.getPath() : parte.getName());
+        return partes;
+    }
+
+    /**
+     * Obtém o arquivo de uma prancha a partir do caminho guardado no registro.
+     * @param caminho Caminho da prancha, relativo à pasta de botões ou absoluto.
+     * @return Arquivo da prancha.
+     */
+    private File resolver(String caminho) {
+        File prancha = new File(caminho);
+        return prancha.isAbsolute() ? prancha : new File(obterPastaBotoes(), caminho);
+    }
+
+    /**
+     * Lê as pranchas registradas.
+     * @return Pranchas registradas, pelo caminho, na ordem do registro.
+     * @throws IOException Caso haja problema na leitura do registro.
+     */
+    private Map<String, PranchaRegistrada> lerRegistroPranchas() throws IOException {
+        Map<String, PranchaRegistrada> pranchas = new LinkedHashMap<String, PranchaRegistrada>();
+        File registro = new File(pasta, NOME_REGISTRO_PRANCHAS);
+        Auxiliar.recuperarSubstituicao(new File(pasta, NOME_REGISTRO_PRANCHAS + ".tmp"), registro);
+        if (! registro.isFile()) return pranchas;
+        BufferedReader leitor = new BufferedReader(new InputStreamReader(new FileInputStream(registro), "UTF-8"));
+        try {
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                if (linha.length() == 0) continue;
+                PranchaRegistrada registrada = new PranchaRegistrada();
+                String[] campos = linha.split("\t", 4);
+                try {
+                    if (campos.length != 4) throw new NumberFormatException();
+                    registrada.faltas = Integer.parseInt(campos[0]);
+                    registrada.desde = Long.parseLong(campos[1]);
+                    registrada.chaves = new LinkedHashSet<String>();
+                    for (String chave : campos[2].split(","))
+                        if (chave.length() > 0) registrada.chaves.add(chave);
+                    registrada.caminho = campos[3];
+                } catch (NumberFormatException nfe) {
+                    // linha de um registro antigo: só o caminho, sem as chaves.
+                    registrada = new PranchaRegistrada();
+                    registrada.caminho = linha;
+                }
+                pranchas.put(registrada.caminho, registrada);
+            }
+        } finally {
+            leitor.close();
+        }
+        return pranchas;
+    }
+
+    /**
+     * Escreve as pranchas registradas, substituindo o registro anterior.
+     * @param pranchas Pranchas registradas.
+     * @throws IOException Caso haja problema na escrita do registro.
+     */
+    private void escreverRegistroPranchas(Map<String, PranchaRegistrada> pranchas) throws IOException {
+        if (! pasta.isDirectory() && ! pasta.mkdirs() && ! pasta.isDirectory())
+            throw new IOException("Não foi possível criar o repositório de sons.");
+        File registro = new File(pasta, NOME_REGISTRO_PRANCHAS);
+        File temporario = new File(pasta, NOME_REGISTRO_PRANCHAS + ".tmp");
+        Writer escritor = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporario), "UTF-8"));
+        try {
+            for (PranchaRegistrada registrada : pranchas.values()) {
+                if (registrada.chaves == null) {
+                    escritor.write(registrada.caminho);
+                } else {
+                    escritor.write(registrada.faltas + "\t" + registrada.desde + "\t");
+                    boolean primeira = true;
+                    for (String chave : registrada.chaves) {
+                        if (! primeira) escritor.write(',');
+                        escritor.write(chave);
+                        primeira = false;
+                    }
+                    escritor.write("\t" + registrada.caminho);
+                }
+                escritor.write('\n');
+            }
+        } finally {
+            escritor.close();
+        }
+
+        // substitui o registro anterior, sem nunca deixá-lo faltar.
+        try {
+            Auxiliar.substituirArquivo(temporario, registro);
+        } catch (IOException ioe) {
+            temporario.delete();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Apaga os sons do repositório que não são referenciados por nenhum arquivo de botão de uma pasta nem
+     * por nenhuma prancha registrada. Sons guardados desde que o repositório foi criado e sons ainda na
+     * memória nunca são apagados. Se algum arquivo não puder ser lido, nada é apagado. Uma prancha
+     * registrada que não é encontrada (num pendrive desconectado, numa pasta de rede fora do ar) continua
+     * protegendo os sons que usava; ela só sai do registro depois de faltar em {@link #MINIMO_FALTAS}
+     * limpezas seguidas, ao longo de pelo menos {@link #PRAZO_FALTAS}.
+     * @param pasta_botoes Pasta de botões que usa esse repositório.
+     * @return Número de sons apagados.
+     */
+    public int removerNaoReferenciados(File pasta_botoes) {
+        File[] sons = pasta.listFiles(new FiltroFormato(extensao_som));
+        if (sons == null || sons.length == 0) return 0;
+
+        // obtém as chaves referenciadas pelos botões; se algum botão não puder ser lido, não apaga nada.
+        Set<String> referenciadas = new HashSet<String>();
+        File[] arquivos = pasta_botoes.listFiles(new FiltroFormato(extensao_botao));
+        if (arquivos == null) return 0;
+        for (File arquivo : arquivos) {
+            ArquivoBotao arquivo_botao = null;
+            try {
+                arquivo_botao = new ArquivoBotao(arquivo);
+                String chave = arquivo_botao.lerReferenciaSom();
+                if (chave != null) referenciadas.add(chave);
+            } catch (IOException ioe) {
+                return 0;
+            } finally {
+                if (arquivo_botao != null) arquivo_botao.fechar();
+            }
+        }
+
+        synchronized (this) {
+            // obtém as chaves referenciadas pelas pranchas registradas. As chaves das pranchas encontradas
+            // são lidas de novo; as das que faltam são as do registro.
+            boolean chaves_conhecidas = true;
+            try {
+                long agora = System.currentTimeMillis();
+                Map<String, PranchaRegistrada> mantidas = new LinkedHashMap<String, PranchaRegistrada>();
+                for (PranchaRegistrada registrada : lerRegistroPranchas().values()) {
+                    File prancha = resolver(registrada.caminho);
+                    if (prancha.exists()) {
+                        registrada.caminho = relativizar(prancha);
+                        registrada.chaves = new LinkedHashSet<String>(ArquivoPrancha.lerChavesReferenciadas(prancha));
+                        registrada.faltas = 0;
+                        registrada.desde = 0;
+                    } else {
+                        // só uma prancha que falta há bastante tempo é dada como apagada.
+                        if (registrada.faltas ++ == 0) registrada.desde = agora;
+                        if (registrada.faltas >= MINIMO_FALTAS && agora - registrada.desde >= PRAZO_FALTAS) continue;
+                        if (registrada.chaves == null) chaves_conhecidas = false;
+                    }
+                    if (registrada.chaves != null) referenciadas.addAll(registrada.chaves);
+                    mantidas.put(registrada.caminho, registrada);
+                }
+                escreverRegistroPranchas(mantidas);
+            } catch (IOException ioe) {
+                return 0;
+            }
+
+            // não se sabe quais sons usa uma prancha de um registro antigo que não foi encontrada.
+            if (! chaves_conhecidas) return 0;
+
+            // apaga os sons não referenciados.
+            int apagados = 0;
+            for (File som : sons) {
+                String nome = som.getName();
+                String chave = nome.substring(0, nome.length() - extensao_som.length() - 1);
+                if (referenciadas.contains(chave) || guardados.contains(chave) || procurarInternado(chave) != null) continue;
+                if (som.delete()) apagados ++;
+            }
+            return apagados;
+        }
+    }
+}
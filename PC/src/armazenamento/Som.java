@@ -30,6 +30,7 @@ import audio.*;
 import auxiliar.Auxiliar;
 
 import java.io.*;
+import java.security.MessageDigest;
 
 import javax.sound.sampled.*;
 
@@ -39,15 +40,49 @@ import javax.sound.sampled.*;
  */
 public class Som implements ConstantesArmazenamento {
     /**
-     * Amostras do som (sinalizadas).
+     * Amostras de um som vazio, compartilhadas por todos os descritores de som vazios.
      */
-    private byte[] amostras;
+    private static final byte[] AMOSTRAS_VAZIAS = Auxiliar.copiarTrecho(null, 0, SOM_AMOSTRAS, AMOSTRA_VAZIA);
+
+    /**
+     * Marca, no lugar do tamanho, de um som gravado com etiqueta de codificação.
+     */
+    private static final int MARCA_CODIFICADO = 0xFFFF;
+
+    /**
+     * Codificações conhecidas, indexadas pela etiqueta.
+     */
+    private static final CodecSom[] CODECS = new CodecSom[] {
+        new CodecPCM(), null, new CodecADPCM(), new CodecSemPerdas()
+    };
+
+    /**
+     * Vetor com as amostras do som (sinalizadas). Pode ser compartilhado com outros descritores de som,
+     * por isso nunca é alterado.
+     */
+    private final byte[] amostras;
+
+    /**
+     * Posição da primeira amostra desse som no vetor de amostras.
+     */
+    private final int inicio;
+
+    /**
+     * Número de amostras desse som.
+     */
+    private final int tamanho;
+
+    /**
+     * Chave do som no repositório de sons, calculada uma única vez, no primeiro uso (nula enquanto não
+     * for calculada). Ver {@link RepositorioSons#calcularChave(Som)}.
+     */
+    String chave;
 
     /**
      * Cria um descritor de som vazio.
      */
     public Som() {
-        this(null, 0, SOM_AMOSTRAS, true);
+        this(AMOSTRAS_VAZIAS, 0, SOM_AMOSTRAS);
     }
 
     /**
@@ -59,35 +94,75 @@ public class Som implements ConstantesArmazenamento {
     }
 
     /**
-     * Cria um descritor de som a partir de uma série de amostras.
+     * Cria um descritor de som a partir de uma série de amostras. As amostras são copiadas, e as
+     * posições fora do vetor de origem são completadas com silêncio.
      * @param amostras Amostras de som.
      * @param inicio Amostra inicial.
      * @param tamanho Número total de amostras.
      */
     public Som(byte[] amostras, int inicio, int tamanho, boolean sinalizado) {
         this.amostras = Auxiliar.copiarTrecho(amostras, inicio, tamanho, AMOSTRA_VAZIA);
+        this.inicio = 0;
+        this.tamanho = tamanho;
         if (!sinalizado)
-            for (int i = 0; i < amostras.length; i ++) {
-                amostras[i] = (byte) (0x80 ^ amostras[i]);
+            for (int i = 0; i < tamanho; i ++) {
+                this.amostras[i] = (byte) (0x80 ^ this.amostras[i]);
             }
     }
 
     /**
-     * Cria um descritor de som a partir de outro descritor de som existente.
+     * Cria um descritor de som a partir de outro descritor de som existente. As amostras são
+     * compartilhadas entre os dois descritores.
      * @param som Descritor de som a copiar.
      */
     public Som(Som som) {
-        this(som.amostras, 0, som.amostras.length, true);
+        this(som.amostras, som.inicio, som.tamanho);
     }
 
     /**
-     * Obtém um nvo descritor de som, relativo a um trecho do som original.
+     * Cria um descritor de som que usa diretamente um trecho de um vetor de amostras, sem copiá-lo.
+     * @param amostras Vetor de amostras (sinalizadas).
+     * @param inicio Posição da primeira amostra no vetor.
+     * @param tamanho Número total de amostras.
+     */
+    private Som(byte[] amostras, int inicio, int tamanho) {
+        this.amostras = amostras;
+        this.inicio = inicio;
+        this.tamanho = tamanho;
+    }
+
+    /**
+     * Cria um descritor de som sobre um trecho de um vetor de amostras sinalizadas, sem copiá-lo. O vetor
+     * passa a pertencer ao descritor de som, e não deve mais ser alterado por quem chamou esse método.
+     * @param amostras Vetor de amostras (sinalizadas).
+     * @param inicio Posição da primeira amostra no vetor.
+     * @param tamanho Número total de amostras.
+     * @return Descritor de som sobre o trecho do vetor.
+     */
+    public static Som compartilhar(byte[] amostras, int inicio, int tamanho) {
+        if (amostras == null || inicio < 0 || tamanho < 0 || inicio + tamanho > amostras.length)
+            return new Som(amostras, inicio, tamanho, true);
+        return new Som(amostras, inicio, tamanho);
+    }
+
+    /**
+     * Obtém um nvo descritor de som, relativo a um trecho do som original. Se o trecho estiver contido no
+     * som original, as amostras são compartilhadas; caso contrário, são copiadas e completadas com silêncio.
      * @param inicio Amostra inicial.
      * @param tamanho Número total de amostras.
      * @return Novo descritor de som, relativo a um trecho do som original.
      */
     public Som obterTrecho(int inicio, int tamanho) {
-        return new Som(amostras, inicio, tamanho, true);
+        if (inicio >= 0 && tamanho >= 0 && inicio + tamanho <= this.tamanho)
+            return new Som(amostras, this.inicio + inicio, tamanho);
+
+        // o trecho sai do som original: copia a parte em comum e completa o resto com silêncio.
+        byte[] trecho = Auxiliar.copiarTrecho(null, 0, tamanho, AMOSTRA_VAZIA);
+        int primeira = Math.max(inicio, 0);
+        int ultima = Math.min(inicio + tamanho, this.tamanho);
+        if (ultima > primeira)
+            System.arraycopy(amostras, this.inicio + primeira, trecho, primeira - inicio, ultima - primeira);
+        return new Som(trecho, 0, tamanho);
     }
 
     /**
@@ -95,7 +170,15 @@ public class Som implements ConstantesArmazenamento {
      * @return Contagem de amostras desse descritor de som.
      */
     public int contagemAmostras() {
-        return amostras.length;
+        return tamanho;
+    }
+
+    /**
+     * Acumula as amostras (sinalizadas) desse descritor de som num resumo criptográfico, sem copiá-las.
+     * @param resumo Resumo a atualizar.
+     */
+    void atualizarResumo(MessageDigest resumo) {
+        resumo.update(amostras, inicio, tamanho);
     }
 
     /**
@@ -106,8 +189,8 @@ public class Som implements ConstantesArmazenamento {
         // define o formato de áudio.
         AudioFormat formato_audio = obterFormatoAudio();
 
-        // cria o fluxo de bytes.
-        ByteArrayInputStream fluxo_bytes = new ByteArrayInputStream(amostras);
+        // cria o fluxo de bytes (diretamente sobre o trecho do vetor de amostras).
+        ByteArrayInputStream fluxo_bytes = new ByteArrayInputStream(amostras, inicio, tamanho);
 
         // cria o fluxo de áudio.
         // lembrete: "frame" é uma amostra de cada canal; para o caso particular
@@ -115,7 +198,7 @@ public class Som implements ConstantesArmazenamento {
         AudioInputStream fluxo_audio = new AudioInputStream(
           /*   fluxo de bytes: */ fluxo_bytes,
           /* formato de áudio: */ formato_audio,
-          /* número de frames: */ amostras.length
+          /* número de frames: */ tamanho
         );
 
         // retorna o fluxo de áudio.
@@ -136,19 +219,43 @@ public class Som implements ConstantesArmazenamento {
      */
     public void extrairAmostras(byte[] destino, boolean sinalizado) {
         if (destino == null) return;
-        int l = amostras.length;
+        int l = tamanho;
         if (l > destino.length) l = destino.length;
         if (sinalizado) {
-            for (int i = 0; i < l; i ++)
-                destino[i] = amostras[i];
+            System.arraycopy(amostras, inicio, destino, 0, l);
         } else {
-            for (int i = 0; i < l; i ++)
-                destino[i] = (byte) (amostras[i] ^ 0x80);
+            inverterSinal(amostras, inicio, destino, 0, l);
         }
     }
 
     /**
-     * Lê um objeto descritor de som de um fluxo de entrada.
+     * Converte um trecho de amostras sinalizadas em não sinalizadas (ou vice-versa), invertendo o bit
+     * mais significativo de cada amostra. Origem e destino podem ser o mesmo vetor.
+     * @param origem Vetor de origem.
+     * @param inicio_origem Posição da primeira amostra no vetor de origem.
+     * @param destino Vetor de destino.
+     * @param inicio_destino Posição da primeira amostra no vetor de destino.
+     * @param tamanho Número de amostras a converter.
+     */
+    private static void inverterSinal(byte[] origem, int inicio_origem, byte[] destino, int inicio_destino, int tamanho) {
+        // laço simples, sem dependências entre iterações, para que o compilador JIT possa vetorizá-lo.
+        for (int i = 0; i < tamanho; i ++)
+            destino[inicio_destino + i] = (byte) (origem[inicio_origem + i] ^ 0x80);
+    }
+
+    /**
+     * Obtém uma codificação de som pela etiqueta.
+     * @param tag Etiqueta da codificação (ver {@link CodecSom}).
+     * @return Codificação, ou nulo se ela não for conhecida.
+     */
+    public static CodecSom obterCodec(int tag) {
+        if (tag < 0 || tag >= CODECS.length) return null;
+        return CODECS[tag];
+    }
+
+    /**
+     * Lê um objeto descritor de som de um fluxo de entrada. O som pode estar no formato simples (tamanho
+     * e amostras não sinalizadas) ou no formato com etiqueta de codificação.
      * @param fluxo Fluxo de entrada.
      * @return Descritor de som construído.
      * @throws IOException Caso hava problema na leitura dos dados.
@@ -159,31 +266,88 @@ public class Som implements ConstantesArmazenamento {
 
         // lê o tamanho do som.
         int tamanho = fluxo_dados.readUnsignedShort();
+        if (tamanho == MARCA_CODIFICADO) return lerSomCodificado(fluxo_dados);
 
-        // lê as amostras não sinalizadas (e as converte para sinalizadas).
+        // lê as amostras não sinalizadas de uma só vez (e as converte para sinalizadas).
         byte[] amostras = new byte[tamanho];
-        for (int i = 0; i < tamanho; i ++)
-            amostras[i] = (byte)(fluxo_dados.readUnsignedByte() ^ 0x80);
+        fluxo_dados.readFully(amostras);
+        inverterSinal(amostras, 0, amostras, 0, tamanho);
+
+        // retorna o descritor de som (o vetor lido passa a pertencer a ele).
+        return new Som(amostras, 0, tamanho);
+    }
 
-        // retorna o descritor de som.
-        return new Som(amostras, true);
+    /**
+     * Lê o restante de um som no formato com etiqueta de codificação: etiqueta (1 byte), número de amostras
+     * (int), número de bytes codificados (int) e os bytes codificados.
+     * @param fluxo_dados Fluxo de dados posicionado logo após a marca.
+     * @return Descritor de som construído.
+     * @throws IOException Caso hava problema na leitura dos dados ou a codificação seja desconhecida.
+     */
+    private static Som lerSomCodificado(DataInputStream fluxo_dados) throws IOException {
+        CodecSom codec = obterCodec(fluxo_dados.readUnsignedByte());
+        if (codec == null) throw new IOException("Codificação de som desconhecida.");
+        int tamanho = fluxo_dados.readInt();
+        int tamanho_dados = fluxo_dados.readInt();
+        if (tamanho < 0 || tamanho_dados < 0) throw new IOException("Tamanho de som inválido.");
+
+        // lê os dados codificados de uma só vez e os decodifica diretamente no vetor de amostras.
+        byte[] dados = new byte[tamanho_dados];
+        fluxo_dados.readFully(dados);
+        byte[] amostras = new byte[tamanho];
+        codec.decodificar(dados, 0, tamanho_dados, amostras, 0, tamanho);
+        return new Som(amostras, 0, tamanho);
     }
 
     /**
-     * Escreve o objeto descritor de som em um fluxo de saída.
+     * Escreve o objeto descritor de som em um fluxo de saída, no formato simples. Sons longos demais para
+     * esse formato são escritos no formato com etiqueta, em PCM.
      * @param fluxo Fluxo de saída.
      * @throws IOException Caso hava problema na leitura dos dados.
      */
     public void escreverSom(OutputStream fluxo) throws IOException {
+        if (tamanho >= MARCA_CODIFICADO) {
+            escreverSom(fluxo, CODECS[CodecSom.TAG_PCM]);
+            return;
+        }
+
         // cria um fluxo de dados.
         DataOutputStream fluxo_dados = new DataOutputStream(fluxo);
 
         // escreve o tamanho do som.
-        fluxo_dados.writeShort(amostras.length);
+        fluxo_dados.writeShort(tamanho);
+
+        // escreve as amostras não sinalizadas de uma só vez (as converte de sinalizadas).
+        byte[] nao_sinalizadas = new byte[tamanho];
+        inverterSinal(amostras, inicio, nao_sinalizadas, 0, tamanho);
+        fluxo_dados.write(nao_sinalizadas);
+    }
 
-        // escreve as amostras não sinalizadas (as converte de sinalizadas).
-        for (int i = 0; i < amostras.length; i ++)
-            fluxo_dados.write((byte)(amostras[i] ^ 0x80));
+    /**
+     * Escreve o objeto descritor de som em um fluxo de saída, no formato com etiqueta de codificação. Se
+     * a codificação aumentar o tamanho dos dados, o som é escrito em PCM.
+     * @param fluxo Fluxo de saída.
+     * @param codec Codificação a usar.
+     * @throws IOException Caso hava problema na escrita dos dados.
+     */
+    public void escreverSom(OutputStream fluxo, CodecSom codec) throws IOException {
+        // codifica as amostras, para saber o tamanho dos dados codificados; se a codificação não reduzir
+        // o tamanho (por exemplo, com ruído), usa PCM.
+        ByteArrayOutputStream dados = new ByteArrayOutputStream(tamanho + 16);
+        codec.codificar(amostras, inicio, tamanho, dados);
+        if (dados.size() > tamanho && codec.obterTag() != CodecSom.TAG_PCM) {
+            codec = CODECS[CodecSom.TAG_PCM];
+            dados.reset();
+            codec.codificar(amostras, inicio, tamanho, dados);
+        }
+
+        // escreve a marca, a etiqueta, os tamanhos e os dados.
+        DataOutputStream fluxo_dados = new DataOutputStream(fluxo);
+        fluxo_dados.writeShort(MARCA_CODIFICADO);
+        fluxo_dados.writeByte(codec.obterTag());
+        fluxo_dados.writeInt(tamanho);
+        fluxo_dados.writeInt(dados.size());
+        dados.writeTo(fluxo_dados);
     }
 
     /**
@@ -218,113 +382,54 @@ public class Som implements ConstantesArmazenamento {
      * @throws IOException Caso haja um erro na leitura do arquivo.
      */
     public static Som importarArquivo(File arquivo) throws UnsupportedAudioFileException, IOException {
-        // abre um arquivo de áudio.
-        AudioInputStream entrada_audio = AudioSystem.getAudioInputStream(arquivo);
-
-        // obtém o formato do áudio.
-        AudioFormat formato_audio = entrada_audio.getFormat();
-
-        // verifica se o formato é válido.
-        if (formato_audio.getFrameRate() == AudioSystem.NOT_SPECIFIED)
-            throw new UnsupportedAudioFileException("Frame rate inválido.");
-        if (formato_audio.getFrameSize() == AudioSystem.NOT_SPECIFIED)
-            throw new UnsupportedAudioFileException("Frame size inválido.");
-        if (formato_audio.getChannels() == AudioSystem.NOT_SPECIFIED)
-            throw new UnsupportedAudioFileException("Número de canais inválido.");
-
-        // obtém o número de canais.
-        int canais = formato_audio.getChannels();
-
-        // verifica se o tamanho das amostras é múltiplo de 8.
-        int tamanho_amostra = formato_audio.getFrameSize() / formato_audio.getChannels();
-        System.out.println(tamanho_amostra);
-        if (tamanho_amostra != 1 && tamanho_amostra != 2 && tamanho_amostra != 3 && tamanho_amostra != 4)
-            throw new UnsupportedAudioFileException();
-
-        // verifica se não há bytes desalinhados.
-        if (formato_audio.getFrameSize() != canais * tamanho_amostra)
-            throw new UnsupportedAudioFileException();
-
-        // verifica se o som era originalmente sinalizado.
-        boolean originalmente_sinalizado = formato_audio.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED;
-
-        // máscara a aplicar às amostras, caso fossem originalmente sinalizadas.
-        int mascara_sinalizado = originalmente_sinalizado ? 0x00 : 0x80;
-
-        // determina o número de amostras do som.
-        long tamanho = (long) ((entrada_audio.getFrameLength() * Som.SOM_AMOSTRAGEM) / formato_audio.getFrameRate());
-        if (tamanho > SOM_MAX_AMOSTRAS) tamanho = SOM_MAX_AMOSTRAS;
-
-        // determina quais os frames do som original que devem ser lidos
-        long frame_inicial = 0;
-        long frame_final = (long) ((tamanho * formato_audio.getFrameRate()) / Som.SOM_AMOSTRAGEM);
-        // System.out.println(frame_inicial + ", " + frame_final);
-
-        // cria o vetor de amostras.
-        byte[] amostras = new byte[(int) tamanho];
-        byte[] frame = new byte[formato_audio.getFrameSize()];
-
-        // lê os frames e converte em amostras de 8 KHz.
-        for (int i = 0; i < amostras.length; i ++) {
-            long frame_local_inicial = frame_inicial + ((frame_final - frame_inicial) * i) / amostras.length;
-            long frame_local_final = frame_inicial + ((frame_final - frame_inicial) * (i + 1)) / amostras.length - 1;
-            long acumulador = 0;
-            for (long j = frame_local_inicial; j <= frame_local_final; j ++) {
-                // lê um frame.
-                int leitor = entrada_audio.read(frame);
-                while (leitor < frame.length)
-                    leitor += entrada_audio.read(frame, leitor, frame.length - leitor);
-
-                // soma o valor das amostras dos canais no acumulador.
-                if (tamanho_amostra == 1) {
-                    for (int canal = 0; canal < canais; canal ++) {
-                        acumulador = (byte)(0xFF & frame[canal]) ^ mascara_sinalizado;
-                    }
-                } else if (tamanho_amostra == 2) {
-                    for (int canal = 0; canal < canais; canal ++) {
-                        acumulador += ((byte)((0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 0 : 1)]) ^ mascara_sinalizado) << 8)
-                                     | (byte)((0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 1 : 0)]) << 0);
-                    }
-                } else if (tamanho_amostra == 3) {
-                    for (int canal = 0; canal < canais; canal ++) {
-                        acumulador += (((byte)(0xFF & frame[3*canal + ((formato_audio.isBigEndian()) ? 0 : 2)]) ^ mascara_sinalizado) << 16)
-                                     | ((byte)(0xFF & frame[3*canal + 1]) <<  8)
-                                     | ((byte)(0xFF & frame[3*canal + ((formato_audio.isBigEndian()) ? 2 : 0)]) <<  0);
-                    }
-                } else if (tamanho_amostra == 4) {
-                    for (int canal = 0; canal < canais; canal ++) {
-                        acumulador += (((byte)(0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 0 : 3)]) ^ mascara_sinalizado) << 24)
-                                     | ((byte)(0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 1 : 2)]) << 16)
-                                     | ((byte)(0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 2 : 1)]) <<  8)
-                                     | ((byte)(0xFF & frame[2*canal + ((formato_audio.isBigEndian()) ? 3 : 0)]) <<  0);
-                    }
-                }
-            }
-            // divide o acumulador (efetivamente, tira a média).
-            acumulador /= canais * (1 + frame_local_final - frame_local_inicial);
-
-            // ajusta os bytes do acumulador.
-            acumulador = acumulador >> (tamanho_amostra * 8 - 8);
-
-            // define a amostra atual
-            amostras[i] = (byte) acumulador;
+        // abre o arquivo de áudio para leitura em blocos (a validação do formato é feita pelo leitor).
+        LeitorBlocosAudio leitor = LeitorBlocosAudio.abrir(arquivo);
+        try {
+            // cria o reamostrador.
+            int taxa = leitor.obterTaxa();
+            ReamostradorSom reamostrador = new ReamostradorSom(taxa, SOM_AMOSTRAGEM);
+
+            // determina o número de amostras do som.
+            long tamanho = SOM_MAX_AMOSTRAS;
+            if (leitor.obterFrames() != AudioSystem.NOT_SPECIFIED)
+                tamanho = Math.min(tamanho, (leitor.obterFrames() * SOM_AMOSTRAGEM + taxa - 1) / taxa);
+
+            // cria o vetor de amostras e o vetor do bloco.
+            byte[] amostras = new byte[(int) tamanho];
+            float[] bloco_mono = new float[leitor.obterFramesBloco()];
+
+            // lê os frames em blocos, já convertidos para mono, e reamostra para 8 KHz.
+            int gerados = 0;
+            int frames;
+            while (gerados < amostras.length && (frames = leitor.ler(bloco_mono)) >= 0)
+                gerados += reamostrador.processar(bloco_mono, frames, amostras, gerados, amostras.length - gerados);
+            gerados += reamostrador.finalizar(amostras, gerados, amostras.length - gerados);
+
+            // cria o objeto de som.
+            return new Som(amostras, 0, gerados);
+        } finally {
+            leitor.fechar();
         }
-
-        // cria o objeto de som.
-        return new Som(amostras, true);
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Dois sons são iguais se tiverem a mesma chave (o resumo SHA-256 das amostras; ver
+     * {@link RepositorioSons#calcularChave(Som)}), que é a mesma usada para identificar os sons no
+     * repositório.
      */
     @Override public boolean equals(Object obj) {
         if (obj instanceof Som) {
             Som som = (Som) obj;
-            if (som.amostras.length != amostras.length) return false;
-            for (int i = 0; i < amostras.length; i ++)
-                if (som.amostras[i] != amostras[i])
-                    return false;
-            return true;
+            if (som.tamanho != tamanho) return false;
+            if (som.amostras == amostras && som.inicio == inicio) return true;
+            return RepositorioSons.calcularChave(som).equals(RepositorioSons.calcularChave(this));
         } else return false;
     }
+
+    /**
+     * {@inheritDoc} O hash é derivado da chave do som, que normalmente já foi calculada quando o som foi lido.
+     */
+    @Override public int hashCode() {
+        return RepositorioSons.calcularChave(this).hashCode();
+    }
 }
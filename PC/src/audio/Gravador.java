@@ -122,11 +122,12 @@ public class Gravador extends Thread {
     }
 
     /**
-     * Obtém o objeto descritor do som gravado por esse gravador.
+     * Obtém o objeto descritor do som gravado por esse gravador. Deve ser chamado apenas após o término
+     * da gravação, pois o som compartilha o buffer de gravação.
      * @return Objeto descritor do som gravado.
      */
     public Som obterSom() {
-        return new Som(buffer_gravacao, 0, posicao_atual, true);
+        return Som.compartilhar(buffer_gravacao, 0, posicao_atual);
     }
 
 
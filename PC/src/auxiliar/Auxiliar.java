@@ -27,6 +27,7 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 package auxiliar;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Classe com métodos estáticos auxiliares.
@@ -48,14 +49,18 @@ public final class Auxiliar {
         byte[] retorno = new byte[tamanho];
         if (vetor == null) {
             // não há vetor, então cria um vetor vazio.
-            for (int i = 0; i < tamanho; i ++)
-                retorno[i] = completar;
+            Arrays.fill(retorno, completar);
         } else {
             // há vetor. copia os valores e completa o que faltar com vazio.
-            for (int i = 0; i < tamanho; i ++)
-                retorno[i] = (i + inicio >= 0 && i + inicio < vetor.length)
-                               ? vetor[i + inicio]
-                               : completar;
+            int primeiro = Math.max(0, -inicio);
+            int ultimo = Math.min(tamanho, vetor.length - inicio);
+            if (ultimo > primeiro) {
+                Arrays.fill(retorno, 0, primeiro, completar);
+                System.arraycopy(vetor, inicio + primeiro, retorno, primeiro, ultimo - primeiro);
+                Arrays.fill(retorno, ultimo, tamanho, completar);
+            } else {
+                Arrays.fill(retorno, completar);
+            }
         }
         return retorno;
     }
@@ -91,4 +96,49 @@ public final class Auxiliar {
     public static String obterExtensao(File arquivo) {;
         return obterExtensao(arquivo.getName());
     }
+
+    /**
+     * Obtém o arquivo de reserva usado por {@link #substituirArquivo(File, File)}.
+     * @param destino Arquivo substituído.
+     * @return Arquivo de reserva do arquivo substituído.
+     */
+    public static File obterReserva(File destino) {
+        return new File(destino.getPath() + ".bak");
+    }
+
+    /**
+     * Substitui um arquivo por outro, já completamente escrito, renomeando-o. Onde a renomeação não
+     * substitui um arquivo existente (no Windows), o arquivo antigo é antes renomeado para a reserva, que
+     * volta ao lugar se a troca falhar. Uma queda no meio da troca é desfeita por
+     * {@link #recuperarSubstituicao(File, File)}.
+     * @param temporario Arquivo novo.
+     * @param destino Arquivo a substituir.
+     * @throws IOException Caso o arquivo não possa ser substituído.
+     */
+    public static void substituirArquivo(File temporario, File destino) throws IOException {
+        if (temporario.renameTo(destino)) return;
+        File reserva = obterReserva(destino);
+        reserva.delete();
+        if (! destino.renameTo(reserva) || ! temporario.renameTo(destino)) {
+            if (! destino.exists()) reserva.renameTo(destino);
+            throw new IOException("Não foi possível substituir " + destino.getName() + ".");
+        }
+        reserva.delete();
+    }
+
+    /**
+     * Termina uma substituição interrompida por uma queda (ver {@link #substituirArquivo(File, File)}). Se o
+     * destino não existe mas há reserva, a queda ocorreu durante a troca, quando o arquivo novo já estava
+     * completo: ele vai para o lugar do destino, ou, se não existir, a reserva volta. As sobras (um arquivo
+     * novo incompleto ou uma reserva desnecessária) são apagadas.
+     * @param temporario Arquivo novo.
+     * @param destino Arquivo substituído.
+     */
+    public static void recuperarSubstituicao(File temporario, File destino) {
+        File reserva = obterReserva(destino);
+        if (! destino.exists() && reserva.exists() && ! (temporario.exists() && temporario.renameTo(destino)))
+            reserva.renameTo(destino);
+        if (destino.exists()) reserva.delete();
+        temporario.delete();
+    }
 }
@@ -26,13 +26,44 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 
 package comunicacao;
 
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
 import java.util.concurrent.TimeoutException;
 
 /**
- * Descritor de um comunicador genérico.
+ * Descritor de um comunicador genérico. Os métodos em blocos ({@link #enviar(ByteBuffer[])},
+ * {@link #descarregar()} e {@link #receber(ByteBuffer, long)}) são a base do comunicador; os métodos
+ * de byte e de vetor são adaptadores sobre eles, implementados em {@link ComunicadorAbstrato}.
  * @author Felipe Michels Fontoura
  */
 public interface Comunicador {
+    /**
+     * Envia, em ordem, os bytes restantes de vários buffers pelo canal (escrita agrupada). Os bytes
+     * podem ficar retidos até {@link #descarregar()} ser chamado. A posição de cada buffer avança até
+     * o seu limite.
+     * @param origens Buffers com os bytes a enviar.
+     * @throws IOException Se o canal falhar ou estiver desconectado.
+     */
+    public void enviar(ByteBuffer[] origens) throws IOException;
+
+    /**
+     * Termina o envio dos bytes retidos por {@link #enviar(ByteBuffer[])}. Bloqueia a thread que
+     * chamar esse método até os bytes serem entregues ao canal.
+     * @throws IOException Se o canal falhar ou estiver desconectado.
+     */
+    public void descarregar() throws IOException;
+
+    /**
+     * Recebe bytes do canal até encher o espaço restante do buffer ou até o prazo acabar. Bloqueia
+     * a thread que chamar esse método, sem ocupar o processador, enquanto espera.
+     * @param destino Buffer no qual os bytes são colocados, a partir da sua posição.
+     * @param prazo Instante limite da espera, na escala de {@link System#nanoTime()}.
+     * @return Número de bytes recebidos, que é menor que o espaço do buffer se o prazo acabou.
+     */
+    public int receber(ByteBuffer destino, long prazo);
+
     /**
      * Envia um vetor de bytes pelo canal. Bloqueia a thread que chamar esse método
      * até o envio estar completo.
@@ -52,6 +83,26 @@ public interface Comunicador {
      */
     public byte receberByte(int timeout_ms) throws TimeoutException;
 
+    /**
+     * Obtém a taxa de transmissão atual do canal.
+     * @return Taxa de transmissão, em bauds.
+     */
+    public int obterTaxa();
+
+    /**
+     * Muda a taxa de transmissão do canal, depois de terminar o envio dos dados pendentes.
+     * @param taxa Nova taxa de transmissão, em bauds.
+     * @return Se o canal aceitou a taxa. Se for falso, a taxa anterior continua valendo.
+     */
+    public boolean definirTaxa(int taxa);
+
+    /**
+     * Obtém o nome do canal (por exemplo, o nome da porta serial), que identifica o canal entre
+     * execuções do programa.
+     * @return Nome do canal.
+     */
+    public String obterNome();
+
     /**
      * Desconecta, e libera os recursos físicos, desse comunicador.
      */
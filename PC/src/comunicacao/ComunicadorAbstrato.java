@@ -0,0 +1,61 @@
+/*
+Copyright (c) 2010, FunIcon Team
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification,
+are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright notice, this list
+      of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above copyright notice, this
+      list of conditions and the following disclaimer in the documentation and/or
+      other materials provided with the distribution.
+    * Neither the name of Universidade Tecnológica Federal do Paraná nor the names of its
+      contributors may be used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package comunicacao;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Base dos comunicadores, que implementa os métodos de byte e de vetor de {@link Comunicador} sobre
+ * os métodos em blocos.
+ * @author Felipe Michels Fontoura
+ */
+public abstract class ComunicadorAbstrato implements Comunicador {
+    /**
+     * Buffer de um byte, reutilizado por {@link #receberByte(int)}.
+     */
+    private final ByteBuffer buffer_byte = ByteBuffer.allocate(1);
+
+    @Override public void enviarDados(byte[] bytes, int offset, int tamanho) {
+        try {
+            enviar(new ByteBuffer[] { ByteBuffer.wrap(bytes, offset, tamanho) });
+            descarregar();
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    @Override public synchronized byte receberByte(int timeout_ms) throws TimeoutException {
+        buffer_byte.clear();
+        if (receber(buffer_byte, System.nanoTime() + 1000000L * timeout_ms) == 0)
+            throw new TimeoutException(timeout_ms + " ms");
+        return buffer_byte.get(0);
+    }
+}
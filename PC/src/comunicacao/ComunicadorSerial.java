@@ -30,14 +30,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
-
-import java.util.concurrent.TimeoutException;
+import java.util.TooManyListenersException;
 
 import gnu.io.CommPortIdentifier;
 import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
 import gnu.io.NoSuchPortException;
 import gnu.io.PortInUseException;
 import gnu.io.UnsupportedCommOperationException;
@@ -47,7 +50,22 @@ import gnu.io.UnsupportedCommOperationException;
  * @author Felipe Michels Fontoura
  */
 @SuppressWarnings("rawtypes")
-public class ComunicadorSerial implements Comunicador {
+public class ComunicadorSerial extends ComunicadorAbstrato {
+    /**
+     * Taxa de transmissão com que a porta é aberta, aceita por todas as pranchas.
+     */
+    public static final int TAXA_PADRAO = 57600;
+
+    /**
+     * Capacidade do buffer circular de recepção.
+     */
+    private static final int CAPACIDADE_RECEPCAO = 65536;
+
+    /**
+     * Tamanho do vetor usado para enviar buffers que não são apoiados em vetores.
+     */
+    private static final int TAMANHO_COPIA_ENVIO = 4096;
+
     /**
      * Fluxo de entrada de dados pela serial.
      */
@@ -64,7 +82,29 @@ public class ComunicadorSerial implements Comunicador {
     private SerialPort porta_serial;
 
     /**
-     * Instancia um novo comunicador serial com baud rate de 57600 por segundo.
+     * Nome da porta serial.
+     */
+    private String nome_porta;
+
+    /**
+     * Buffer circular com os bytes recebidos e ainda não lidos. Também serve de trava para o acesso
+     * ao buffer e de monitor para a espera por bytes (ou por espaço).
+     */
+    private final byte[] buffer_recepcao;
+
+    /**
+     * Posição, no buffer circular, do próximo byte a ler.
+     */
+    private int inicio_recepcao;
+
+    /**
+     * Número de bytes no buffer circular.
+     */
+    private int contagem_recepcao;
+
+    /**
+     * Instancia um novo comunicador serial com baud rate de 57600 por segundo. A taxa pode ser
+     * aumentada depois, com {@link #definirTaxa(int)}, se a prancha aceitar.
      * @param nome_porta Nome da porta serial.
      * @throws NoSuchPortException Se a porta serial desejada não existe.
      * @throws PortInUseException Se a porta serial desejada está em uso.
@@ -75,11 +115,15 @@ public class ComunicadorSerial implements Comunicador {
         // obtém o controle da porta serial.
         CommPortIdentifier identificador = CommPortIdentifier.getPortIdentifier(nome_porta);
         porta_serial = (SerialPort) identificador.open("FunIconGUI", 5000);
+        this.nome_porta = nome_porta;
+        buffer_recepcao = new byte[CAPACIDADE_RECEPCAO];
+        inicio_recepcao = 0;
+        contagem_recepcao = 0;
 
         // configura a porta serial.
         try {
             porta_serial.setSerialPortParams(
-              /*     baud rate: */ 57600,
+              /*     baud rate: */ TAXA_PADRAO,
               /* bits de dados: */ SerialPort.DATABITS_8,
               /*     stop bits: */ SerialPort.STOPBITS_1,
               /*      paridade: */ SerialPort.PARITY_NONE
@@ -98,6 +142,50 @@ public class ComunicadorSerial implements Comunicador {
             porta_serial.close();
             throw ioe;
         }
+
+        // passa a receber os bytes por evento, sem consultar a porta continuamente.
+        try {
+            porta_serial.addEventListener(new SerialPortEventListener() {
+                @Override public void serialEvent(SerialPortEvent evento) {
+                    if (evento.getEventType() == SerialPortEvent.DATA_AVAILABLE) evtDadosDisponiveis();
+                }
+            });
+            porta_serial.notifyOnDataAvailable(true);
+        } catch (TooManyListenersException tmle) {
+            porta_serial.close();
+            throw new IOException(tmle);
+        }
+    }
+
+    /**
+     * Tratador do evento de haver bytes disponíveis na porta serial. Passa os bytes para o buffer
+     * circular, esperando por espaço se ele estiver cheio. É chamado pela thread de eventos da porta.
+     */
+    private void evtDadosDisponiveis() {
+        synchronized (buffer_recepcao) {
+            try {
+                int disponiveis;
+                while (fluxo_entrada != null && (disponiveis = fluxo_entrada.available()) > 0) {
+                    // espera até alguém ler do buffer cheio.
+                    if (contagem_recepcao == CAPACIDADE_RECEPCAO) {
+                        buffer_recepcao.wait();
+                        continue;
+                    }
+
+                    // lê para o trecho livre contíguo do buffer.
+                    int fim = (inicio_recepcao + contagem_recepcao) % CAPACIDADE_RECEPCAO;
+                    int livres = Math.min(CAPACIDADE_RECEPCAO - contagem_recepcao, CAPACIDADE_RECEPCAO - fim);
+                    int lidos = fluxo_entrada.read(buffer_recepcao, fim, Math.min(livres, disponiveis));
+                    if (lidos <= 0) break;
+                    contagem_recepcao += lidos;
+                    buffer_recepcao.notifyAll();
+                }
+            } catch (IOException ioe) {
+                // a porta foi fechada.
+            } catch (InterruptedException ie) {
+                // a thread de eventos foi interrompida.
+            }
+        }
     }
 
     /**
@@ -124,33 +212,94 @@ public class ComunicadorSerial implements Comunicador {
         return lista_nomes_ports;
     }
 
-    @Override public byte receberByte(int timeout_ms) throws TimeoutException {
-        try {
-            if (fluxo_entrada.available() > 0) return (byte) fluxo_entrada.read();
-            long ini = System.currentTimeMillis();
-            while (System.currentTimeMillis() - ini < timeout_ms) {
-                if (fluxo_entrada.available() > 0) return (byte) fluxo_entrada.read();
+    @Override public int receber(ByteBuffer destino, long prazo) {
+        int recebidos = 0;
+        synchronized (buffer_recepcao) {
+            while (destino.hasRemaining()) {
+                // espera, sem ocupar o processador, até chegarem bytes ou o prazo acabar.
+                if (contagem_recepcao == 0) {
+                    long restante = prazo - System.nanoTime();
+                    if (restante <= 0 || fluxo_entrada == null) break;
+                    try {
+                        buffer_recepcao.wait(restante / 1000000L, (int) (restante % 1000000L));
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                    continue;
+                }
+
+                // copia o trecho contíguo disponível no buffer circular.
+                int tamanho = Math.min(destino.remaining(), Math.min(contagem_recepcao, CAPACIDADE_RECEPCAO - inicio_recepcao));
+                destino.put(buffer_recepcao, inicio_recepcao, tamanho);
+                if (contagem_recepcao == CAPACIDADE_RECEPCAO) buffer_recepcao.notifyAll();
+                inicio_recepcao = (inicio_recepcao + tamanho) % CAPACIDADE_RECEPCAO;
+                contagem_recepcao -= tamanho;
+                recebidos += tamanho;
+            }
+        }
+        return recebidos;
+    }
+
+    @Override public void enviar(ByteBuffer[] origens) throws IOException {
+        OutputStream fluxo = fluxo_saida;
+        if (fluxo == null) throw new IOException("Porta serial desconectada.");
+        byte[] copia = null;
+        for (ByteBuffer origem : origens) {
+            if (origem.hasArray()) {
+                // escreve direto do vetor do buffer.
+                fluxo.write(origem.array(), origem.arrayOffset() + origem.position(), origem.remaining());
+                origem.position(origem.limit());
+            } else {
+                // copia o buffer em partes para um vetor.
+                if (copia == null) copia = new byte[TAMANHO_COPIA_ENVIO];
+                while (origem.hasRemaining()) {
+                    int tamanho = Math.min(copia.length, origem.remaining());
+                    origem.get(copia, 0, tamanho);
+                    fluxo.write(copia, 0, tamanho);
+                }
             }
-        } catch (IOException ioe) {};
-        throw new TimeoutException(timeout_ms + " ms");
+        }
+    }
+
+    @Override public void descarregar() throws IOException {
+        OutputStream fluxo = fluxo_saida;
+        if (fluxo == null) throw new IOException("Porta serial desconectada.");
+        fluxo.flush();
     }
 
-    @Override public void enviarDados(byte[] bytes, int offset, int tamanho) {
+    @Override public int obterTaxa() {
+        return porta_serial.getBaudRate();
+    }
+
+    @Override public boolean definirTaxa(int taxa) {
+        int taxa_anterior = porta_serial.getBaudRate();
         try {
-            if (fluxo_saida != null) {
-                fluxo_saida.write(bytes, offset, tamanho);
-                fluxo_saida.flush();
-            }
+            if (fluxo_saida != null) fluxo_saida.flush();
+            porta_serial.setSerialPortParams(taxa, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            // a porta não aceitou a taxa. Volta à anterior.
+            try {
+                porta_serial.setSerialPortParams(taxa_anterior, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            } catch (UnsupportedCommOperationException ucoe) {}
+            return false;
         }
     }
 
+    @Override public String obterNome() {
+        return nome_porta;
+    }
+
     @Override public void desconectar() {
         if (porta_serial != null) {
+            // libera as threads que esperam pelo buffer antes de parar a thread de eventos.
+            synchronized (buffer_recepcao) {
+                fluxo_entrada = null;
+                buffer_recepcao.notifyAll();
+            }
+            porta_serial.removeEventListener();
             porta_serial.close();
             fluxo_saida = null;
-            fluxo_entrada = null;
         }
     }
 }
@@ -31,6 +31,8 @@ import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.Vector;
 
+import java.util.prefs.Preferences;
+
 import armazenamento.Botao;
 import armazenamento.ConstantesArmazenamento;
 
@@ -40,6 +42,11 @@ import armazenamento.ConstantesArmazenamento;
  *
  */
 public class ProtocoloFunIcon {
+    /**
+     * Prefixo da preferência que guarda o tamanho de segmento usado em cada canal.
+     */
+    private static final String PREFERENCIA_TAMANHO_SEGMENTO = "tamanho_segmento.";
+
     /**
      * Lista de ouvintes de evento de protocolo.
      */
@@ -60,6 +67,29 @@ public class ProtocoloFunIcon {
      */
     private ThreadProtocolo thread_comunicacao;
 
+    /**
+     * Flag indicando se deve ser proposto à prancha o modo com janela deslizante. Deixa de ser
+     * proposto depois que a prancha o recusar, para evitar um pedido a mais em cada envio.
+     */
+    private boolean tentar_janela;
+
+    /**
+     * Tamanho de segmento com que o próximo envio começa. É ajustado pela thread de comunicação
+     * conforme a qualidade do canal e guardado, por canal, entre execuções do programa.
+     */
+    private int tamanho_segmento;
+
+    /**
+     * Flag indicando se deve ser negociada uma taxa de transmissão maior a cada envio. Deixa de ser
+     * negociada depois que a prancha recusar a negociação.
+     */
+    private boolean negociar_taxa;
+
+    /**
+     * Preferências do usuário nas quais é guardado o tamanho de segmento de cada canal.
+     */
+    private Preferences preferencias;
+
     /**
      * Cria um gerenciador de protocolo de comunicação sobre um dado comunicador.
      * @param comunicador Comunicador a usar.
@@ -73,10 +103,20 @@ public class ProtocoloFunIcon {
 
         // define que não há thread de comunicação ativa.
         thread_comunicacao = null;
+        tentar_janela = true;
+        negociar_taxa = true;
+
+        // obtém o tamanho de segmento usado da última vez nesse canal.
+        preferencias = Preferences.userNodeForPackage(ProtocoloFunIcon.class);
+        tamanho_segmento = preferencias.getInt(chaveTamanhoSegmento(), ThreadProtocolo.TAMANHO_SEGMENTO_INICIAL);
 
         // cria o ouvinte de eventos da thread de comunicação.
         ouvinte_thread = new OuvinteThread() {
             @Override public void terminouExecucao() {
+                lembrarTamanhoSegmento(thread_comunicacao.obterTamanhoSegmento());
+                negociar_taxa = negociar_taxa && thread_comunicacao.pranchaNegociaTaxa();
+                if (thread_comunicacao.enviouDados())
+                    tentar_janela = thread_comunicacao.usouJanela();
                 if (thread_comunicacao.comunicacaoFalhou())
                     evtComunicacaoAbortada();
                 else if (thread_comunicacao.enviouDados())
@@ -90,6 +130,32 @@ public class ProtocoloFunIcon {
         };
     }
 
+    /**
+     * Obtém a chave da preferência que guarda o tamanho de segmento do canal desse gerente.
+     * @return Chave da preferência.
+     */
+    private String chaveTamanhoSegmento() {
+        String chave = PREFERENCIA_TAMANHO_SEGMENTO + comunicador.obterNome();
+        if (chave.length() > Preferences.MAX_KEY_LENGTH)
+            chave = chave.substring(chave.length() - Preferences.MAX_KEY_LENGTH);
+        return chave;
+    }
+
+    /**
+     * Guarda o tamanho de segmento ao qual a última comunicação chegou.
+     * @param tamanho Tamanho de segmento.
+     */
+    private void lembrarTamanhoSegmento(int tamanho) {
+        if (tamanho == tamanho_segmento) return;
+        tamanho_segmento = tamanho;
+        try {
+            preferencias.putInt(chaveTamanhoSegmento(), tamanho);
+            preferencias.flush();
+        } catch (Exception e) {
+            // não conseguiu guardar a preferência; o tamanho vale só até o programa ser fechado.
+        }
+    }
+
     /**
      * Tratador do evento de a thread de comunicação avançar até determinada
      * parcela de sua operação.
@@ -160,7 +226,8 @@ public class ProtocoloFunIcon {
                 botao.obterIcone().escreverIcone(fluxo);
                 botao.obterSom().escreverSom(fluxo);
                 dados_botao = fluxo.toByteArray();
-                thread_comunicacao = new ThreadProtocolo(comunicador, dados_botao, numero);
+                thread_comunicacao = new ThreadProtocolo(comunicador, dados_botao, numero, tentar_janela, tamanho_segmento);
+                thread_comunicacao.definirNegociacaoTaxa(negociar_taxa);
                 thread_comunicacao.adicionarOuvinteEvento(ouvinte_thread);
                 thread_comunicacao.start();
                 return true;
@@ -26,6 +26,10 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 
 package comunicacao;
 
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
 import java.util.List;
 import java.util.Vector;
 
@@ -39,11 +43,31 @@ public class ThreadProtocolo extends Thread {
      */
     private static final int TIPO_PC_INICIO = 0x03;
 
+    /**
+     * Identificador de tipo associado à mensagem de consulta das taxas de transmissão da prancha.
+     */
+    private static final int TIPO_PC_TAXAS = 0x05;
+
+    /**
+     * Identificador de tipo associado à mensagem de pedido de mudança da taxa de transmissão.
+     */
+    private static final int TIPO_PC_MUDAR_TAXA = 0x06;
+
+    /**
+     * Identificador de tipo associado à mensagem de sonda, enviada na taxa nova para confirmá-la.
+     */
+    private static final int TIPO_PC_SONDA = 0x07;
+
     /**
      * Identificador de tipo associado à mensagem de envio de segmento.
      */
     private static final int TIPO_PC_DADOS = 0x0C;
 
+    /**
+     * Identificador de tipo associado à mensagem de envio de segmento numerado (modo com janela).
+     */
+    private static final int TIPO_PC_DADOS_JANELA = 0x0D;
+
     /**
      * Identificador de tipo associado à mensagem de envio de segmento.
      */
@@ -74,6 +98,77 @@ public class ThreadProtocolo extends Thread {
      */
     private static final int TIPO_PRANCHA_GRAVADO = 0xB0;
 
+    /**
+     * Identificador de tipo associado à mensagem da prancha informar as taxas de transmissão que
+     * aceita.
+     */
+    private static final int TIPO_PRANCHA_TAXAS = 0xB5;
+
+    /**
+     * Taxas de transmissão, em bauds, indexadas pelo código usado nas mensagens. O código 0 é a
+     * taxa padrão, com a qual todo envio começa e termina.
+     */
+    private static final int[] TAXAS = { 57600, 115200, 230400, 460800, 921600 };
+
+    /**
+     * Corpo da mensagem de sonda.
+     */
+    private static final byte[] SONDA = { (byte) 0x55, (byte) 0xAA };
+
+    /**
+     * Versão do protocolo em que cada segmento é confirmado antes do envio do próximo.
+     */
+    private static final int VERSAO_PARADA_ESPERA = 0x00;
+
+    /**
+     * Versão do protocolo em que vários segmentos numerados são enviados antes de uma confirmação
+     * cumulativa (janela deslizante).
+     */
+    private static final int VERSAO_JANELA = 0x01;
+
+    /**
+     * Número máximo de segmentos enviados sem confirmação no modo com janela. Os números de
+     * sequência têm 8 bits, então a janela precisa ser menor que 128.
+     */
+    private static final int JANELA_MAXIMA = 16;
+
+    /**
+     * Número máximo de reenvios seguidos de uma janela sem que a prancha confirme algum segmento.
+     */
+    private static final int MAXIMO_REENVIOS = 3;
+
+    /**
+     * Sinalizador, no segmento numerado, de que a prancha deve responder com uma confirmação.
+     */
+    private static final int SINAL_PEDIR_CONFIRMACAO = 0x01;
+
+    /**
+     * Tamanho inicial dos segmentos de dados, usado quando não se conhece a qualidade do canal.
+     */
+    public static final int TAMANHO_SEGMENTO_INICIAL = 4096;
+
+    /**
+     * Tamanho mínimo dos segmentos de dados.
+     */
+    public static final int TAMANHO_SEGMENTO_MINIMO = 64;
+
+    /**
+     * Tamanho máximo dos segmentos de dados. O campo de tamanho das mensagens tem 16 bits, e o
+     * segmento numerado usa 2 bytes dele para a sequência e os sinalizadores.
+     */
+    public static final int TAMANHO_SEGMENTO_MAXIMO = 0xFFFF - 2;
+
+    /**
+     * Número de confirmações seguidas, sem perdas, depois das quais o tamanho dos segmentos dobra.
+     */
+    private static final int CONFIRMACOES_PARA_CRESCER = 4;
+
+    /**
+     * Menor taxa de transmissão esperada do canal, em bytes por segundo (57600 bauds, com 10 bits
+     * por byte). Usada para estender a espera por respostas enquanto os dados ainda estão na linha.
+     */
+    private static final int BYTES_POR_SEGUNDO = 5760;
+
     /**
      * Espera máxima pelo início do recebimento de uma resposta.
      */
@@ -84,11 +179,23 @@ public class ThreadProtocolo extends Thread {
      */
     private static final int ESPERA_MAXIMA_POR_RESPOSTA_GRAVACAO = 30000; // 30 s
 
+    /**
+     * Espera depois de uma sonda sem resposta, para que a prancha desista dela e volte à taxa
+     * padrão (a prancha espera pela sonda por cerca de 1 s).
+     */
+    private static final int ESPERA_RETORNO_TAXA = 1500; // 1,5 s
+
     /**
      * Espera máxima entre o recebimento de dois caracteres.
      */
     private static final int ESPERA_MAXIMA_ENTRE_CARACTERES = 20; // 20 ms
 
+    /**
+     * Tamanho máximo do corpo de uma resposta da prancha. As respostas da prancha são curtas; um tamanho
+     * maior só pode vir de um cabeçalho corrompido.
+     */
+    private static final int TAMANHO_MAXIMO_RESPOSTA = 16;
+
     /**
      * Lista de ouvintes de thread associados a essa thread
      */
@@ -114,6 +221,47 @@ public class ThreadProtocolo extends Thread {
      */
     private int recebida_tamanho;
 
+    /**
+     * Dados (corpo) da mensagem recebida.
+     */
+    private byte[] recebida_dados;
+
+    /**
+     * Flag indicando se deve ser tentado o modo com janela deslizante.
+     */
+    private boolean tentar_janela;
+
+    /**
+     * Flag indicando se a prancha aceitou o modo com janela deslizante.
+     */
+    private boolean usou_janela;
+
+    /**
+     * Flag indicando se deve ser negociada uma taxa de transmissão maior antes do envio.
+     */
+    private boolean negociar_taxa;
+
+    /**
+     * Flag indicando se a prancha conhece a negociação de taxa de transmissão.
+     */
+    private boolean prancha_negocia_taxa;
+
+    /**
+     * Número de segmentos que podem ser enviados sem confirmação, negociado com a prancha.
+     */
+    private int janela;
+
+    /**
+     * Tamanho dos segmentos de dados. Diminui quando há perdas e aumenta depois de várias
+     * confirmações seguidas.
+     */
+    private int dados_por_vez;
+
+    /**
+     * Número de confirmações seguidas sem perdas desde a última mudança no tamanho dos segmentos.
+     */
+    private int confirmacoes_limpas;
+
     /**
      * Comunicador a utilizar para realizar o envio.
      */
@@ -136,17 +284,40 @@ public class ThreadProtocolo extends Thread {
      * @param numero_botao Número do botão a enviar.
      */
     public ThreadProtocolo(Comunicador comunicador, byte[] dados_botao, int numero_botao) {
+        this(comunicador, dados_botao, numero_botao, true, TAMANHO_SEGMENTO_INICIAL);
+    }
+
+    /**
+     * Instancia uma nova thread de comunicação.
+     * @param comunicador Comunicador a utilizar.
+     * @param dados_botao Vetor de dados do botão a enviar.
+     * @param numero_botao Número do botão a enviar.
+     * @param tentar_janela Se deve ser tentado o modo com janela deslizante. Se a prancha não o
+     * aceitar, o envio é feito no modo antigo, com parada e espera.
+     * @param tamanho_segmento Tamanho inicial dos segmentos de dados.
+     */
+    public ThreadProtocolo(Comunicador comunicador, byte[] dados_botao, int numero_botao, boolean tentar_janela, int tamanho_segmento) {
         this.comunicador = comunicador;
         this.dados_botao = dados_botao;
         this.numero_botao = numero_botao;
+        this.tentar_janela = tentar_janela;
         ouvintes = new Vector<OuvinteThread>();
         enviou = false;
+        usou_janela = false;
+        negociar_taxa = false;
+        prancha_negocia_taxa = true;
+        dados_por_vez = Math.max(TAMANHO_SEGMENTO_MINIMO, Math.min(TAMANHO_SEGMENTO_MAXIMO, tamanho_segmento));
+        confirmacoes_limpas = 0;
     }
 
     @Override public void run() {
         comunicacao_falhou = false;
         enviou = false;
         enviou = enviarBotao();
+
+        // a taxa negociada vale só até o fim do envio; a prancha também volta à taxa padrão.
+        if (comunicador.obterTaxa() != TAXAS[0])
+            comunicador.definirTaxa(TAXAS[0]);
         dispararTermino();
         return;
     }
@@ -173,14 +344,24 @@ public class ThreadProtocolo extends Thread {
      * @return Se o envio ocorreu com sucesso.
      */
     private boolean enviarBotao() {
-        int dados_enviados = 0;
-        int dados_por_vez = 256;
+        // descarta qualquer mensagem pendente.
         receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
         comunicacao_falhou = false;
-        enviarMensagemInicio();
+
+        // tenta aumentar a taxa de transmissão. Se não conseguir, o envio segue na taxa padrão.
+        if (negociar_taxa) negociarTaxa();
+
+        // pede permissão para o envio, propondo o modo com janela. Uma prancha que não conhece esse
+        // modo aborta o pedido, que então é refeito no modo antigo.
+        int versao = tentar_janela ? VERSAO_JANELA : VERSAO_PARADA_ESPERA;
+        enviarMensagemInicio(versao);
         receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
+        if (! comunicacao_falhou && recebida_tipo == TIPO_PRANCHA_ABORTAR && versao == VERSAO_JANELA) {
+            versao = VERSAO_PARADA_ESPERA;
+            enviarMensagemInicio(versao);
+            receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
+        }
         if (comunicacao_falhou) return false;
-        System.out.println("PRANCHA RESPONDEU: " + Integer.toHexString(0xFF & recebida_tipo));
         if (recebida_tipo == TIPO_PRANCHA_NEGACAO) {
             return false;
         } else if (recebida_tipo == TIPO_PRANCHA_ABORTAR) {
@@ -191,82 +372,295 @@ public class ThreadProtocolo extends Thread {
             enviarMensagemAbortar();
             return false;
         }
-        while (dados_enviados < dados_botao.length) {
-            for (OuvinteThread ouvinte : ouvintes)
-                ouvinte.avancouExecucao(((double)dados_enviados)/dados_botao.length);
-            enviarMensagemDados(dados_enviados, dados_por_vez);
-            System.out.println("ENVIOU DADOS");
-            receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
-            System.out.println("PRANCHA RESPONDEU: " + Integer.toHexString(0xFF & recebida_tipo));
-            if (comunicacao_falhou) return false;
-            if (recebida_tipo != TIPO_PRANCHA_CONFIRMACAO) {
-                if (recebida_tipo != TIPO_PC_ABORTAR)
-                    enviarMensagemAbortar();
-                System.out.println("ENVIOU MENSAGEM FINAL");
-                return false;
-            }
-            dados_enviados += dados_por_vez;
 
+        // envia os segmentos. No modo com janela, a permissão traz o tamanho da janela da prancha.
+        if (versao == VERSAO_JANELA && recebida_tamanho >= 1 && (0xFF & recebida_dados[0]) != 0) {
+            usou_janela = true;
+            janela = Math.min(JANELA_MAXIMA, 0xFF & recebida_dados[0]);
+            if (! enviarSegmentosJanela()) return false;
+        } else {
+            usou_janela = false;
+            janela = 1;
+            if (! enviarSegmentos()) return false;
         }
+
+        // pede a gravação dos dados.
         enviarMensagemFinal();
-        System.out.println("ENVIOU MENSAGEM FINAL");
         receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA_GRAVACAO + ESPERA_MAXIMA_POR_RESPOSTA);
         if (comunicacao_falhou) return false;
-        System.out.println("PRANCHA RESPONDEU: " + Integer.toHexString(0xFF & recebida_tipo));
         if (recebida_tipo == TIPO_PRANCHA_GRAVADO) {
             return true;
         } else {
-            if (recebida_tipo != TIPO_PC_ABORTAR)
+            if (recebida_tipo != TIPO_PRANCHA_ABORTAR)
                 enviarMensagemAbortar();
             return false;
         }
     }
 
     /**
-     * Tenta receber uma mensagem pelo comunicador.
+     * Negocia com a prancha uma taxa de transmissão maior que a padrão. Pergunta as taxas aceitas
+     * pela prancha, pede a maior delas e confirma a taxa nova com uma sonda. Se a sonda não for
+     * respondida, os dois lados voltam à taxa padrão.
+     */
+    private void negociarTaxa() {
+        // pergunta as taxas aceitas pela prancha. Uma prancha antiga aborta o pedido.
+        enviarMensagemSimples(TIPO_PC_TAXAS, new byte[0]);
+        receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
+        if (comunicacao_falhou || recebida_tipo != TIPO_PRANCHA_TAXAS) {
+            prancha_negocia_taxa = false;
+            comunicacao_falhou = false;
+            return;
+        }
+
+        // escolhe a maior taxa conhecida pelos dois lados.
+        int codigo = 0;
+        for (int i = 0; i < recebida_tamanho; i ++) {
+            int oferecido = 0xFF & recebida_dados[i];
+            if (oferecido < TAXAS.length && oferecido > codigo) codigo = oferecido;
+        }
+        if (codigo == 0) return;
+
+        // pede a mudança. A prancha confirma ainda na taxa padrão, e então muda.
+        enviarMensagemSimples(TIPO_PC_MUDAR_TAXA, new byte[] { (byte) codigo });
+        receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
+        if (comunicacao_falhou || recebida_tipo != TIPO_PRANCHA_CONFIRMACAO) {
+            comunicacao_falhou = false;
+            return;
+        }
+
+        // muda a taxa e envia a sonda, que a prancha confirma na taxa nova.
+        if (comunicador.definirTaxa(TAXAS[codigo])) {
+            enviarMensagemSimples(TIPO_PC_SONDA, SONDA);
+            receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA);
+            if (! comunicacao_falhou && recebida_tipo == TIPO_PRANCHA_CONFIRMACAO) return;
+            comunicador.definirTaxa(TAXAS[0]);
+        }
+
+        // a sonda falhou. Espera a prancha voltar à taxa padrão.
+        comunicacao_falhou = false;
+        try {
+            Thread.sleep(ESPERA_RETORNO_TAXA);
+        } catch (InterruptedException e) {}
+        receberMensagem(ESPERA_MAXIMA_ENTRE_CARACTERES);
+        comunicacao_falhou = false;
+    }
+
+    /**
+     * Envia os segmentos de dados no modo antigo, esperando a confirmação de cada um deles antes de
+     * enviar o próximo.
+     * @return Se todos os segmentos foram confirmados.
+     */
+    private boolean enviarSegmentos() {
+        int dados_enviados = 0;
+        while (dados_enviados < dados_botao.length) {
+            dispararAvanco(dados_enviados);
+            int tamanho = Math.min(dados_por_vez, dados_botao.length - dados_enviados);
+            enviarMensagemDados(dados_enviados, tamanho);
+            if (comunicacao_falhou) return false;
+            receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA + tempoTransmissao(tamanho));
+            if (comunicacao_falhou) {
+                // a prancha antiga não aceita reenvios, mas o próximo envio usa segmentos menores.
+                encolherSegmentos();
+                return false;
+            }
+            if (recebida_tipo != TIPO_PRANCHA_CONFIRMACAO) {
+                if (recebida_tipo != TIPO_PRANCHA_ABORTAR)
+                    enviarMensagemAbortar();
+                encolherSegmentos();
+                return false;
+            }
+            dados_enviados += tamanho;
+            contarConfirmacaoLimpa();
+        }
+        return true;
+    }
+
+    /**
+     * Envia os segmentos de dados no modo com janela deslizante. Até {@link #janela} segmentos
+     * numerados são enviados em sequência; o último deles pede à prancha uma confirmação, que traz o
+     * número do último segmento recebido em ordem. Os segmentos não confirmados são reenviados (volta
+     * até o primeiro segmento perdido) com os mesmos números, posições e tamanhos, pois a prancha pode
+     * tê-los recebido e perdido apenas a confirmação; o tamanho reduzido depois de uma perda só vale
+     * para os segmentos numerados depois dela.
+     * @return Se todos os segmentos foram confirmados.
+     */
+    private boolean enviarSegmentosJanela() {
+        // início e fim de cada segmento numerado e ainda não confirmado, em ordem de número.
+        int[] inicio_segmento = new int[janela];
+        int[] fim_segmento = new int[janela];
+        int em_voo = 0;
+        int base = 0;
+        int sequencia_base = 0;
+        int reenvios = 0;
+        while (base < dados_botao.length) {
+            dispararAvanco(base);
+
+            // numera novos segmentos até preencher a janela.
+            int fim = (em_voo == 0) ? base : fim_segmento[em_voo - 1];
+            while (fim < dados_botao.length && em_voo < janela) {
+                inicio_segmento[em_voo] = fim;
+                fim += Math.min(dados_por_vez, dados_botao.length - fim);
+                fim_segmento[em_voo ++] = fim;
+            }
+
+            // envia (ou reenvia) todos os segmentos não confirmados. O último pede a confirmação.
+            int rajada = 0;
+            for (int i = 0; i < em_voo; i ++) {
+                int tamanho = fim_segmento[i] - inicio_segmento[i];
+                enviarMensagemDadosJanela(sequencia_base + i, inicio_segmento[i], tamanho, i + 1 == em_voo);
+                if (comunicacao_falhou) return false;
+                rajada += tamanho;
+            }
+            descarregarEnvio();
+            if (comunicacao_falhou) return false;
+
+            // espera pela confirmação cumulativa.
+            if (! receberMensagem(ESPERA_MAXIMA_POR_RESPOSTA + tempoTransmissao(rajada))) {
+                // a prancha não respondeu. Reenvia a janela inteira. Ao desistir, avisa a prancha,
+                // que continua esperando pelos reenvios.
+                encolherSegmentos();
+                if (reenvios ++ == MAXIMO_REENVIOS) {
+                    enviarMensagemAbortar();
+                    return false;
+                }
+                comunicacao_falhou = false;
+                continue;
+            }
+            if (comunicacao_falhou) return false;
+            if (recebida_tipo != TIPO_PRANCHA_CONFIRMACAO || recebida_tamanho < 1) {
+                if (recebida_tipo != TIPO_PRANCHA_ABORTAR)
+                    enviarMensagemAbortar();
+                encolherSegmentos();
+                return false;
+            }
+
+            // avança a janela até o último segmento confirmado.
+            int confirmados = 0xFF & ((0xFF & recebida_dados[0]) - sequencia_base + 1);
+            if (confirmados > em_voo) confirmados = 0;
+            if (confirmados != 0) {
+                base = fim_segmento[confirmados - 1];
+                sequencia_base += confirmados;
+                em_voo -= confirmados;
+                System.arraycopy(inicio_segmento, confirmados, inicio_segmento, 0, em_voo);
+                System.arraycopy(fim_segmento, confirmados, fim_segmento, 0, em_voo);
+                reenvios = 0;
+            }
+            if (em_voo != 0) {
+                // algum segmento se perdeu; ele e os seguintes são reenviados na próxima rajada.
+                encolherSegmentos();
+                if (confirmados == 0 && reenvios ++ == MAXIMO_REENVIOS) {
+                    enviarMensagemAbortar();
+                    return false;
+                }
+            } else {
+                contarConfirmacaoLimpa();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reduz à metade o tamanho dos segmentos, depois de uma perda.
+     */
+    private void encolherSegmentos() {
+        dados_por_vez = Math.max(TAMANHO_SEGMENTO_MINIMO, dados_por_vez / 2);
+        confirmacoes_limpas = 0;
+    }
+
+    /**
+     * Conta uma confirmação sem perdas, dobrando o tamanho dos segmentos depois de várias seguidas.
+     */
+    private void contarConfirmacaoLimpa() {
+        if (++ confirmacoes_limpas == CONFIRMACOES_PARA_CRESCER) {
+            dados_por_vez = Math.min(TAMANHO_SEGMENTO_MAXIMO, dados_por_vez * 2);
+            confirmacoes_limpas = 0;
+        }
+    }
+
+    /**
+     * Estima o tempo que um determinado número de bytes leva para passar pela linha.
+     * @param bytes Número de bytes.
+     * @return Tempo estimado, em milissegundos.
+     */
+    private static int tempoTransmissao(int bytes) {
+        return (int) ((1000L * bytes) / BYTES_POR_SEGUNDO);
+    }
+
+    /**
+     * Tenta receber uma mensagem pelo comunicador. O cabeçalho é recebido de uma vez, e depois o
+     * corpo junto com o checksum. Depois do primeiro carácter, a mensagem é descartada se a linha
+     * ficar em silêncio por mais que a espera entre caracteres.
      * @param maximo Espera máxima pelo primeiro carácter da mensagem.
+     * @return Se algum carácter foi recebido dentro da espera máxima. Se for falso, nenhuma mensagem
+     * chegou; se for verdadeiro, a flag de falha indica se a mensagem foi recebida por inteiro.
      */
-    private void receberMensagem(int maximo) {
+    private boolean receberMensagem(int maximo) {
         int checksum = 0;
         int checksum_esperado = 0;
-        byte recebido;
-        try {
-            recebido = comunicador.receberByte(maximo);
-            recebida_tipo = 0xFF & recebido;
-            checksum = 0xFF & recebido;
-        } catch (Exception e) {
-            e.printStackTrace();
 
+        // recebe o tipo e o tamanho da mensagem (3 bytes).
+        ByteBuffer cabecalho = ByteBuffer.allocate(3);
+        long prazo = System.nanoTime() + 1000000L * (maximo + 2 * ESPERA_MAXIMA_ENTRE_CARACTERES);
+        int recebidos = receberContinuo(cabecalho, prazo);
+        if (recebidos == 0) {
             comunicacao_falhou = true;
-            return;
+            return false;
         }
         try {
-            recebido = comunicador.receberByte(ESPERA_MAXIMA_ENTRE_CARACTERES);
-            recebida_tamanho = 0x00FF & recebido;
-            checksum += 0xFF & recebido;
-            recebido = comunicador.receberByte(ESPERA_MAXIMA_ENTRE_CARACTERES);
-            recebida_tamanho |= 0xFF00 & (recebido << 8);
-            checksum += 0xFF & recebido;
-
+            if (recebidos < 3) throw new Exception("Cabeçalho incompleto.");
+            recebida_tipo = 0xFF & cabecalho.get(0);
+            // o tamanho e o checksum vêm com o byte mais significativo primeiro.
+            recebida_tamanho = 0xFFFF & cabecalho.getShort(1);
+            if (recebida_tamanho > TAMANHO_MAXIMO_RESPOSTA) throw new Exception("Tamanho de mensagem inválido.");
+            checksum = (0xFF & cabecalho.get(0)) + (0xFF & cabecalho.get(1)) + (0xFF & cabecalho.get(2));
+
+            // recebe o corpo e o checksum.
+            ByteBuffer resto = ByteBuffer.allocate(recebida_tamanho + 2);
+            prazo = System.nanoTime() + 1000000L * ESPERA_MAXIMA_ENTRE_CARACTERES;
+            if (receberContinuo(resto, prazo) < resto.capacity()) throw new Exception("Mensagem incompleta.");
+            recebida_dados = new byte[recebida_tamanho];
+            resto.flip();
+            resto.get(recebida_dados);
             for (int i = 0; i < recebida_tamanho; i ++)
-                checksum += 0xFF & comunicador.receberByte(ESPERA_MAXIMA_ENTRE_CARACTERES);
-
-            recebido = comunicador.receberByte(ESPERA_MAXIMA_ENTRE_CARACTERES);
-            checksum_esperado = 0xFF00 & (recebido << 8);
-            recebido = comunicador.receberByte(ESPERA_MAXIMA_ENTRE_CARACTERES);
-            checksum_esperado |= 0xFF00 & (recebido << 8);
+                checksum += 0xFF & recebida_dados[i];
+            checksum_esperado = 0xFFFF & resto.getShort();
 
-            /*if (checksum_esperado != checksum) {
-                System.out.println(checksum_esperado + " " + checksum);
-                throw new Exception();
-            }*/
+            if (checksum_esperado != (0xFFFF & checksum))
+                throw new Exception("Checksum inválido.");
         } catch (Exception e) {
             e.printStackTrace();
 
             enviarMensagemAbortar();
             comunicacao_falhou = true;
-            return;
         }
+        return true;
+    }
+
+    /**
+     * Recebe bytes pelo comunicador até encher um buffer. O prazo é renovado sempre que chegam bytes,
+     * de modo que a recepção só termina antes se a linha ficar em silêncio pela espera entre caracteres.
+     * @param destino Buffer a encher.
+     * @param prazo Prazo para a chegada dos primeiros bytes, na escala de {@link System#nanoTime()}.
+     * @return Número de bytes recebidos.
+     */
+    private int receberContinuo(ByteBuffer destino, long prazo) {
+        int total = 0;
+        while (destino.hasRemaining()) {
+            int recebidos = comunicador.receber(destino, prazo);
+            if (recebidos == 0) break;
+            total += recebidos;
+            prazo = System.nanoTime() + 1000000L * ESPERA_MAXIMA_ENTRE_CARACTERES;
+        }
+        return total;
+    }
+
+    /**
+     * Informa aos ouvintes quanto dos dados do botão já foi enviado.
+     * @param dados_enviados Número de bytes já enviados.
+     */
+    private void dispararAvanco(int dados_enviados) {
+        for (OuvinteThread ouvinte : ouvintes)
+            ouvinte.avancouExecucao(((double)dados_enviados)/dados_botao.length);
     }
 
     private void dispararTermino() {
@@ -289,11 +683,47 @@ public class ThreadProtocolo extends Thread {
         return enviou;
     }
 
+    /**
+     * Retorna o tamanho de segmento ao qual o envio chegou, para ser usado como tamanho inicial do
+     * próximo envio pelo mesmo canal.
+     * @return Tamanho dos segmentos de dados.
+     */
+    public int obterTamanhoSegmento() {
+        return dados_por_vez;
+    }
+
+    /**
+     * Define se deve ser negociada uma taxa de transmissão maior antes do envio. Deve ser chamado
+     * antes de a thread ser iniciada.
+     * @param negociar_taxa Se a taxa deve ser negociada.
+     */
+    public void definirNegociacaoTaxa(boolean negociar_taxa) {
+        this.negociar_taxa = negociar_taxa;
+    }
+
+    /**
+     * Retorna flag indicando se a prancha conhece a negociação de taxa de transmissão. É falso
+     * somente se a negociação foi tentada e a prancha a recusou.
+     * @return Flag indicando se a prancha negocia a taxa de transmissão.
+     */
+    public boolean pranchaNegociaTaxa() {
+        return prancha_negocia_taxa;
+    }
+
+    /**
+     * Retorna flag indicando se a prancha aceitou o modo com janela deslizante.
+     * @return Flag indicando se os dados foram enviados no modo com janela.
+     */
+    public boolean usouJanela() {
+        return usou_janela;
+    }
+
     /**
      * Tenta enviar uma mensagem de início de comunicação.
+     * @param versao Versão do protocolo proposta à prancha.
      */
-    private void enviarMensagemInicio() {
-        byte[] mensagem = criarMensagemInicio();
+    private void enviarMensagemInicio(int versao) {
+        byte[] mensagem = criarMensagemInicio(versao);
         try {
             comunicador.enviarDados(mensagem, 0, mensagem.length);
         } catch (Exception e) {
@@ -304,9 +734,10 @@ public class ThreadProtocolo extends Thread {
 
     /**
      * Cria uma mensagem de início de comunicação.
+     * @param versao Versão do protocolo proposta à prancha.
      * @return Vetor de bytes com a mensagem codificada.
      */
-    private byte[] criarMensagemInicio() {
+    private byte[] criarMensagemInicio(int versao) {
         int checksum = 0, i = 0;
         byte[] mensagem = new byte[7];
         // tipo da mensagem (1 byte)
@@ -317,7 +748,7 @@ public class ThreadProtocolo extends Thread {
         // número do botão (1 byte)
         mensagem[3] = (byte)(0x03 & numero_botao);
         // versão (1 byte)
-        mensagem[4] = 0x00;
+        mensagem[4] = (byte)versao;
         // checksum
         for (i = 0; i <= 4; i ++) checksum += 0xFF & mensagem[i];
         // checksum (2 bytes)
@@ -332,7 +763,83 @@ public class ThreadProtocolo extends Thread {
      * @param tamanho Tamanho dos dados a enviar.
      */
     private void enviarMensagemDados(int inicio, int tamanho) {
-        byte[] mensagem = criarMensagemDados(inicio, tamanho);
+        byte[] cabecalho = new byte[3];
+        // tipo da mensagem (1 byte)
+        cabecalho[0] = TIPO_PC_DADOS;
+        // tamanho da mensagem (2 bytes)
+        cabecalho[1] = (byte)(0xFF & (tamanho >> 8));
+        cabecalho[2] = (byte)(0xFF & tamanho);
+        enviarSegmento(cabecalho, inicio, tamanho);
+        descarregarEnvio();
+    }
+
+    /**
+     * Tenta enviar uma mensagem de segmento numerado (modo com janela). O corpo começa com o número
+     * de sequência do segmento (8 bits) e com os sinalizadores, seguidos dos dados. A mensagem pode
+     * ficar retida no comunicador até {@link #descarregarEnvio()}.
+     * @param sequencia Número de sequência do segmento.
+     * @param inicio Número do primeiro byte a enviar.
+     * @param tamanho Tamanho dos dados a enviar.
+     * @param pedir_confirmacao Se a prancha deve responder com uma confirmação.
+     */
+    private void enviarMensagemDadosJanela(int sequencia, int inicio, int tamanho, boolean pedir_confirmacao) {
+        byte[] cabecalho = new byte[5];
+        // tipo da mensagem (1 byte)
+        cabecalho[0] = (byte)TIPO_PC_DADOS_JANELA;
+        // tamanho da mensagem (2 bytes)
+        cabecalho[1] = (byte)(0xFF & ((tamanho + 2) >> 8));
+        cabecalho[2] = (byte)(0xFF & (tamanho + 2));
+        // número de sequência (1 byte)
+        cabecalho[3] = (byte)(0xFF & sequencia);
+        // sinalizadores (1 byte)
+        cabecalho[4] = (byte)(pedir_confirmacao ? SINAL_PEDIR_CONFIRMACAO : 0x00);
+        enviarSegmento(cabecalho, inicio, tamanho);
+    }
+
+    /**
+     * Tenta enviar um segmento dos dados do botão numa escrita agrupada: o cabeçalho, o trecho dos
+     * dados (sem cópia) e o checksum.
+     * @param cabecalho Cabeçalho da mensagem, com o tipo, o tamanho e o começo do corpo.
+     * @param inicio Número do primeiro byte a enviar.
+     * @param tamanho Tamanho dos dados a enviar.
+     */
+    private void enviarSegmento(byte[] cabecalho, int inicio, int tamanho) {
+        int checksum = 0, i = 0;
+        for (i = 0; i < cabecalho.length; i ++) checksum += 0xFF & cabecalho[i];
+        for (i = inicio; i < inicio + tamanho; i ++) checksum += 0xFF & dados_botao[i];
+        // checksum (2 bytes)
+        byte[] rodape = { (byte)(0xFF & (checksum >> 8)), (byte)(0xFF & checksum) };
+        try {
+            comunicador.enviar(new ByteBuffer[] {
+                ByteBuffer.wrap(cabecalho),
+                ByteBuffer.wrap(dados_botao, inicio, tamanho),
+                ByteBuffer.wrap(rodape)
+            });
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            comunicacao_falhou = true;
+        }
+    }
+
+    /**
+     * Termina o envio das mensagens retidas no comunicador.
+     */
+    private void descarregarEnvio() {
+        try {
+            comunicador.descarregar();
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            comunicacao_falhou = true;
+        }
+    }
+
+    /**
+     * Tenta enviar uma mensagem com um corpo curto qualquer.
+     * @param tipo Tipo da mensagem.
+     * @param corpo Corpo da mensagem.
+     */
+    private void enviarMensagemSimples(int tipo, byte[] corpo) {
+        byte[] mensagem = criarMensagemSimples(tipo, corpo);
         try {
             comunicador.enviarDados(mensagem, 0, mensagem.length);
         } catch (Exception e) {
@@ -342,25 +849,23 @@ public class ThreadProtocolo extends Thread {
     }
 
     /**
-     * Cria uma mensagem de envio de bloco de dados.
+     * Cria uma mensagem com um corpo curto qualquer.
+     * @param tipo Tipo da mensagem.
+     * @param corpo Corpo da mensagem.
      * @return Vetor de bytes com a mensagem codificada.
      */
-    private byte[] criarMensagemDados(int inicio, int tamanho) {
+    private byte[] criarMensagemSimples(int tipo, byte[] corpo) {
         int checksum = 0, i = 0;
-        if (dados_botao.length - inicio < tamanho) tamanho = dados_botao.length - inicio;
-        byte[] mensagem = new byte[3 + tamanho + 2];
+        byte[] mensagem = new byte[3 + corpo.length + 2];
         // tipo da mensagem (1 byte)
-        mensagem[0] = TIPO_PC_DADOS;
+        mensagem[0] = (byte)tipo;
         // tamanho da mensagem (2 bytes)
-        mensagem[1] = (byte)(0xFF & (tamanho >> 8));
-        mensagem[2] = (byte)(0xFF & tamanho);
-        checksum = (0xFF & mensagem[0]) + (0xFF & mensagem[1]) + (0xFF & mensagem[2]);
-        // número do botão (1 byte)
-        for (i = 0; i < tamanho; i ++) {
-            mensagem[3 + i] = dados_botao[i + inicio];
-            checksum += 0xFF & mensagem[i + 3];
-        }
+        mensagem[1] = (byte)(0xFF & (corpo.length >> 8));
+        mensagem[2] = (byte)(0xFF & corpo.length);
+        // corpo
+        System.arraycopy(corpo, 0, mensagem, 3, corpo.length);
         // checksum (2 bytes)
+        for (i = 0; i < mensagem.length - 2; i ++) checksum += 0xFF & mensagem[i];
         mensagem[mensagem.length - 2] = (byte)(0xFF & (checksum >> 8));
         mensagem[mensagem.length - 1] = (byte)(0xFF & checksum);
         return mensagem;
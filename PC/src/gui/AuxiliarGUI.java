@@ -156,18 +156,33 @@ class AuxiliarGUI {
 
         if (fluxo != null) fluxo.println("## ICONE ## (x0, y0)-(x1,y1) = (" + x0 + ", " + y0 + ")-(" + x1 + ", " + y1 + ")");
 
-        // desenha o gráfico, pixel a pixel.
-        for (int x = 0; x < largura; x ++) for (int y = 0; y < altura; y ++) {
-            if (x >= x0 && x < x1 && y >= y0 && y < y1) {
-                // determina quais amostras nessa posição.
-                int grade_x = ((x - x0) * 8) / (x1 - x0);
+        // obtém a grade empacotada do ícone (um byte por linha).
+        long grade = icone.obterGrade();
+
+        // determina a coluna da grade relativa a cada posição horizontal (-1 se fora do ícone).
+        int[] colunas = new int[largura];
+        for (int x = 0; x < largura; x ++)
+            colunas[x] = (x >= x0 && x < x1) ? ((x - x0) * 8) / (x1 - x0) : -1;
+
+        // desenha o gráfico, linha a linha.
+        int[] pixels = new int[largura];
+        for (int y = 0; y < altura; y ++) {
+            if (y >= y0 && y < y1) {
+                // obtém a linha da grade nessa posição.
                 int grade_y = ((y - y0) * 8) / (y1 - y0);
-
-                // define o pixel.
-                imagem.setRGB(x, y, icone.obterCelula(grade_x, grade_y) ? cor_sim : cor_nao);
+                int linha = (int) (grade >>> (grade_y << 3)) & 0xFF;
+
+                // define os pixels da linha.
+                for (int x = 0; x < largura; x ++) {
+                    int grade_x = colunas[x];
+                    if (grade_x < 0) pixels[x] = cor_fora;
+                    else pixels[x] = ((linha >> grade_x) & 1) != 0 ? cor_sim : cor_nao;
+                }
             } else {
-                imagem.setRGB(x, y, cor_fora);
+                for (int x = 0; x < largura; x ++)
+                    pixels[x] = cor_fora;
             }
+            imagem.setRGB(0, y, largura, 1, pixels, 0, largura);
         }
 
         return imagem;
@@ -184,6 +184,79 @@ public class CmpBibliotecaBotoes extends JComponent implements Scrollable {
         };
     }
 
+    /**
+     * Inclui na biblioteca um botão que já existe fora dela (por exemplo, um arquivo que apareceu na pasta
+     * de botões). Não dispara o evento de botão adicionado.
+     * @param botao Botão a incluir.
+     */
+    public void incluirBotao(Botao botao) {
+        if (botao != null) {
+            CmpMiniaturaBotao novo = new CmpMiniaturaBotao(botao);
+            novo.addMouseListener(ouvinte_botoes);
+            cmp_botoes.add(novo);
+            add(novo);
+            revalidate();
+            repaint();
+        }
+    }
+
+    /**
+     * Substitui um botão da biblioteca por outro, na mesma posição (por exemplo, porque seu arquivo foi
+     * alterado fora do software). Se o botão estava selecionado, ele é desselecionado. Não dispara os
+     * eventos de botão adicionado ou removido.
+     * @param antigo Botão a substituir.
+     * @param novo Novo botão.
+     */
+    public void substituirBotao(Botao antigo, Botao novo) {
+        int indice = procurarMiniatura(antigo);
+        if (indice < 0 || novo == null) return;
+        desselecionarMiniatura(cmp_botoes.get(indice));
+        remove(cmp_botoes.get(indice));
+        CmpMiniaturaBotao miniatura = new CmpMiniaturaBotao(novo);
+        miniatura.addMouseListener(ouvinte_botoes);
+        cmp_botoes.set(indice, miniatura);
+        add(miniatura, indice);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Exclui um botão da biblioteca (por exemplo, porque seu arquivo foi apagado fora do software). Se o
+     * botão estava selecionado, ele é desselecionado. Não dispara o evento de botão removido.
+     * @param botao Botão a excluir.
+     */
+    public void excluirBotao(Botao botao) {
+        int indice = procurarMiniatura(botao);
+        if (indice < 0) return;
+        desselecionarMiniatura(cmp_botoes.get(indice));
+        remove(cmp_botoes.remove(indice));
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Procura a miniatura de um botão.
+     * @param botao Botão.
+     * @return Índice da miniatura, ou -1 se o botão não estiver na biblioteca.
+     */
+    private int procurarMiniatura(Botao botao) {
+        for (int i = 0; i < cmp_botoes.size(); i ++)
+            if (cmp_botoes.get(i).obterBotao() == botao) return i;
+        return -1;
+    }
+
+    /**
+     * Desseleciona uma miniatura, se ela estiver selecionada.
+     * @param miniatura Miniatura.
+     */
+    private void desselecionarMiniatura(CmpMiniaturaBotao miniatura) {
+        if (selecionado != miniatura) return;
+        selecionado.selecionar(false);
+        selecionado = null;
+        for (OuvinteConjuntoBotoes ouvinte : ouvintes_evento)
+            ouvinte.botaoDesselecionado(miniatura.obterBotao());
+    }
+
     /**
      * Obtém o botão selecionado.
      * @return Botão selecionado.
@@ -35,7 +35,9 @@ import java.awt.event.*;
 import javax.swing.*;
 
 /**
- * Componente gráfico que mostra a forma de uma onda sonora e um seletor deslizante.
+ * Componente gráfico que mostra a forma de uma onda sonora e um seletor deslizante. O componente também
+ * pode mostrar uma janela de uma fonte de som longa: nesse caso, apenas o trecho da janela é decodificado,
+ * e uma faixa na parte de baixo mostra a visão geral do som inteiro, com a qual a janela é movida.
  * @author Felipe Michels Fontoura
  */
 @SuppressWarnings("serial")
@@ -60,6 +62,11 @@ public class CmpEditorSom extends JComponent {
      */
     private static final int SOBRE_MEIO_SELETOR = 3;
 
+    /**
+     * Constante indicando que o mouse está sobre a visão geral da fonte de som.
+     */
+    private static final int SOBRE_VISAO_GERAL = 4;
+
     /**
      * Constante simbólica do estado de espera.
      */
@@ -80,6 +87,16 @@ public class CmpEditorSom extends JComponent {
      */
     private static final int ESTADO_MOVENDO_SELETOR = 3;
 
+    /**
+     * Constante indicando que a janela está sendo movida na visão geral.
+     */
+    private static final int ESTADO_MOVENDO_JANELA = 4;
+
+    /**
+     * Altura da faixa da visão geral da fonte de som.
+     */
+    private static final int ALTURA_VISAO_GERAL = 12;
+
     /**
      * Estado atual do componente.
      */
@@ -130,6 +147,21 @@ public class CmpEditorSom extends JComponent {
      */
     private int amostras_maximas_seletor;
 
+    /**
+     * Fonte de som longa cuja janela é mostrada. Se for nula, o som inteiro é mostrado.
+     */
+    private FonteSom fonte;
+
+    /**
+     * Amostra da fonte de som em que a janela começa.
+     */
+    private int inicio_janela;
+
+    /**
+     * Amostra da fonte de som em que a janela vai começar, enquanto ela é movida.
+     */
+    private int inicio_janela_proposto;
+
     /**
      * Constrói um novo componente editor de onda sonora.
      * @param som Descritor de som para inicializar esse componente. Pode ser <b>null</b>.
@@ -162,6 +194,70 @@ public class CmpEditorSom extends JComponent {
      * @param som Descritor de som para associar a esse componente. Pode ser <b>null</b>.
      */
     public void definirSom(Som som) {
+        fonte = null;
+        definirSomJanela(som);
+    }
+
+    /**
+     * Define uma fonte de som longa associada a esse componente. A janela começa no início da fonte.
+     * @param fonte Fonte de som.
+     */
+    public void definirFonte(FonteSom fonte) {
+        this.fonte = fonte;
+        carregarJanela(0);
+    }
+
+    /**
+     * Obtém a amostra da fonte de som em que a janela começaria, se fosse centralizada numa posição
+     * horizontal da visão geral.
+     * @param x Posição horizontal.
+     * @return Amostra inicial da janela.
+     */
+    private int janelaCentradaEm(int x) {
+        int total = fonte.contagemAmostras();
+        int tamanho = Math.min(Som.SOM_MAX_AMOSTRAS, total);
+        int centro = (int) (((long) x * total) / Math.max(1, getWidth()));
+        return Math.max(0, Math.min(total - tamanho, centro - tamanho / 2));
+    }
+
+    /**
+     * Decodifica a janela da fonte de som que começa numa amostra e a mostra no componente.
+     * @param inicio Amostra inicial da janela.
+     */
+    private void carregarJanela(int inicio) {
+        int tamanho = Math.min(Som.SOM_MAX_AMOSTRAS, fonte.contagemAmostras());
+        try {
+            Som trecho = fonte.lerTrecho(inicio, tamanho);
+            inicio_janela = inicio;
+            inicio_janela_proposto = inicio;
+            definirSomJanela(trecho);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ "Não foi possível ler o trecho do arquivo de áudio.",
+              /*           título: */ "Erro!",
+              /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+            );
+            e.printStackTrace();
+            inicio_janela_proposto = inicio_janela;
+            repaint();
+        }
+    }
+
+    /**
+     * Obtém a altura da área da forma de onda.
+     * @return Altura da área da forma de onda.
+     */
+    private int alturaOnda() {
+        if (fonte == null) return getHeight();
+        return Math.max(1, getHeight() - ALTURA_VISAO_GERAL);
+    }
+
+    /**
+     * Define o som mostrado na área da forma de onda.
+     * @param som Descritor de som. Pode ser <b>null</b>.
+     */
+    private void definirSomJanela(Som som) {
         // define o som associado a esse componente.
         if (som == null) som = new Som();
         this.som = som;
@@ -178,7 +274,7 @@ public class CmpEditorSom extends JComponent {
         // atualiza a imagem de onda.
         imagem_onda = AuxiliarGUI.desenharOndaSonora(
           /* largura da imagem: */ getWidth(),
-          /*  altura da imagem: */ getHeight(),
+          /*  altura da imagem: */ alturaOnda(),
           /*  descritor de som:*/ som
         );
 
@@ -186,6 +282,18 @@ public class CmpEditorSom extends JComponent {
         repaint();
     }
 
+    /**
+     * Move o seletor para o trecho do som sem o silêncio do início e do fim. Se o trecho for maior que o
+     * tamanho máximo do seletor, o seletor começa no início do trecho.
+     */
+    public void selecionarSemSilencio() {
+        int[] trecho = DetectorSilencio.calcularTrecho(som);
+        if (trecho[1] < 2) return;
+        amostra_inicial_seletor = trecho[0];
+        amostra_final_seletor = trecho[0] + Math.min(trecho[1], amostras_maximas_seletor) - 1;
+        repaint();
+    }
+
     /**
      * Obtém todo o som associado a esse componente.
      * @return Descritor de todo o som associado a esse componente.
@@ -239,10 +347,10 @@ public class CmpEditorSom extends JComponent {
         super.paint(g);
 
         int largura = getWidth();
-        int altura = getHeight();
+        int altura = alturaOnda();
 
         // se necessário, atualiza a imagem com a forma de onda.
-        if (largura !=  imagem_onda.getWidth() || altura != imagem_onda.getHeight())
+        if (largura != imagem_onda.getWidth() || altura != imagem_onda.getHeight())
             imagem_onda = AuxiliarGUI.desenharOndaSonora(
               /* largura da imagem: */ largura,
               /*  altura da imagem: */ altura,
@@ -265,6 +373,50 @@ public class CmpEditorSom extends JComponent {
         g.fillRect(x_inicial_seletor, 0, x_final_seletor - x_inicial_seletor, altura);
         g.setColor(borda_seletor);
         g.drawRect(x_inicial_seletor, 0, x_final_seletor - x_inicial_seletor, altura - 1);
+
+        // desenha a visão geral da fonte de som.
+        if (fonte != null) desenharVisaoGeral(g, largura, altura);
+    }
+
+    /**
+     * Desenha a visão geral da fonte de som, com a janela atual destacada, abaixo da forma de onda.
+     * @param g Contexto gráfico de destino.
+     * @param largura Largura do componente.
+     * @param topo Posição vertical do topo da visão geral.
+     */
+    private void desenharVisaoGeral(Graphics g, int largura, int topo) {
+        byte[] minimos = fonte.obterMinimosVisaoGeral();
+        byte[] maximos = fonte.obterMaximosVisaoGeral();
+
+        // desenha o fundo.
+        g.setColor(Color.BLACK);
+        g.fillRect(0, topo, largura, ALTURA_VISAO_GERAL);
+
+        // desenha a onda, coluna a coluna.
+        g.setColor(Color.GREEN);
+        for (int x = 0; x < largura && minimos.length > 0; x ++) {
+            int primeira = (int) (((long) x * minimos.length) / largura);
+            int ultima = Math.max(primeira + 1, (int) (((long) (x + 1) * minimos.length) / largura));
+            int valor_minimo = minimos[primeira];
+            int valor_maximo = maximos[primeira];
+            for (int i = primeira + 1; i < ultima && i < minimos.length; i ++) {
+                valor_minimo = Math.min(valor_minimo, minimos[i]);
+                valor_maximo = Math.max(valor_maximo, maximos[i]);
+            }
+            int y_minimo = topo + ((ALTURA_VISAO_GERAL - 1) * (128 - valor_minimo)) / 256;
+            int y_maximo = topo + ((ALTURA_VISAO_GERAL - 1) * (128 - valor_maximo)) / 256;
+            g.drawLine(x, y_maximo, x, y_minimo);
+        }
+
+        // destaca a janela.
+        int total = Math.max(1, fonte.contagemAmostras());
+        int inicio = estado == ESTADO_MOVENDO_JANELA ? inicio_janela_proposto : inicio_janela;
+        int x_inicio = (int) (((long) inicio * largura) / total);
+        int x_final = (int) (((long) (inicio + som.contagemAmostras()) * largura) / total);
+        g.setColor(new Color(255, 255, 255, 96));
+        g.fillRect(x_inicio, topo, Math.max(1, x_final - x_inicio), ALTURA_VISAO_GERAL);
+        g.setColor(Color.WHITE);
+        g.drawRect(x_inicio, topo, Math.max(1, x_final - x_inicio) - 1, ALTURA_VISAO_GERAL - 1);
     }
 
     /**
@@ -274,6 +426,9 @@ public class CmpEditorSom extends JComponent {
      * @return Constante de sobreposição indicando sobre qual parte do componente essa posição está.
      */
     private int obterSobre(int posicao_x, int posicao_y) {
+        // verifica se está sobre a visão geral.
+        if (fonte != null && posicao_y >= alturaOnda()) return SOBRE_VISAO_GERAL;
+
         int dist_inicio_seletor = posicao_x - x_inicial_seletor;
         int dist_final_seletor = x_final_seletor - posicao_x;
 
@@ -313,7 +468,13 @@ public class CmpEditorSom extends JComponent {
         if (isEnabled()) {
             // o componente está habilitado.
 
-            if (estado != ESTADO_ESPERA) {
+            if (estado == ESTADO_MOVENDO_JANELA) {
+                // terminou de mover a janela; decodifica o trecho novo.
+                setCursor(Cursor.getDefaultCursor());
+                estado = ESTADO_ESPERA;
+                if (inicio_janela_proposto != inicio_janela) carregarJanela(inicio_janela_proposto);
+                else repaint();
+            } else if (estado != ESTADO_ESPERA) {
                 // termina qualquer atividade diferente da espera.
                 setCursor(Cursor.getDefaultCursor());
                 estado = ESTADO_ESPERA;
@@ -350,6 +511,12 @@ public class CmpEditorSom extends JComponent {
                     // está sobre o final do seletor, começa a arrastá-lo.
                     setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
                     estado = ESTADO_MOVENDO_FINAL_SELETOR;
+                } else if (sobre == SOBRE_VISAO_GERAL) {
+                    // está sobre a visão geral, começa a mover a janela.
+                    setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+                    estado = ESTADO_MOVENDO_JANELA;
+                    inicio_janela_proposto = janelaCentradaEm(mouse_x);
+                    repaint();
                 } else {
                     setCursor(Cursor.getDefaultCursor());
                 }
@@ -384,6 +551,8 @@ public class CmpEditorSom extends JComponent {
                     setCursor(Cursor.getPredefinedCursor(Cursor.W_RESIZE_CURSOR));
                 else if (sobre == SOBRE_FINAL_SELETOR) // está sobre o final do seletor.
                     setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
+                else if (sobre == SOBRE_VISAO_GERAL) // está sobre a visão geral.
+                    setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
                 else setCursor(Cursor.getDefaultCursor());
             } else {
                 // não deve chegar nesse ponto.
@@ -416,6 +585,8 @@ public class CmpEditorSom extends JComponent {
                     setCursor(Cursor.getPredefinedCursor(Cursor.W_RESIZE_CURSOR));
                 else if (sobre == SOBRE_FINAL_SELETOR) // está sobre o final do seletor.
                     setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
+                else if (sobre == SOBRE_VISAO_GERAL) // está sobre a visão geral.
+                    setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
                 else setCursor(Cursor.getDefaultCursor());
             } else if (estado == ESTADO_MOVENDO_INICIO_SELETOR) {
                 // verifica qual deve ser a nova amostra inicial.
@@ -461,6 +632,11 @@ public class CmpEditorSom extends JComponent {
                 // redesenha a tela.
                 setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
                 repaint();
+            } else if (estado == ESTADO_MOVENDO_JANELA) {
+                // move a janela proposta; o trecho só é decodificado quando o mouse for solto.
+                inicio_janela_proposto = janelaCentradaEm(mouse_x);
+                setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+                repaint();
             } else if (estado == ESTADO_MOVENDO_SELETOR) {
                 // verifica qual a variação de amostra.
                 int variacao_amostra = posicaoParaAmostra(mouse_x) - posicaoParaAmostra(mouse_x_anterior);
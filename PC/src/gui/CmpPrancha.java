@@ -40,13 +40,11 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 
+import java.io.IOException;
+
 import java.util.List;
 import java.util.Vector;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-
 /**
  * Componente que exibe uma biblioteca de botões selecionáveis, com 4 colunas.
  * @author Felipe Michels Fontoura
@@ -195,10 +193,11 @@ public class CmpPrancha extends JComponent implements Scrollable {
     }
 
     /**
-     * Adiciona um botão à prancha.
+     * Adiciona uma cópia de um botão à prancha.
      * @param botao Botão a adicionar.
+     * @throws IOException Caso o som do botão não possa ser lido.
      */
-    public void adicionarBotao(Botao botao) {
+    public void adicionarBotao(Botao botao) throws IOException {
         if (botao != null && contagem_botoes < 4) {
             Botao botao_novo = new Botao(botao);
             cmp_botoes[contagem_botoes].definirBotao(botao_novo);
@@ -250,131 +249,31 @@ public class CmpPrancha extends JComponent implements Scrollable {
     }
 
     /**
-     * Grava esse modelo de prancha num arquivo.
-     * @param destino Arquivo de destino.
-     * @return Se a gravação foi bem-sucedida ou não.
+     * Substitui todos os botões dessa prancha (por exemplo, por botões lidos de um arquivo). O botão
+     * selecionado é desselecionado, sem disparar eventos.
+     * @param botoes Novos botões (no máximo 4).
      */
-    public boolean gravarArquivo(File destino) {
-        // cria o fluxo de saída de arquivo.
-        FileOutputStream fluxo = null;
-
-        // a princípio, foi bem-sucedido.
-        boolean sucesso = true;
-
-        try {
-            // abre o arquivo.
-            fluxo = new FileOutputStream(destino);
-
-            // escreve a versão (cstring).
-            byte[] versao = new byte[] { 'F', 'I', 'P', '1', '.', '0', 0 };
-            fluxo.write(versao);
-
-            // escreve a contagem de botões.
-            fluxo.write(contagem_botoes);
-
-            // escreve os botões.
-            for (int i = 0; i < contagem_botoes; i ++)
-                cmp_botoes[i].obterBotao().escreverBotao(fluxo);
-        } catch (Exception e) {
-            // houve uma falha
-            sucesso = false;
-        }
-
-        // tenta fechar o arquivo.
-        try {
-            if (fluxo != null)
-                fluxo.close();
-        } catch (Exception e) {}
-
-        // retorna se foi bem sucedido ou não.
-        return sucesso;
-    }
+    public void definirBotoes(Botao[] botoes) {
+        // desseleciona o botão selecionado.
+        if (selecionado != 4)
+            cmp_botoes[selecionado].selecionar(false);
+        selecionado = 4;
 
-    /**
-     * Abre um modelo de prancha de um arquivo.
-     * @param origem Arquivo a abrir.
-     * @return Se a abertura do arquivo ocorreu com sucesso.
-     */
-    public boolean abrirArquivo(File origem) {
-        // cria uma vetor de botões
-        Botao[] botoes = new Botao[4];
-        for (int i = 0; i < botoes.length; i ++)
-            botoes[i] = null;
-
-        // cria um fluxo de entrada de arquivo.
-        FileInputStream fluxo = null;
-
-        // a princípio, foi bem-sucedido.
-        boolean sucesso = true;
-
-        try {
-            // abre o arquivo.
-            fluxo = new FileInputStream(origem);
-
-            // lê a versão (cstring).
-            byte[] versao = new byte[7];
-            int lidos = fluxo.read(versao);
-            if (lidos < 7) {
-                sucesso = false;
+        // atualiza os botões na tela.
+        contagem_botoes = Math.min(botoes.length, 4);
+        for (int i = 0; i < 4; i ++) {
+            if (i < contagem_botoes && botoes[i] != null) {
+                cmp_botoes[i].definirBotao(botoes[i]);
+                cmp_botoes[i].setVisible(true);
+                cmp_botoes[i].setEnabled(true);
+                cmp_botoes[i].repaint();
             } else {
-                if (versao[0] != 'F' || versao[1] != 'I' || versao[2] != 'P'
-                 || versao[3] != '1' || versao[4] != '.' || versao[5] != '0'
-                 || versao[6] != 0) {
-                    sucesso = false;
-                }
+                cmp_botoes[i].setVisible(false);
+                cmp_botoes[i].setEnabled(false);
             }
-
-            // se a versão for correta, continua.
-            if (sucesso) {
-                // lê a contagem de botões.
-                int contagem = fluxo.read();
-
-                if (contagem >= 0 && contagem <= 4) {
-                    // conta quantos botões leu.
-                    lidos = 0;
-
-                    // lê os botões.
-                    for (int i = 0; i < contagem; i ++) {
-                        Botao botao = Botao.lerBotao(fluxo);
-                        if (botao != null) {
-                            botoes[lidos] = botao;
-                            lidos ++;
-                        }
-                    }
-
-                    // desseleciona o botão selecionado.
-                    if (selecionado != 4)
-                        cmp_botoes[selecionado].selecionar(false);
-                    selecionado = 4;
-
-                    // atualiza os botões na tela.
-                    contagem_botoes = lidos;
-                    for (int i = 0; i < 4; i ++) {
-                        if (botoes[i] != null) {
-                            cmp_botoes[i].definirBotao(botoes[i]);
-                            cmp_botoes[i].setVisible(true);
-                            cmp_botoes[i].setEnabled(true);
-                            cmp_botoes[i].repaint();
-                        } else {
-                            cmp_botoes[i].setVisible(false);
-                            cmp_botoes[i].setEnabled(false);
-                        }
-                    }
-                } else sucesso = false;
-            }
-        } catch (Exception e) {
-            // houve uma falha.
-            sucesso = false;
         }
-
-        // tenta fechar o arquivo.
-        try {
-            if (fluxo != null)
-                fluxo.close();
-        } catch (Exception e) {}
-
-        // retorna se foi bem sucedido ou não.
-        return sucesso;
+        revalidate();
+        repaint();
     }
 
     /**
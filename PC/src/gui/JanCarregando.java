@@ -26,17 +26,34 @@ OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMA
 
 package gui;
 
+import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
 import javax.swing.border.EmptyBorder;
 
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ActionListener;
+
 /**
  * Janela de carregamento.
  * @author Felipe Michels Fontoura
  */
 @SuppressWarnings("serial")
 public class JanCarregando extends JDialog {
+    /**
+     * Componente com a barra de progresso.
+     */
+    private JProgressBar barra_progresso;
+
+    /**
+     * Painel com os conteúdos da janela.
+     */
+    private JPanel painel;
+
     /**
      * Cria uma nova janela de carregamento.
      */
@@ -48,20 +65,78 @@ public class JanCarregando extends JDialog {
         setResizable(false);
         setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
         pack();
-        JPanel painel = new JPanel();
+        painel = new JPanel();
         painel.setBorder(new EmptyBorder(5, 5, 5, 5));
         JLabel label = new JLabel(mensagem);
-        painel.add(label);
+        barra_progresso = new JProgressBar(0, 1);
+        barra_progresso.setIndeterminate(true);
+        barra_progresso.setStringPainted(true);
+        barra_progresso.setString("");
+
+        GridBagLayout gbl_painel = new GridBagLayout();
+        gbl_painel.columnWidths = new int[]{0, 0};
+        gbl_painel.rowHeights = new int[]{0, 0, 0, 0};
+        gbl_painel.columnWeights = new double[]{1.0, Double.MIN_VALUE};
+        gbl_painel.rowWeights = new double[]{0.0, 0.0, 0.0, Double.MIN_VALUE};
+        painel.setLayout(gbl_painel);
+
+        GridBagConstraints gbc_label = new GridBagConstraints();
+        gbc_label.insets = new Insets(0, 0, 5, 0);
+        gbc_label.gridx = 0;
+        gbc_label.gridy = 0;
+        painel.add(label, gbc_label);
+
+        GridBagConstraints gbc_barra_progresso = new GridBagConstraints();
+        gbc_barra_progresso.fill = GridBagConstraints.BOTH;
+        gbc_barra_progresso.gridx = 0;
+        gbc_barra_progresso.gridy = 1;
+        painel.add(barra_progresso, gbc_barra_progresso);
 
         // define o tamanho da janela.
+        ajustarTamanho();
+
+        // adiciona os conteúdos à janela.
+        setContentPane(painel);
+    }
+
+    /**
+     * Ajusta o tamanho da janela aos seus conteúdos.
+     */
+    private void ajustarTamanho() {
         setBounds(
           /*       x: */ 100,
           /*       y: */ 100,
           /* largura: */ getInsets().left + painel.getPreferredSize().width + getInsets().right,
           /*   altura:*/ getInsets().top + painel.getPreferredSize().height + getInsets().bottom
         );
+    }
 
-        // adiciona os conteúdos à janela.
-        setContentPane(painel);
+    /**
+     * Adiciona à janela um botão de cancelar.
+     * @param ouvinte Ouvinte do botão de cancelar.
+     */
+    public void adicionarCancelamento(ActionListener ouvinte) {
+        JButton btn_cancelar = new JButton("Cancelar");
+        btn_cancelar.addActionListener(ouvinte);
+
+        GridBagConstraints gbc_btn_cancelar = new GridBagConstraints();
+        gbc_btn_cancelar.insets = new Insets(5, 0, 0, 0);
+        gbc_btn_cancelar.gridx = 0;
+        gbc_btn_cancelar.gridy = 2;
+        painel.add(btn_cancelar, gbc_btn_cancelar);
+
+        ajustarTamanho();
+    }
+
+    /**
+     * Atualiza o progresso do carregamento. Deve ser chamado na thread de eventos.
+     * @param lidos Número de itens já carregados.
+     * @param total Número total de itens a carregar.
+     */
+    public void definirProgresso(int lidos, int total) {
+        barra_progresso.setIndeterminate(false);
+        barra_progresso.setMaximum(Math.max(total, 1));
+        barra_progresso.setValue(lidos);
+        barra_progresso.setString(lidos + " de " + total + " botões");
     }
 }
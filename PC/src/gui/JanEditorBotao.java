@@ -158,6 +158,11 @@ public class JanEditorBotao extends JDialog {
      */
     private JButton btn_exportarSom;
 
+    /**
+     * Componente do botão de cortar o silêncio do som.
+     */
+    private JButton btn_cortarSilencio;
+
     /**
      * Componente do painel que contém os botões relativos ao botão como um todo.
      */
@@ -197,8 +202,9 @@ public class JanEditorBotao extends JDialog {
      * Cria uma janela de edição de botão.
      * @param botao Botão a associar a essa janela.
      * @param pai Janela-pai dessa janela de edição de botão.
+     * @throws IOException Caso o som do botão não possa ser lido.
      */
-    public JanEditorBotao(Botao botao, JFrame pai) {
+    public JanEditorBotao(Botao botao, JFrame pai) throws IOException {
         super(pai, true);
 
         // registra que o botão ainda não foi alterado.
@@ -224,7 +230,7 @@ public class JanEditorBotao extends JDialog {
         };
 
         // constrói os componentes e a estrutura da janela.
-        inserirComponentes();
+        inserirComponentes(botao.obterSom());
 
         // adiciona o ouvinte de eventos de janela.
         addWindowListener(new WindowListener() {
@@ -268,6 +274,7 @@ public class JanEditorBotao extends JDialog {
         btn_ouvir.setEnabled(false);
         btn_importarSom.setEnabled(false);
         btn_exportarSom.setEnabled(false);
+        btn_cortarSilencio.setEnabled(false);
         btn_cancelar.setEnabled(false);
         btn_salvar.setEnabled(false);
 
@@ -290,6 +297,7 @@ public class JanEditorBotao extends JDialog {
         btn_ouvir.setEnabled(true);
         btn_importarSom.setEnabled(true);
         btn_exportarSom.setEnabled(true);
+        btn_cortarSilencio.setEnabled(true);
         btn_cancelar.setEnabled(true);
         btn_salvar.setEnabled(true);
 
@@ -330,6 +338,7 @@ public class JanEditorBotao extends JDialog {
                 btn_ouvir.setEnabled(false);
                 btn_importarSom.setEnabled(false);
                 btn_exportarSom.setEnabled(false);
+                btn_cortarSilencio.setEnabled(false);
                 btn_cancelar.setEnabled(false);
                 btn_salvar.setEnabled(false);
 
@@ -366,6 +375,7 @@ public class JanEditorBotao extends JDialog {
         btn_ouvir.setEnabled(true);
         btn_importarSom.setEnabled(true);
         btn_exportarSom.setEnabled(true);
+        btn_cortarSilencio.setEnabled(true);
         btn_cancelar.setEnabled(true);
         btn_salvar.setEnabled(true);
         btn_gravar_parar.setText("Gravar");
@@ -596,46 +606,89 @@ public class JanEditorBotao extends JDialog {
         int resultado = seletor_arquivo.showDialog(this, "Abrir");
 
         // verifica se foi selecionada a opção de "abrir".
-        if (resultado == JFileChooser.APPROVE_OPTION) {
-            try {
-                // tenta importar o som do arquivo.
-                Som importado = Som.importarArquivo(seletor_arquivo.getSelectedFile());
-
-                if (importado == null) {
-                    // não foi possível converter a imagem em ícone.
-                    JOptionPane.showMessageDialog(
-                      /*   componente-pai: */ this,
-                      /*         mensagem: */ "Não foi possível importar o som.",
-                      /*           título: */ "Erro!",
-                      /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
-                    );
-                } else{
-                    // foi possível converter a imagem em ícone.
-                    cmp_editorSom.definirSom(importado);
-
-                    // salva que o ícone foi alterado.
-                    alterado = true;
+        if (resultado != JFileChooser.APPROVE_OPTION) return;
+
+        // mostra a janela de carregamento enquanto o arquivo é decodificado.
+        final File arquivo = seletor_arquivo.getSelectedFile();
+        final JanCarregando janela_carregando = new JanCarregando("Lendo o arquivo de áudio " + arquivo.getName());
+        janela_carregando.setTitle("FunIconGUI - Importando som");
+        janela_carregando.setModalityType(Dialog.ModalityType.APPLICATION_MODAL);
+        janela_carregando.setLocationRelativeTo(this);
+
+        // decodifica o arquivo (e monta a visão geral do som) numa thread própria; o resultado é repassado à
+        // thread de eventos, que fecha a janela de carregamento.
+        new Thread("Importação de som") {
+            @Override public void run() {
+                FonteSom fonte = null;
+                Som som = null;
+                Exception erro = null;
+                try {
+                    // abre o arquivo como fonte de som.
+                    fonte = new FonteSom(arquivo);
+
+                    // se o som for curto, ele é decodificado inteiro.
+                    if (fonte.contagemAmostras() <= Som.SOM_MAX_AMOSTRAS) {
+                        som = fonte.lerTrecho(0, fonte.contagemAmostras());
+                        fonte = null;
+                    }
+                } catch (Exception e) {
+                    erro = e;
                 }
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(
-                  /*   componente-pai: */ this,
-                  /*         mensagem: */ "Não foi possível abrir o arquivo de áudio.",
-                  /*           título: */ "Erro!",
-                  /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
-                );
-                e.printStackTrace();
-            } catch (UnsupportedAudioFileException e) {
-                JOptionPane.showMessageDialog(
-                  /*   componente-pai: */ this,
-                  /*         mensagem: */ "O formato desse arquivo de áudio não é suportado.",
-                  /*           título: */ "Erro!",
-                  /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
-                );
-                e.printStackTrace();
+                final FonteSom fonte_lida = fonte;
+                final Som som_lido = som;
+                final Exception erro_leitura = erro;
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        janela_carregando.dispose();
+                        evtLeuSomImportado(fonte_lida, som_lido, erro_leitura);
+                    }
+                });
             }
+        }.start();
+        janela_carregando.setVisible(true);
+    }
+
+    /**
+     * Método que processa o evento de o arquivo de áudio importado ter sido lido.
+     * @param fonte Fonte do som, se ele for longo (editado numa janela, decodificada sob demanda).
+     * @param som Som decodificado inteiro, se ele for curto.
+     * @param erro Erro ocorrido na leitura, ou nulo.
+     */
+    private void evtLeuSomImportado(FonteSom fonte, Som som, Exception erro) {
+        if (erro instanceof UnsupportedAudioFileException) {
+            JOptionPane.showMessageDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ "O formato desse arquivo de áudio não é suportado.",
+              /*           título: */ "Erro!",
+              /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+            );
+            erro.printStackTrace();
+        } else if (erro != null) {
+            JOptionPane.showMessageDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ "Não foi possível abrir o arquivo de áudio.",
+              /*           título: */ "Erro!",
+              /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+            );
+            erro.printStackTrace();
+        } else {
+            if (fonte != null) cmp_editorSom.definirFonte(fonte);
+            else cmp_editorSom.definirSom(som);
+
+            // salva que o som foi alterado.
+            alterado = true;
         }
     }
 
+    /**
+     * Método que processa o evento de o botão de cortar silêncio ser pressionado.
+     */
+    private void evtCortarSilencio() {
+        // seleciona o trecho útil do som; o corte acontece ao salvar, como com o seletor.
+        cmp_editorSom.selecionarSemSilencio();
+        alterado = true;
+    }
+
     /**
      * Método que processa o evento de o botão de salvar ser pressionado.
      */
@@ -676,8 +729,13 @@ public class JanEditorBotao extends JDialog {
      * @return Botão criado, ou nulo em caso de o botão de cancelar ser pressionado.
      */
     public static Botao criarBotao(JFrame pai) {
-        // cria a janela de edição de botão.
-        JanEditorBotao janela = new JanEditorBotao(null, pai);
+        // cria a janela de edição de botão (um botão novo não tem som a ler).
+        JanEditorBotao janela;
+        try {
+            janela = new JanEditorBotao(null, pai);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
 
         // mostra a janela de edição de botão.
         janela.setVisible(true);
@@ -692,8 +750,9 @@ public class JanEditorBotao extends JDialog {
      * @param botao Botão a editar.
      * @param pai Janela-pai do editor de botão.
      * @return Se o botão foi alterado.
+     * @throws IOException Caso o som do botão não possa ser lido.
      */
-    public static boolean editarBotao(Botao botao, JFrame pai) {
+    public static boolean editarBotao(Botao botao, JFrame pai) throws IOException {
         // cria a janela de edição de botão.
         JanEditorBotao janela = new JanEditorBotao(botao, pai);
 
@@ -706,8 +765,9 @@ public class JanEditorBotao extends JDialog {
 
     /**
      * Insere os componentes na janela.
+     * @param som Som do botão, já lido.
      */
-    private void inserirComponentes() {
+    private void inserirComponentes(Som som) {
         // define as características da janela.
         setTitle("FunIconGUI - Editor de botão");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
@@ -760,7 +820,7 @@ public class JanEditorBotao extends JDialog {
         painel_som = new JPanel();
         painel_som.setLayout(new GridLayout(1, 0, 0, 0));
         painel_som.setBorder(new TitledBorder(null, "Som", TitledBorder.LEADING, TitledBorder.TOP, null, null));
-        cmp_editorSom = new CmpEditorSom(botao.obterSom());
+        cmp_editorSom = new CmpEditorSom(som);
         painel_som.add(cmp_editorSom);
 
         painel_botoesSom = new JPanel();
@@ -789,6 +849,12 @@ public class JanEditorBotao extends JDialog {
         });
         btn_exportarSom.setToolTipText("Clique para exportar o som para um arquivo de áudio (.wav).");
         painel_botoesSom.add(btn_exportarSom);
+        btn_cortarSilencio = new JButton("Cortar silêncio");
+        btn_cortarSilencio.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent aEvt) { evtCortarSilencio(); }
+        });
+        btn_cortarSilencio.setToolTipText("Clique para selecionar o som sem o silêncio do início e do fim.");
+        painel_botoesSom.add(btn_cortarSilencio);
 
         JSeparator separador_baixo = new JSeparator();
 
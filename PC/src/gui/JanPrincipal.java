@@ -31,6 +31,8 @@ import audio.OuvinteReproducao;
 import audio.Reprodutor;
 import auxiliar.Auxiliar;
 
+import java.awt.Dialog;
+import java.awt.EventQueue;
 import java.awt.Insets;
 import java.awt.GridLayout;
 import java.awt.GridBagLayout;
@@ -41,7 +43,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -49,6 +54,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
@@ -77,6 +83,11 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      */
     private static final int ESTADO_SOANDO = 1;
 
+    /**
+     * Intervalo entre as verificações da pasta de botões, em milissegundos.
+     */
+    private static final long INTERVALO_OBSERVACAO = 2000;
+
     /**
      * Estado atual da janela.
      */
@@ -132,6 +143,21 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      */
     private JButton btn_adicionarAoModelo;
 
+    /**
+     * Componente do botão de importar sons em lote.
+     */
+    private JButton btn_importarSons;
+
+    /**
+     * Componente do botão de exportar a biblioteca para um pacote de botões.
+     */
+    private JButton btn_exportarPacote;
+
+    /**
+     * Componente do botão de importar os botões de um pacote de botões.
+     */
+    private JButton btn_importarPacote;
+
     /**
      * Componente do painel com barras de rolagem que contém a prancha.
      */
@@ -187,6 +213,31 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      */
     private File pasta_botoes;
 
+    /**
+     * Repositório onde são guardados os sons dos botões da biblioteca.
+     */
+    private RepositorioSons repositorio_sons;
+
+    /**
+     * Fila que grava os botões da biblioteca fora da thread de eventos.
+     */
+    private FilaPersistencia fila_persistencia;
+
+    /**
+     * Observador das alterações feitas na pasta de botões por outros programas.
+     */
+    private ObservadorPasta observador_pasta;
+
+    /**
+     * Importação de sons em lote em andamento (ou nulo, se não houver).
+     */
+    private ImportadorLote importacao;
+
+    /**
+     * Índice dos botões da biblioteca pelo valor, para encontrar botões repetidos.
+     */
+    private IndiceBotoes indice_biblioteca;
+
     /**
      * Thread de reprodução de som.
      */
@@ -202,11 +253,61 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      * @param pasta_botoes Pasta onde estão armazenados os arquivos de botão.
      */
     public JanPrincipal(File pasta_botoes) {
-        // lê os botões
-        arquivos_botoes = Botao.lerBotoes(pasta_botoes);
+        this(pasta_botoes, Botao.lerBotoes(pasta_botoes));
+    }
+
+    /**
+     * Cria uma janela principal a partir de uma biblioteca de botões já lida.
+     * @param pasta_botoes Pasta onde estão armazenados os arquivos de botão.
+     * @param arquivos_botoes Mapeamento dos botões para os arquivos dessa pasta.
+     */
+    public JanPrincipal(File pasta_botoes, Map<Botao, File> arquivos_botoes) {
+        // define os botões
+        this.arquivos_botoes = arquivos_botoes;
+        this.indice_biblioteca = new IndiceBotoes(arquivos_botoes.keySet());
 
         // define a pasta que contém os botões.
         this.pasta_botoes = pasta_botoes;
+        this.repositorio_sons = RepositorioSons.daPastaBotoes(pasta_botoes);
+
+        // cria o observador da pasta de botões (as alterações são aplicadas na thread de eventos).
+        observador_pasta = new ObservadorPasta(pasta_botoes, INTERVALO_OBSERVACAO, new OuvintePasta() {
+            @Override public void botaoAdicionado(final File arquivo, final Botao botao) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtAlterouArquivoBiblioteca(arquivo, botao); }
+                });
+            }
+            @Override public void botaoAlterado(final File arquivo, final Botao botao) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtAlterouArquivoBiblioteca(arquivo, botao); }
+                });
+            }
+            @Override public void botaoRemovido(final File arquivo) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtAlterouArquivoBiblioteca(arquivo, null); }
+                });
+            }
+        });
+
+        // cria a fila de gravação dos botões (os erros são informados na thread de eventos). Os arquivos
+        // gravados são registrados no observador, para que não pareçam alterações externas.
+        fila_persistencia = new FilaPersistencia(repositorio_sons, true, new OuvintePersistencia() {
+            @Override public void persistenciaConcluida(File arquivo) { observador_pasta.registrar(arquivo); }
+            @Override public void persistenciaFalhou(final File arquivo, final IOException erro) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtFalhouGravacaoBiblioteca(arquivo, erro); }
+                });
+            }
+        });
+
+        // apaga, numa thread própria, os sons do repositório que nenhum botão ou prancha usa mais.
+        Thread limpeza = new Thread("Limpeza do repositório de sons") {
+            @Override public void run() {
+                repositorio_sons.removerNaoReferenciados(JanPrincipal.this.pasta_botoes);
+            }
+        };
+        limpeza.setDaemon(true);
+        limpeza.start();
 
         // define o estado da janela.
         estado = ESTADO_NORMAL;
@@ -246,6 +347,9 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
             @Override public void reproducaoTerminou() { evtReproducaoTerminou(); }
             @Override public void reproducaoFalhou(Exception e) { e.printStackTrace(); evtReproducaoTerminou(); }
         };
+
+        // começa a observar a pasta de botões.
+        observador_pasta.iniciar();
     }
 
     /**
@@ -253,7 +357,13 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      */
     private void evtFechar() {
         // só pode fechar a janela se não estiver emitindo som.
-        if (estado == ESTADO_NORMAL) System.exit(0);
+        if (estado == ESTADO_NORMAL) {
+            // termina as gravações pendentes da biblioteca antes de sair.
+            if (importacao != null) importacao.cancelar();
+            observador_pasta.parar();
+            fila_persistencia.encerrar();
+            System.exit(0);
+        }
     }
 
     /**
@@ -268,6 +378,244 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
             cmp_biblioteca.adicionarBotao(botao);
     }
 
+    /**
+     * Método que processa o evento de o botão de importar sons ser pressionado.
+     */
+    private void evtImportarSons() {
+        // cria o filtro de arquivos de áudio.
+        FileFilter filtro_audio = new FileNameExtensionFilter("Arquivos de áudio (.wav, .aif, .aiff, .au)", ImportadorLote.EXTENSOES_AUDIO);
+
+        // cria o seletor de arquivos, que aceita também pastas.
+        JFileChooser seletor_arquivo = new JFileChooser();
+        seletor_arquivo.setFileFilter(filtro_audio);
+        seletor_arquivo.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        seletor_arquivo.setMultiSelectionEnabled(true);
+
+        // adiciona ao seletor a opção de cortar o silêncio dos sons.
+        JCheckBox caixa_cortarSilencio = new JCheckBox("Cortar silêncio", true);
+        caixa_cortarSilencio.setToolTipText("Corta o silêncio do início e do fim de cada som importado.");
+        seletor_arquivo.setAccessory(caixa_cortarSilencio);
+
+        // mostra o seletor de arquivo.
+        int resultado = seletor_arquivo.showDialog(this, "Importar");
+        if (resultado != JFileChooser.APPROVE_OPTION) return;
+
+        // obtém os arquivos de áudio selecionados.
+        File[] arquivos = ImportadorLote.listarArquivos(seletor_arquivo.getSelectedFiles());
+        if (arquivos.length == 0) {
+            JOptionPane.showMessageDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ "Nenhum arquivo de áudio foi encontrado.",
+              /*           título: */ "Importar sons",
+              /* tipo de mensagem: */ JOptionPane.INFORMATION_MESSAGE
+            );
+            return;
+        }
+
+        // mostra o progresso, com a opção de cancelar.
+        final JanCarregando janela_progresso = new JanCarregando("Importando " + arquivos.length + " arquivos de áudio");
+        janela_progresso.setTitle("FunIconGUI - Importando sons");
+        janela_progresso.definirProgresso(0, arquivos.length);
+        janela_progresso.adicionarCancelamento(new ActionListener() {
+            public void actionPerformed(ActionEvent aEvt) { if (importacao != null) importacao.cancelar(); }
+        });
+        janela_progresso.setLocationRelativeTo(this);
+        janela_progresso.setVisible(true);
+
+        // inicia a importação em segundo plano; os eventos são repassados à thread de eventos.
+        final List<File> falhas = new Vector<File>();
+        btn_importarSons.setEnabled(false);
+        importacao = new ImportadorLote(arquivos, caixa_cortarSilencio.isSelected(), new OuvinteImportacao() {
+            @Override public void botaoImportado(File arquivo, final Botao botao) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtImportouBotao(botao); }
+                });
+            }
+            @Override public void importacaoFalhou(File arquivo, Exception erro) {
+                erro.printStackTrace();
+                falhas.add(arquivo);
+            }
+            @Override public void importacaoAvancou(final int processados, final int total) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { janela_progresso.definirProgresso(processados, total); }
+                });
+            }
+            @Override public void importacaoTerminou(boolean cancelada) {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() { evtTerminouImportacao(janela_progresso, falhas); }
+                });
+            }
+        });
+        importacao.iniciar();
+    }
+
+    /**
+     * Método que processa o evento de um botão ter sido importado de um arquivo de áudio.
+     */
+    private void evtImportouBotao(Botao botao) {
+        // botões repetidos não são importados de novo.
+        if (indice_biblioteca.contem(botao)) return;
+
+        // o botão é gravado pela fila de persistência, através do evento de adição.
+        cmp_biblioteca.adicionarBotao(botao);
+    }
+
+    /**
+     * Método que processa o evento de uma importação de sons em lote ter terminado.
+     */
+    private void evtTerminouImportacao(JanCarregando janela_progresso, List<File> falhas) {
+        importacao = null;
+        janela_progresso.dispose();
+        btn_importarSons.setEnabled(true);
+
+        // informa os arquivos que não puderam ser importados.
+        if (! falhas.isEmpty()) {
+            StringBuilder mensagem = new StringBuilder("Não foi possível importar " + falhas.size() + " arquivo(s):");
+            for (int i = 0; i < falhas.size() && i < 10; i ++)
+                mensagem.append("\n").append(falhas.get(i).getName());
+            if (falhas.size() > 10) mensagem.append("\n...");
+            JOptionPane.showMessageDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ mensagem.toString(),
+              /*           título: */ "Erro!",
+              /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+            );
+        }
+    }
+
+    /**
+     * Método que processa o evento de o botão de exportar a biblioteca para um pacote ser pressionado.
+     */
+    private void evtExportarPacote() {
+        // cria o seletor de arquivo.
+        FileFilter filtro_pacote = new FileNameExtensionFilter("Pacote de botões (." + extensao_pacote + ")", extensao_pacote);
+        JFileChooser seletor_arquivo = new JFileChooser();
+        seletor_arquivo.setFileFilter(filtro_pacote);
+        seletor_arquivo.setMultiSelectionEnabled(false);
+
+        // mostra o seletor de arquivo.
+        int resultado = seletor_arquivo.showDialog(this, "Exportar");
+        if (resultado != JFileChooser.APPROVE_OPTION) return;
+
+        // verifica a extensão do arquivo selecionado.
+        File selecionado = seletor_arquivo.getSelectedFile();
+        String extensao = Auxiliar.obterExtensao(selecionado);
+        if (extensao == null || ! extensao.equals(extensao_pacote)) selecionado = new File(selecionado.getAbsolutePath() + "." + extensao_pacote);
+
+        // pergunta para o usuário se deve substituir o arquivo existente.
+        if (selecionado.exists()) {
+            int resposta = JOptionPane.showConfirmDialog(
+              /*   componente-pai: */ this,
+              /*         mensagem: */ "O arquivo já existe. Deseja substituí-lo?",
+              /*           título: */ "Substituir?",
+              /* tipo de mensagem: */ JOptionPane.YES_NO_OPTION
+            );
+            if (resposta != JOptionPane.YES_OPTION) return;
+        }
+
+        // escreve o pacote numa thread própria, a partir dos arquivos da biblioteca (depois que as gravações
+        // pendentes terminarem). O pacote é montado num arquivo temporário, que só então substitui o escolhido.
+        final File destino = selecionado;
+        final JanCarregando janela_carregando = new JanCarregando("Exportando a biblioteca para " + destino.getName());
+        janela_carregando.setTitle("FunIconGUI - Exportando biblioteca");
+        janela_carregando.setModalityType(Dialog.ModalityType.APPLICATION_MODAL);
+        janela_carregando.setLocationRelativeTo(this);
+        new Thread("Exportação de pacote de botões") {
+            @Override public void run() {
+                IOException erro = null;
+                int exportados = 0;
+                try {
+                    fila_persistencia.esperar();
+                    File temporario = new File(destino.getPath() + ".tmp");
+                    temporario.delete();
+                    PacoteBotoes pacote = new PacoteBotoes(temporario);
+                    try {
+                        exportados = pacote.importarPasta(pasta_botoes);
+                    } finally {
+                        pacote.fechar();
+                    }
+                    Auxiliar.substituirArquivo(temporario, destino);
+                } catch (IOException ioe) {
+                    erro = ioe;
+                } catch (InterruptedException ie) {
+                    erro = new IOException("Exportação interrompida.");
+                }
+                final IOException erro_exportacao = erro;
+                final int botoes_exportados = exportados;
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        janela_carregando.dispose();
+                        evtTerminouPacote("Exportar biblioteca", botoes_exportados + " botão(ões) exportado(s).", "Não foi possível exportar a biblioteca.", erro_exportacao);
+                    }
+                });
+            }
+        }.start();
+        janela_carregando.setVisible(true);
+    }
+
+    /**
+     * Método que processa o evento de o botão de importar os botões de um pacote ser pressionado.
+     */
+    private void evtImportarPacote() {
+        // cria o seletor de arquivo.
+        FileFilter filtro_pacote = new FileNameExtensionFilter("Pacote de botões (." + extensao_pacote + ")", extensao_pacote);
+        JFileChooser seletor_arquivo = new JFileChooser();
+        seletor_arquivo.setFileFilter(filtro_pacote);
+        seletor_arquivo.setMultiSelectionEnabled(false);
+
+        // mostra o seletor de arquivo.
+        int resultado = seletor_arquivo.showDialog(this, "Importar");
+        if (resultado != JFileChooser.APPROVE_OPTION) return;
+
+        // lê os botões do pacote numa thread própria; eles são adicionados à biblioteca na thread de eventos.
+        final File origem = seletor_arquivo.getSelectedFile();
+        final JanCarregando janela_carregando = new JanCarregando("Lendo o pacote de botões " + origem.getName());
+        janela_carregando.setTitle("FunIconGUI - Importando biblioteca");
+        janela_carregando.setModalityType(Dialog.ModalityType.APPLICATION_MODAL);
+        janela_carregando.setLocationRelativeTo(this);
+        new Thread("Importação de pacote de botões") {
+            @Override public void run() {
+                IOException erro = null;
+                final List<Botao> botoes = new Vector<Botao>();
+                try {
+                    PacoteBotoes pacote = new PacoteBotoes(origem);
+                    try {
+                        for (int i = 0; i < pacote.contagemBotoes(); i ++) botoes.add(pacote.lerBotao(i));
+                    } finally {
+                        pacote.fechar();
+                    }
+                } catch (IOException ioe) {
+                    erro = ioe;
+                }
+                final IOException erro_importacao = erro;
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        janela_carregando.dispose();
+                        for (Botao botao : botoes) evtImportouBotao(botao);
+                        evtTerminouPacote("Importar biblioteca", botoes.size() + " botão(ões) lido(s) do pacote.", "Não foi possível ler o pacote de botões.", erro_importacao);
+                    }
+                });
+            }
+        }.start();
+        janela_carregando.setVisible(true);
+    }
+
+    /**
+     * Método que processa o evento de uma exportação ou importação de pacote de botões ter terminado.
+     */
+    private void evtTerminouPacote(String titulo, String mensagem_sucesso, String mensagem_erro, IOException erro) {
+        if (erro != null) {
+            evtFalhouArquivoPrancha(mensagem_erro, erro);
+            return;
+        }
+        JOptionPane.showMessageDialog(
+          /*   componente-pai: */ this,
+          /*         mensagem: */ mensagem_sucesso,
+          /*           título: */ titulo,
+          /* tipo de mensagem: */ JOptionPane.INFORMATION_MESSAGE
+        );
+    }
+
     /**
      * Método que processa o evento de o botão de editar botão ser pressionado.
      */
@@ -275,7 +623,13 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         // se houver botão selecionado, abre a janela de edição.
         if (cmp_biblioteca.obterSelecionado() != null) {
             // abre a janela de edição de botão, e verifica se o usuário confirmou.
-            boolean alterado = JanEditorBotao.editarBotao(cmp_biblioteca.obterSelecionado(), this);
+            boolean alterado;
+            try {
+                alterado = JanEditorBotao.editarBotao(cmp_biblioteca.obterSelecionado(), this);
+            } catch (IOException ioe) {
+                evtFalhouLeituraSom(ioe);
+                return;
+            }
 
             // de o usuário tiver alterado o botão, o redesenha na biblioteca.
             if (alterado) {
@@ -322,7 +676,13 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
             // se o usuário assim desejar, clona o botão.
             if (resposta == JOptionPane.YES_OPTION) {
                 // clona o botão.
-                Botao botao = new Botao(cmp_biblioteca.obterSelecionado());
+                Botao botao;
+                try {
+                    botao = new Botao(cmp_biblioteca.obterSelecionado());
+                } catch (IOException ioe) {
+                    evtFalhouLeituraSom(ioe);
+                    return;
+                }
                 botao.definirNomeBotao(botao.obterNomeBotao() + " (clonado)");
 
                 // adiciona à biblioteca.
@@ -338,7 +698,12 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         // se houver botão selecionado reproduz o som.
         if (cmp_biblioteca.obterSelecionado() != null) {
             // prepara o objeto para reproduzir o som.
-            reprodutor = cmp_biblioteca.obterSelecionado().obterSom().criarReprodutor();
+            try {
+                reprodutor = cmp_biblioteca.obterSelecionado().obterSom().criarReprodutor();
+            } catch (IOException ioe) {
+                evtFalhouLeituraSom(ioe);
+                return;
+            }
             reprodutor.adicionarOuvinteEvento(ouvinte_reproducao);
 
             // altera o estado.
@@ -382,7 +747,22 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
                   /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
                 );
             } else {
-                cmp_prancha.adicionarBotao(cmp_biblioteca.obterSelecionado());
+                // se o botão já está na prancha, pergunta se o usuário quer repeti-lo.
+                Botao botao = cmp_biblioteca.obterSelecionado();
+                boolean adicionar = true;
+                for (Botao existente : cmp_prancha.obterBotoes()) {
+                    if (existente != null && existente.equals(botao)) {
+                        adicionar = confirmarRepetido("Esse botão já está no modelo de prancha. Deseja adicioná-lo novamente?");
+                        break;
+                    }
+                }
+                if (adicionar) {
+                    try {
+                        cmp_prancha.adicionarBotao(botao);
+                    } catch (IOException ioe) {
+                        evtFalhouLeituraSom(ioe);
+                    }
+                }
             }
         }
     }
@@ -438,8 +818,19 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
     private void evtCopiarParaBiblioteca() {
         // se houver botão selecionado, tenta copiar para a biblioteca.
         if (cmp_prancha.obterSelecionado() != null) {
+            // se o botão já está na biblioteca, pergunta se o usuário quer copiá-lo mesmo assim.
+            if (indice_biblioteca.contem(cmp_prancha.obterSelecionado())
+                && ! confirmarRepetido("Esse botão já está na biblioteca. Deseja copiá-lo mesmo assim?"))
+                return;
+
             // clona o botão.
-            Botao botao = new Botao(cmp_prancha.obterSelecionado());
+            Botao botao;
+            try {
+                botao = new Botao(cmp_prancha.obterSelecionado());
+            } catch (IOException ioe) {
+                evtFalhouLeituraSom(ioe);
+                return;
+            }
             botao.definirNomeBotao(botao.obterNomeBotao() + " (importado)");
 
             // adiciona à biblioteca.
@@ -448,6 +839,21 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
 
     }
 
+    /**
+     * Pergunta ao usuário se ele quer repetir um botão que já existe.
+     * @param mensagem Mensagem a exibir.
+     * @return <b>true</b> se o usuário confirmou.
+     */
+    private boolean confirmarRepetido(String mensagem) {
+        int resposta = JOptionPane.showConfirmDialog(
+          /*   componente-pai: */ this,
+          /*         mensagem: */ mensagem,
+          /*           título: */ "Botão repetido",
+          /* tipo de mensagem: */ JOptionPane.YES_NO_OPTION
+        );
+        return resposta == JOptionPane.YES_OPTION;
+    }
+
     /**
      * Método que processa o evento de o botão de ouvir botão da prancha ser pressionado.
      */
@@ -455,7 +861,12 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         // se houver botão selecionado reproduz o som.
         if (cmp_prancha.obterSelecionado() != null) {
             // prepara o objeto para reproduzir o som.
-            reprodutor = cmp_prancha.obterSelecionado().obterSom().criarReprodutor();
+            try {
+                reprodutor = cmp_prancha.obterSelecionado().obterSom().criarReprodutor();
+            } catch (IOException ioe) {
+                evtFalhouLeituraSom(ioe);
+                return;
+            }
             reprodutor.adicionarOuvinteEvento(ouvinte_reproducao);
 
             // altera o estado.
@@ -487,8 +898,12 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      * Método que processa o evento de o botão de salvar modelo de prancha.
      */
     private void evtSalvarModelo() {
-        // cria o filtro de arquivos para as imagens
-        FileFilter filtro_imagem = new FileNameExtensionFilter("Modelo de prancha (." + extensao_prancha + ")", extensao_prancha);
+        // cria os filtros de arquivos: o modelo comum (versão 1.0) pode ser aberto por qualquer versão do
+        // programa; os da versão 2.0, mais compactos, devem ser escolhidos pelo usuário. O modelo só com
+        // referências aos sons precisa da biblioteca.
+        FileFilter filtro_versao_1 = new FileNameExtensionFilter("Modelo de prancha, compatível com versões anteriores (." + extensao_prancha + ")", extensao_prancha);
+        FileFilter filtro_imagem = new FileNameExtensionFilter("Modelo de prancha no formato novo, com os sons (." + extensao_prancha + ")", extensao_prancha);
+        FileFilter filtro_referencias = new FileNameExtensionFilter("Modelo de prancha só com referências aos sons da biblioteca (." + extensao_prancha + ")", extensao_prancha);
 
         // cria a pasta de pranchas, se precisar.
         File pasta_pranchas = new File("pranchas" + File.separator);
@@ -496,7 +911,11 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
 
         // cria o seletor de arquivo.
         JFileChooser seletor_arquivo = new JFileChooser(pasta_pranchas);
-        seletor_arquivo.setFileFilter(filtro_imagem);
+        seletor_arquivo.setAcceptAllFileFilterUsed(false);
+        seletor_arquivo.addChoosableFileFilter(filtro_versao_1);
+        seletor_arquivo.addChoosableFileFilter(filtro_imagem);
+        seletor_arquivo.addChoosableFileFilter(filtro_referencias);
+        seletor_arquivo.setFileFilter(filtro_versao_1);
         seletor_arquivo.setMultiSelectionEnabled(false);
 
         // mostra o seletor de arquivo.
@@ -526,17 +945,22 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
                 salvar = resposta == JOptionPane.YES_OPTION;
             }
 
-            // se deve salvar, tenta salvar o arquivo.
+            // se deve salvar, salva o arquivo em segundo plano.
             if (salvar) {
-                boolean sucesso = cmp_prancha.gravarArquivo(selecionado);
-                if (!sucesso) {
-                    JOptionPane.showMessageDialog(
-                      /*   componente-pai: */ this,
-                      /*         mensagem: */ "Não foi possível salvar o arquivo de prancha.",
-                      /*           título: */ "Erro!",
-                      /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
-                    );
-                }
+                OuvinteArquivoPrancha ouvinte = new OuvinteArquivoPrancha() {
+                    @Override public void leituraConcluida(Botao[] botoes) {}
+                    @Override public void gravacaoConcluida() {}
+                    @Override public void operacaoFalhou(final IOException erro) {
+                        EventQueue.invokeLater(new Runnable() {
+                            public void run() { evtFalhouArquivoPrancha("Não foi possível salvar o arquivo de prancha.", erro); }
+                        });
+                    }
+                };
+                FileFilter filtro = seletor_arquivo.getFileFilter();
+                if (filtro == filtro_imagem || filtro == filtro_referencias)
+                    ArquivoPrancha.gravarEmSegundoPlano(selecionado, cmp_prancha.obterBotoes(), repositorio_sons, filtro == filtro_imagem, ouvinte);
+                else
+                    ArquivoPrancha.gravarEmSegundoPlano(selecionado, cmp_prancha.obterBotoes(), ouvinte);
             }
         }
     }
@@ -562,33 +986,63 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
 
         // verifica se foi selecionada a opção de "abrir".
         if (resultado == JFileChooser.APPROVE_OPTION) {
-            // tenta abrir a prancha de um arquivo.
-            boolean sucesso = cmp_prancha.abrirArquivo(seletor_arquivo.getSelectedFile());
-
-            // verifica se teve sucesso.
-            if (sucesso) {
-                // se obteve sucesso, arruma os botões habilitados.
-                btn_removerDoModelo.setEnabled(false);
-                btn_ouvirPrancha.setEnabled(false);
-                btn_copiarParaBiblioteca.setEnabled(false);
-                if (cmp_prancha.obterContagem() != 0) {
-                    btn_gravarNaPrancha.setEnabled(true);
-                    btn_salvarModelo.setEnabled(true);
-                } else {
-                    btn_gravarNaPrancha.setEnabled(false);
-                    btn_salvarModelo.setEnabled(false);
+            // lê a prancha do arquivo em segundo plano.
+            ArquivoPrancha.lerEmSegundoPlano(seletor_arquivo.getSelectedFile(), repositorio_sons, new OuvinteArquivoPrancha() {
+                @Override public void leituraConcluida(final Botao[] botoes) {
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() { evtAbriuModelo(botoes); }
+                    });
                 }
-            } else {
-                JOptionPane.showMessageDialog(
-                  /*   componente-pai: */ this,
-                  /*         mensagem: */ "Não foi possível abrir o arquivo de prancha.",
-                  /*           título: */ "Erro!",
-                  /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
-                );
-            }
+                @Override public void gravacaoConcluida() {}
+                @Override public void operacaoFalhou(final IOException erro) {
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() { evtFalhouArquivoPrancha("Não foi possível abrir o arquivo de prancha.", erro); }
+                    });
+                }
+            });
         }
     }
 
+    /**
+     * Método que processa o evento de um modelo de prancha ter sido lido de um arquivo.
+     */
+    private void evtAbriuModelo(Botao[] botoes) {
+        cmp_prancha.definirBotoes(botoes);
+
+        // arruma os botões habilitados.
+        btn_removerDoModelo.setEnabled(false);
+        btn_ouvirPrancha.setEnabled(false);
+        btn_copiarParaBiblioteca.setEnabled(false);
+        if (cmp_prancha.obterContagem() != 0) {
+            btn_gravarNaPrancha.setEnabled(true);
+            btn_salvarModelo.setEnabled(true);
+        } else {
+            btn_gravarNaPrancha.setEnabled(false);
+            btn_salvarModelo.setEnabled(false);
+        }
+    }
+
+    /**
+     * Método que processa o evento de não ter sido possível ler o som de um botão.
+     */
+    private void evtFalhouLeituraSom(IOException erro) {
+        evtFalhouArquivoPrancha("Não foi possível ler o som desse botão.", erro);
+    }
+
+    /**
+     * Método que processa o evento de não ter sido possível ler ou gravar um arquivo de prancha.
+     */
+    private void evtFalhouArquivoPrancha(String mensagem, IOException erro) {
+        erro.printStackTrace();
+        if (erro.getMessage() != null) mensagem = mensagem + "\n" + erro.getMessage();
+        JOptionPane.showMessageDialog(
+          /*   componente-pai: */ this,
+          /*         mensagem: */ mensagem,
+          /*           título: */ "Erro!",
+          /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+        );
+    }
+
     /**
      * Método que processa o evento de o um modelo de botão da biblioteca ser selecionado.
      */
@@ -623,24 +1077,14 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         // enquanto não conseguir um nome de arquivo livre, tenta novamente.
         do {
             arquivo = new File(pasta_botoes, "btn_" + Long.toHexString(numero) + "." + extensao_botao);
-            tentar_novamente = arquivo.exists();
+            tentar_novamente = arquivo.exists() || fila_persistencia.pendente(arquivo);
             numero ++;
         } while (tentar_novamente);
 
-        // tenta salvar o arquivo.
-        FileOutputStream fluxo_saida = null;
-        try {
-            fluxo_saida = new FileOutputStream(arquivo);
-            botao.escreverBotao(fluxo_saida);
-            arquivos_botoes.put(botao, arquivo);
-            fluxo_saida.close();
-        } catch (Exception e) {};
-
-        // fecha o arquivo à força, se necessário.
-        try {
-            if (fluxo_saida != null)
-                fluxo_saida.close();
-        } catch (Exception e) {};
+        // agenda a gravação do arquivo.
+        arquivos_botoes.put(botao, arquivo);
+        indice_biblioteca.adicionar(botao);
+        fila_persistencia.gravar(botao, arquivo);
     }
 
     /**
@@ -651,19 +1095,55 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
 
         if (arquivo == null) return;
 
-        // tenta salvar o arquivo.
-        FileOutputStream fluxo_saida = null;
-        try {
-            fluxo_saida = new FileOutputStream(arquivo);
-            botao.escreverBotao(fluxo_saida);
-            fluxo_saida.close();
-        } catch (Exception e) {};
+        // agenda a gravação do arquivo (edições seguidas do mesmo botão são agrupadas).
+        indice_biblioteca.atualizar(botao);
+        fila_persistencia.gravar(botao, arquivo);
+    }
+
+    /**
+     * Método que processa o evento de um arquivo da pasta de botões ser adicionado, alterado ou removido
+     * por outro programa.
+     * @param arquivo Arquivo alterado.
+     * @param botao Botão lido do arquivo, ou nulo se o arquivo foi removido.
+     */
+    private void evtAlterouArquivoBiblioteca(File arquivo, Botao botao) {
+        // se há uma gravação pendente desse arquivo, ela prevalece.
+        if (fila_persistencia.pendente(arquivo)) return;
+
+        // procura o botão associado ao arquivo.
+        Botao antigo = null;
+        for (Map.Entry<Botao, File> entrada : arquivos_botoes.entrySet()) {
+            if (entrada.getValue().equals(arquivo)) {
+                antigo = entrada.getKey();
+                break;
+            }
+        }
 
-        // fecha o arquivo à força, se necessário.
-        try {
-            if (fluxo_saida != null)
-                fluxo_saida.close();
-        } catch (Exception e) {};
+        // aplica a alteração à biblioteca.
+        if (antigo != null) {
+            arquivos_botoes.remove(antigo);
+            indice_biblioteca.remover(antigo);
+        }
+        if (botao != null) {
+            arquivos_botoes.put(botao, arquivo);
+            indice_biblioteca.adicionar(botao);
+        }
+        if (antigo == null) cmp_biblioteca.incluirBotao(botao);
+        else if (botao == null) cmp_biblioteca.excluirBotao(antigo);
+        else cmp_biblioteca.substituirBotao(antigo, botao);
+    }
+
+    /**
+     * Método que processa o evento de não ter sido possível gravar um botão da biblioteca.
+     */
+    private void evtFalhouGravacaoBiblioteca(File arquivo, IOException erro) {
+        erro.printStackTrace();
+        JOptionPane.showMessageDialog(
+          /*   componente-pai: */ this,
+          /*         mensagem: */ "Não foi possível salvar o botão no arquivo " + arquivo.getName() + ".",
+          /*           título: */ "Erro!",
+          /* tipo de mensagem: */ JOptionPane.ERROR_MESSAGE
+        );
     }
 
     /**
@@ -671,11 +1151,9 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
      */
     private void evtDeletouBotaoBiblioteca(Botao botao) {
         evtDesselecionouBotaoBiblioteca(botao);
-        File arquivo = arquivos_botoes.get(botao);
-        try {
-            arquivo.delete();
-            arquivos_botoes.remove(botao);
-        } catch (Exception e) {}
+        File arquivo = arquivos_botoes.remove(botao);
+        indice_biblioteca.remover(botao);
+        if (arquivo != null) fila_persistencia.apagar(arquivo);
     }
 
     /**
@@ -743,6 +1221,21 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         btn_carregarModelo.setEnabled(true);
     }
 
+    /**
+     * Obtém a lista dos botões de um mapeamento, ordenada pelo nome de seus arquivos.
+     * @param arquivos_botoes Mapeamento dos botões para seus arquivos.
+     * @return Lista ordenada de botões.
+     */
+    private static List<Botao> ordenarPorArquivo(final Map<Botao, File> arquivos_botoes) {
+        List<Botao> botoes = new Vector<Botao>(arquivos_botoes.keySet());
+        Collections.sort(botoes, new Comparator<Botao>() {
+            @Override public int compare(Botao a, Botao b) {
+                return arquivos_botoes.get(a).compareTo(arquivos_botoes.get(b));
+            }
+        });
+        return botoes;
+    }
+
     /**
      * Insere os componentes na janela.
      */
@@ -761,7 +1254,7 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         scroll_biblioteca.setBorder(new TitledBorder(null, "Biblioteca de bot\u00F5es", TitledBorder.LEADING, TitledBorder.TOP, null, null));
         scroll_biblioteca.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_ALWAYS);
         scroll_biblioteca.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
-        cmp_biblioteca = new CmpBibliotecaBotoes(new Vector<Botao>(arquivos_botoes.keySet()));
+        cmp_biblioteca = new CmpBibliotecaBotoes(ordenarPorArquivo(arquivos_botoes));
         scroll_biblioteca.setViewportView(cmp_biblioteca);
 
         painel_botoesBiblioteca = new JPanel();
@@ -807,6 +1300,24 @@ public class JanPrincipal extends JFrame implements ConstantesArmazenamento {
         btn_adicionarAoModelo.setEnabled(false);
         btn_adicionarAoModelo.setToolTipText("Clique para adicionar o botão selecionado ao modelo de prancha.");
         painel_botoesBiblioteca.add(btn_adicionarAoModelo);
+        btn_importarSons = new JButton("Importar sons");
+        btn_importarSons.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent aEvt) { evtImportarSons(); }
+        });
+        btn_importarSons.setToolTipText("Clique para criar botões a partir de vários arquivos de áudio ou pastas.");
+        painel_botoesBiblioteca.add(btn_importarSons);
+        btn_exportarPacote = new JButton("Exportar biblioteca");
+        btn_exportarPacote.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent aEvt) { evtExportarPacote(); }
+        });
+        btn_exportarPacote.setToolTipText("Clique para salvar a biblioteca inteira num único pacote de botões.");
+        painel_botoesBiblioteca.add(btn_exportarPacote);
+        btn_importarPacote = new JButton("Importar biblioteca");
+        btn_importarPacote.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent aEvt) { evtImportarPacote(); }
+        });
+        btn_importarPacote.setToolTipText("Clique para adicionar à biblioteca os botões de um pacote de botões.");
+        painel_botoesBiblioteca.add(btn_importarPacote);
 
         JSeparator separador_meio = new JSeparator();
 